@@ -0,0 +1,104 @@
+package concurrency.version1_4;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * 구현 여러 개를 같은 조건으로 재서 한 줄로 출력하는 비교 벤치마크.
+ *
+ * 워밍업 회차는 JIT가 측정 코드를 컴파일하도록 그대로 돌리고 결과는 버린다. 측정 회차마다 add()한 순서대로
+ * 후보를 한 번씩 재서 "이름: 값 단위"를 쉼표로 이어 출력한다. 측정값은 출력만 하고 단정하지 않는 것이 원칙이므로,
+ * 상대 비교를 검증해야 하면 run()이 반환하는 마지막 회차 결과를 쓴다.
+ *
+ * <pre>
+ * Benchmark.of("events/s")
+ *         .add("ArrayBlockingQueue", this::measureBlockingQueue)
+ *         .add("RingBuffer", this::measureRingBuffer)
+ *         .run();
+ * </pre>
+ */
+public final class Benchmark {
+
+    @FunctionalInterface
+    public interface Measurement {
+        long measure() throws Exception;
+    }
+
+    private record Candidate(String name, String unit, Measurement measurement) {
+    }
+
+    private final String unit;
+    private final List<Candidate> candidates = new ArrayList<>();
+    private String label;
+    private int warmupRounds = 1;
+    private int measuredRounds = 1;
+
+    private Benchmark(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @param unit add(name, measurement)로 넣은 후보의 측정값 단위
+     */
+    public static Benchmark of(String unit) {
+        return new Benchmark(unit);
+    }
+
+    /**
+     * 결과 줄 앞에 붙일 측정 조건 (예: "스레드 4개")
+     */
+    public Benchmark label(String label) {
+        this.label = label;
+        return this;
+    }
+
+    public Benchmark rounds(int warmupRounds, int measuredRounds) {
+        if (warmupRounds < 0 || measuredRounds < 1) {
+            throw new IllegalArgumentException("warmupRounds >= 0, measuredRounds >= 1 이어야 합니다.");
+        }
+        this.warmupRounds = warmupRounds;
+        this.measuredRounds = measuredRounds;
+        return this;
+    }
+
+    public Benchmark add(String name, Measurement measurement) {
+        return add(name, unit, measurement);
+    }
+
+    public Benchmark add(String name, String unit, Measurement measurement) {
+        candidates.add(new Candidate(name, unit, measurement));
+        return this;
+    }
+
+    /**
+     * 워밍업 회차와 측정 회차를 돌리고 측정 회차마다 한 줄씩 출력한다.
+     *
+     * @return 마지막 측정 회차의 후보별 측정값 (add()한 순서)
+     */
+    public Map<String, Long> run() throws Exception {
+        for (int round = 0; round < warmupRounds; round++) {
+            measureAll();
+        }
+        Map<String, Long> results = Map.of();
+        for (int round = 0; round < measuredRounds; round++) {
+            results = measureAll();
+            StringJoiner line = new StringJoiner(", ", label == null ? "" : label + ", ", "");
+            for (Candidate candidate : candidates) {
+                line.add(String.format("%s: %,d %s", candidate.name(), results.get(candidate.name()), candidate.unit()));
+            }
+            System.out.println(line);
+        }
+        return results;
+    }
+
+    private Map<String, Long> measureAll() throws Exception {
+        Map<String, Long> results = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            results.put(candidate.name(), candidate.measurement().measure());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,358 @@
+package concurrency.version1_4;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 메모리 맵 파일에 기록하는 추가 전용 영속 큐.
+ *
+ * WaitNotifyTest나 ConcurrentLinkedQueue로 넘긴 데이터는 프로세스가 죽으면 사라진다. 여기서는 고정 크기 파일을
+ * MappedByteBuffer로 매핑해 두고 [길이][내용] 레코드를 이어 쓴다. 쓰기는 메모리 복사일 뿐이라 레코드마다 write()
+ * 시스템 호출이 없고, 프로세스가 죽어도 이미 쓴 페이지는 커널이 파일에 반영한다. 정전까지 견디려면 force()(msync)가
+ * 필요한데, 이 비용은 FlushPolicy로 레코드마다가 아니라 묶음이나 주기마다 치른다.
+ *
+ * 파일이 차면 다음 번호의 파일을 만들고 ROLL 표시를 남긴 뒤 넘어간다. 최근 retainedFiles개 파일만 남기고 오래된 파일은 지운다.
+ * 레코드는 내용을 먼저 쓰고 길이를 release로 써서 공개하므로, 길이가 보이면 내용도 온전히 보인다.
+ * 생산자는 락 하나로 직렬화한다. 소비자는 Tailer마다 따로 읽은 위치를 가지며, 위치도 작은 매핑 파일에 저장해 재시작 후 이어 읽는다.
+ */
+public class MappedQueue implements AutoCloseable {
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int HEADER = Integer.BYTES;
+    // 아직 쓰지 않은 자리. 새 파일은 0으로 채워져 있다
+    private static final int EMPTY = 0;
+    // 이 파일은 끝났으니 다음 파일에서 읽으라는 표시
+    private static final int ROLL = -1;
+    private static final String SUFFIX = ".queue";
+
+    /**
+     * 언제 force()로 디스크에 내려쓸지 정한다.
+     * <ul>
+     *     <li>none: 내려쓰기를 커널에 맡긴다. 프로세스가 죽는 것은 견디지만 정전 때는 최근 레코드를 잃을 수 있다.</li>
+     *     <li>periodic: 백그라운드 스레드가 주기마다 내려쓴다. 주기만큼의 레코드만 잃을 수 있다.</li>
+     *     <li>perBatch: append()와 appendBatch()가 반환하기 전에 내려쓴다. 묶음을 크게 할수록 레코드당 비용이 준다.</li>
+     * </ul>
+     */
+    public static final class FlushPolicy {
+        private final boolean perBatch;
+        private final long periodNanos;
+
+        private FlushPolicy(boolean perBatch, long periodNanos) {
+            this.perBatch = perBatch;
+            this.periodNanos = periodNanos;
+        }
+
+        public static FlushPolicy none() {
+            return new FlushPolicy(false, 0);
+        }
+
+        public static FlushPolicy periodic(long period, TimeUnit unit) {
+            return new FlushPolicy(false, unit.toNanos(period));
+        }
+
+        public static FlushPolicy perBatch() {
+            return new FlushPolicy(true, 0);
+        }
+    }
+
+    private final Path directory;
+    private final int fileSize;
+    private final FlushPolicy flushPolicy;
+    private final int retainedFiles;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    // 생산자 락(this) 안에서만 바꾼다. current는 flush()가 락 없이 읽는다
+    private volatile MappedByteBuffer current;
+    private long currentIndex;
+    private int writePosition;
+
+    public MappedQueue(Path directory) throws IOException {
+        this(directory, 64 << 20, FlushPolicy.none(), 16);
+    }
+
+    /**
+     * @param fileSize      파일 하나의 크기. 레코드 하나는 fileSize - 8바이트를 넘을 수 없다
+     * @param retainedFiles 지우지 않고 남겨 둘 최근 파일 수. 지금 쓰는 파일도 포함한다
+     */
+    public MappedQueue(Path directory, int fileSize, FlushPolicy flushPolicy, int retainedFiles) throws IOException {
+        if (fileSize < 64 || retainedFiles < 1) {
+            throw new IllegalArgumentException("fileSize는 64 이상, retainedFiles는 1 이상이어야 합니다.");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.fileSize = fileSize & ~(HEADER - 1);
+        this.flushPolicy = flushPolicy;
+        this.retainedFiles = retainedFiles;
+        recover();
+        if (flushPolicy.periodNanos > 0) {
+            flusher = new Thread(this::flushPeriodically, "mapped-queue-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * 마지막 파일을 처음부터 훑어 아직 쓰지 않은 첫 자리를 찾는다.
+     */
+    private void recover() throws IOException {
+        long[] indexes = fileIndexes();
+        currentIndex = indexes.length == 0 ? 0 : indexes[indexes.length - 1];
+        current = map(pathOf(currentIndex));
+        writePosition = 0;
+        while (writePosition + HEADER <= fileSize) {
+            int header = (int) INT.getAcquire(current, writePosition);
+            if (header == EMPTY) {
+                break;
+            }
+            if (header == ROLL) {
+                roll();
+                break;
+            }
+            writePosition += HEADER + align(header);
+        }
+        deleteExpiredFiles();
+    }
+
+    public void append(byte[] record) {
+        synchronized (this) {
+            write(record);
+            if (flushPolicy.perBatch) {
+                current.force();
+            }
+        }
+    }
+
+    /**
+     * 여러 레코드를 한 번에 쓰고, perBatch 정책이면 마지막에 한 번만 내려쓴다.
+     */
+    public void appendBatch(List<byte[]> records) {
+        synchronized (this) {
+            for (byte[] record : records) {
+                write(record);
+            }
+            if (flushPolicy.perBatch) {
+                current.force();
+            }
+        }
+    }
+
+    private void write(byte[] record) {
+        if (closed) {
+            throw new IllegalStateException("이미 닫힌 큐입니다.");
+        }
+        int length = record.length;
+        if (length == 0 || length > fileSize - 2 * HEADER) {
+            throw new IllegalArgumentException("레코드 크기는 1 이상 " + (fileSize - 2 * HEADER) + " 이하여야 합니다: " + length);
+        }
+        // 레코드 뒤에 ROLL 표시를 쓸 자리가 항상 남도록 한다
+        if (writePosition + HEADER + align(length) > fileSize - HEADER) {
+            try {
+                roll();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        current.put(writePosition + HEADER, record);
+        INT.setRelease(current, writePosition, length);
+        writePosition += HEADER + align(length);
+    }
+
+    /**
+     * 다음 파일을 먼저 만든 뒤 ROLL을 쓴다. Tailer가 ROLL을 보면 다음 파일은 이미 있다.
+     */
+    private void roll() throws IOException {
+        MappedByteBuffer next = map(pathOf(currentIndex + 1));
+        INT.setRelease(current, writePosition, ROLL);
+        if (flushPolicy.perBatch || flushPolicy.periodNanos > 0) {
+            current.force();
+        }
+        current = next;
+        currentIndex++;
+        writePosition = 0;
+        deleteExpiredFiles();
+    }
+
+    private void deleteExpiredFiles() throws IOException {
+        for (long index : fileIndexes()) {
+            if (index > currentIndex - retainedFiles) {
+                break;
+            }
+            Files.deleteIfExists(pathOf(index));
+        }
+    }
+
+    /**
+     * 지금 쓰고 있는 파일을 디스크에 내려쓴다. 파일을 넘길 때 이전 파일은 roll()에서 내려썼다.
+     */
+    public void flush() {
+        current.force();
+    }
+
+    private void flushPeriodically() {
+        while (!closed) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(flushPolicy.periodNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    /**
+     * name으로 저장한 위치부터 읽는 Tailer를 연다. 처음 여는 이름이면 남아 있는 가장 오래된 레코드부터 읽는다.
+     * Tailer 하나는 한 스레드에서만 쓴다.
+     */
+    public Tailer tailer(String name) throws IOException {
+        return new Tailer(map(directory.resolve(name + ".tailer"), Long.BYTES));
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher.join();
+        }
+        if (flushPolicy.perBatch || flushPolicy.periodNanos > 0) {
+            flush();
+        }
+    }
+
+    /**
+     * 읽은 위치를 (파일 번호 << 32 | 파일 안 오프셋) 하나의 long으로 매핑 파일에 저장한다.
+     * 저장도 메모리에 쓰는 것이라 레코드마다 시스템 호출이 없다.
+     */
+    public final class Tailer {
+        private final MappedByteBuffer positionBuffer;
+        private long fileIndex;
+        private int offset;
+        private MappedByteBuffer buffer;
+
+        private Tailer(MappedByteBuffer positionBuffer) throws IOException {
+            this.positionBuffer = positionBuffer;
+            long saved = (long) LONG.getAcquire(positionBuffer, 0);
+            if (saved == 0) {
+                long[] indexes = fileIndexes();
+                fileIndex = indexes.length == 0 ? 0 : indexes[0];
+            } else {
+                fileIndex = saved >>> 32;
+                offset = (int) saved;
+            }
+        }
+
+        /**
+         * 다음 레코드를 반환한다. 아직 쓰인 레코드가 없으면 null을 반환한다.
+         */
+        public byte[] poll() {
+            try {
+                for (;;) {
+                    if (buffer == null && !open()) {
+                        return null;
+                    }
+                    int header = (int) INT.getAcquire(buffer, offset);
+                    if (header == EMPTY) {
+                        return null;
+                    }
+                    if (header == ROLL) {
+                        fileIndex++;
+                        offset = 0;
+                        buffer = null;
+                        savePosition();
+                        continue;
+                    }
+                    byte[] record = new byte[header];
+                    buffer.get(offset + HEADER, record);
+                    offset += HEADER + align(header);
+                    savePosition();
+                    return record;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * 지금 파일 번호. 오래된 파일이 지워지면 남은 가장 오래된 파일로 건너뛴다.
+         */
+        public long fileIndex() {
+            return fileIndex;
+        }
+
+        private boolean open() throws IOException {
+            Path path = pathOf(fileIndex);
+            if (!Files.exists(path)) {
+                // 보존 기간이 지나 지워졌으면 남은 가장 오래된 파일부터 읽는다
+                long[] indexes = fileIndexes();
+                if (indexes.length == 0 || indexes[0] < fileIndex) {
+                    return false;
+                }
+                fileIndex = indexes[0];
+                offset = 0;
+                path = pathOf(fileIndex);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // 생산자가 만든 파일만 연다. 읽기만 하므로 CREATE 없이 읽기 전용으로 매핑한다
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+                buffer.order(ByteOrder.nativeOrder());
+            } catch (NoSuchFileException e) {
+                return false;  // 여는 사이에 지워졌으면 다음 호출에서 다시 찾는다
+            }
+            return true;
+        }
+
+        private void savePosition() {
+            LONG.setRelease(positionBuffer, 0, fileIndex << 32 | offset);
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        return map(path, fileSize);
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 채널을 닫아도 매핑은 남는다
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    private Path pathOf(long index) {
+        return directory.resolve(String.format("%020d%s", index, SUFFIX));
+    }
+
+    private long[] fileIndexes() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .mapToLong(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toArray();
+        }
+    }
+
+    private static int align(int length) {
+        return (length + HEADER - 1) & ~(HEADER - 1);
+    }
+}
@@ -0,0 +1,204 @@
+package concurrency.version1_4;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.MappedQueue.FlushPolicy;
+import concurrency.version1_4.MappedQueue.Tailer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("MappedQueue::파일을 여러 번 넘겨도 쓴 순서대로 읽고, Tailer끼리는 위치를 따로 가진다")
+    void testRollingAndIndependentTailers() throws Exception {
+        try (MappedQueue queue = new MappedQueue(directory, 256, FlushPolicy.none(), 100)) {
+            Tailer first = queue.tailer("first");
+            for (int i = 0; i < 100; i++) {
+                queue.append(bytes("message-" + i));
+            }
+            for (int i = 0; i < 60; i++) {
+                assertEquals("message-" + i, string(first.poll()));
+            }
+            Tailer second = queue.tailer("second");
+            for (int i = 0; i < 100; i++) {
+                assertEquals("message-" + i, string(second.poll()));
+            }
+            assertNull(second.poll());
+            for (int i = 60; i < 100; i++) {
+                assertEquals("message-" + i, string(first.poll()));
+            }
+            assertNull(first.poll());
+            assertTrue(first.fileIndex() > 5, "256바이트 파일 여러 개에 나눠 써야 한다");
+        }
+    }
+
+    @Test
+    @DisplayName("MappedQueue::다시 열면 생산자는 마지막 레코드 뒤에 이어 쓰고 Tailer는 저장된 위치부터 읽는다")
+    void testRestart() throws Exception {
+        try (MappedQueue queue = new MappedQueue(directory, 256, FlushPolicy.perBatch(), 100)) {
+            Tailer tailer = queue.tailer("consumer");
+            queue.appendBatch(List.of(bytes("a"), bytes("b"), bytes("c")));
+            assertEquals("a", string(tailer.poll()));
+            assertEquals("b", string(tailer.poll()));
+        }
+
+        try (MappedQueue queue = new MappedQueue(directory, 256, FlushPolicy.perBatch(), 100)) {
+            queue.append(bytes("d"));
+            Tailer tailer = queue.tailer("consumer");
+            assertEquals("c", string(tailer.poll()));
+            assertEquals("d", string(tailer.poll()));
+            assertNull(tailer.poll());
+            assertEquals("a", string(queue.tailer("late").poll()));
+        }
+    }
+
+    @Test
+    @DisplayName("MappedQueue::보존 개수를 넘는 오래된 파일은 지우고, 뒤처진 Tailer는 남은 가장 오래된 파일로 건너뛴다")
+    void testRetention() throws Exception {
+        try (MappedQueue queue = new MappedQueue(directory, 128, FlushPolicy.none(), 3)) {
+            Tailer tailer = queue.tailer("slow");
+            for (int i = 0; i < 200; i++) {
+                queue.append(bytes(String.format("record-%03d", i)));
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(3, files.filter(path -> path.toString().endsWith(".queue")).count());
+            }
+            String oldest = string(tailer.poll());
+            assertTrue(oldest.compareTo("record-150") > 0, oldest);
+            String previous = oldest;
+            for (byte[] record; (record = tailer.poll()) != null; previous = string(record)) {
+                assertTrue(string(record).compareTo(previous) > 0);
+            }
+            assertEquals("record-199", previous);
+        }
+    }
+
+    @Test
+    @DisplayName("MappedQueue::생산자 여럿과 소비자 하나가 동시에 써도 모든 레코드를 받는다")
+    void testConcurrentHandoff() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        try (MappedQueue queue = new MappedQueue(directory, 1 << 20, FlushPolicy.periodic(10, TimeUnit.MILLISECONDS), 100)) {
+            Tailer tailer = queue.tailer("consumer");
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.append(ByteBuffer.allocate(8).putInt(producer).putInt(i).array());
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+
+            int[] expected = new int[producers];
+            boolean ordered = true;
+            for (int received = 0; received < producers * perProducer; ) {
+                byte[] record = tailer.poll();
+                if (record == null) {
+                    Thread.yield();
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                int producer = buffer.getInt();
+                ordered &= buffer.getInt() == expected[producer]++;
+                received++;
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(ordered, "생산자 하나가 쓴 레코드끼리는 순서가 유지되어야 한다");
+            assertNull(tailer.poll());
+        }
+    }
+
+    private static final int RECORD_COUNT = 1_000_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    /**
+     * 64바이트 레코드 100만 개를 쓰는 시간. 비교 대상인 FileChannel.write()는 레코드마다 시스템 호출을 한다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("레코드마다 FileChannel.write()와 MappedQueue(none, periodic, perBatch)의 쓰기 처리량 비교")
+    void testWriteThroughput() throws Exception {
+        byte[] payload = new byte[64];
+        List<byte[]> batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(payload);
+        }
+        // 회차마다 새 파일에 쓰도록 측정할 때마다 새 디렉터리를 만든다
+        Benchmark.of("records/s")
+                .add("FileChannel.write()", () -> measureFileChannel(Files.createTempDirectory(directory, "channel"), payload))
+                .add("MappedQueue none", () -> measure(Files.createTempDirectory(directory, "none"),
+                        FlushPolicy.none(), payload, null))
+                .add("periodic(10ms)", () -> measure(Files.createTempDirectory(directory, "periodic"),
+                        FlushPolicy.periodic(10, TimeUnit.MILLISECONDS), payload, null))
+                .add("perBatch(" + BATCH_SIZE + ")", () -> measure(Files.createTempDirectory(directory, "per-batch"),
+                        FlushPolicy.perBatch(), payload, batch))
+                .run();
+    }
+
+    private static long measureFileChannel(Path path, byte[] payload) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path.resolve("channel.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4 + payload.length);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                buffer.clear();
+                buffer.putInt(payload.length).put(payload).flip();
+                channel.write(buffer);
+            }
+        }
+        return perSecond(System.nanoTime() - start);
+    }
+
+    private static long measure(Path path, FlushPolicy flushPolicy, byte[] payload, List<byte[]> batch)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        try (MappedQueue queue = new MappedQueue(path, 16 << 20, flushPolicy, 2)) {
+            if (batch == null) {
+                for (int i = 0; i < RECORD_COUNT; i++) {
+                    queue.append(payload);
+                }
+            } else {
+                for (int i = 0; i < RECORD_COUNT; i += batch.size()) {
+                    queue.appendBatch(batch);
+                }
+            }
+        }
+        return perSecond(System.nanoTime() - start);
+    }
+
+    private static long perSecond(long elapsedNanos) {
+        return RECORD_COUNT * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+}
@@ -0,0 +1,285 @@
+package concurrency.version1_4;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Disruptor 방식의 미리 할당된 링 버퍼.
+ *
+ * wait()/notify() 생산자-소비자는 원소마다 모니터를 넘겨주고 소비자를 깨우느라 문맥 교환이 일어난다.
+ * 여기서는 생산자가 시퀀스 번호를 CAS로 예약(next)하고, 그 칸에 미리 만들어 둔 이벤트 객체를 채운 뒤 발행(publish)한다.
+ * 소비자는 SequenceBarrier로 발행된 마지막 시퀀스까지 한 번에 받아 처리하고 자기 Sequence를 한 번만 올린다.
+ * 이벤트 객체는 버퍼를 한 바퀴 돌 때마다 재사용되므로 할당이 없다.
+ *
+ * 소비자끼리의 선후 관계는 barrier가 기다릴 Sequence로 표현한다. 예를 들어 A, B가 커서만 기다리고
+ * C가 A와 B의 Sequence를 기다리면 다이아몬드 파이프라인이 된다. 생산자는 addGatingSequences()로 등록한
+ * 마지막 단계 소비자를 한 바퀴 넘어서지 않는다.
+ */
+public class RingBuffer<E> {
+
+    /**
+     * 예약한 칸의 이벤트 객체에 값을 채운다.
+     */
+    @FunctionalInterface
+    public interface EventTranslator<E> {
+        void translateTo(E event, long sequence);
+    }
+
+    /**
+     * endOfBatch는 이번에 받은 묶음의 마지막 이벤트인지 여부다. 모아 두었다가 한 번에 내보낼 때 쓴다.
+     */
+    @FunctionalInterface
+    public interface EventHandler<E> {
+        void onEvent(E event, long sequence, boolean endOfBatch) throws Exception;
+    }
+
+    private static final WaitStrategy DEFAULT_WAIT_STRATEGY =
+            WaitStrategy.phasedBackoff(100, 100, 1, TimeUnit.MICROSECONDS);
+
+    private final Object[] entries;
+    private final int mask;
+    private final int indexShift;
+    // 예약된 마지막 시퀀스. 발행 여부는 availableBuffer로 따로 확인한다
+    private final Sequence cursor = new Sequence();
+    // 칸마다 몇 바퀴째에 발행됐는지 기록한다. 여러 생산자가 순서와 상관없이 발행할 수 있게 한다
+    private final AtomicIntegerArray availableBuffer;
+    private volatile Sequence[] gatingSequences = new Sequence[0];
+    // 마지막으로 확인한 소비자 최소 시퀀스. 매번 모든 소비자 시퀀스를 읽지 않기 위함이다
+    private final Sequence gatingSequenceCache = new Sequence();
+    // barrier들이 쓰는 대기 전략. 발행할 때마다 깨운다
+    private volatile WaitStrategy[] waitStrategies = new WaitStrategy[0];
+
+    public RingBuffer(Supplier<E> eventFactory, int bufferSize) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize는 2의 거듭제곱이어야 합니다: " + bufferSize);
+        }
+        this.entries = new Object[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = eventFactory.get();
+        }
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.availableBuffer = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            availableBuffer.set(i, -1);
+        }
+    }
+
+    public int bufferSize() {
+        return entries.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * 생산자가 넘어서면 안 되는 소비자 Sequence를 추가한다. 보통 파이프라인의 마지막 단계 소비자다.
+     */
+    public synchronized void addGatingSequences(Sequence... sequences) {
+        Sequence[] updated = Arrays.copyOf(gatingSequences, gatingSequences.length + sequences.length);
+        System.arraycopy(sequences, 0, updated, gatingSequences.length, sequences.length);
+        gatingSequences = updated;
+    }
+
+    public long next() {
+        return next(1);
+    }
+
+    /**
+     * n개의 칸을 예약하고 마지막 시퀀스를 반환한다. 소비자가 한 바퀴 뒤처져 있으면 자리가 날 때까지 기다린다.
+     */
+    public long next(int n) {
+        if (n < 1 || n > entries.length) {
+            throw new IllegalArgumentException("n은 1 이상 bufferSize 이하여야 합니다: " + n);
+        }
+        for (;;) {
+            long current = cursor.get();
+            long next = current + n;
+            long wrapPoint = next - entries.length;
+            long cachedGating = gatingSequenceCache.get();
+
+            if (wrapPoint > cachedGating || cachedGating > current) {
+                long gating = Sequence.minimum(gatingSequences, current);
+                if (wrapPoint > gating) {
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                gatingSequenceCache.set(gating);
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public void publish(long sequence) {
+        availableBuffer.lazySet((int) sequence & mask, (int) (sequence >>> indexShift));
+        signalAll();
+    }
+
+    public void publish(long low, long high) {
+        for (long sequence = low; sequence <= high; sequence++) {
+            availableBuffer.lazySet((int) sequence & mask, (int) (sequence >>> indexShift));
+        }
+        signalAll();
+    }
+
+    /**
+     * 칸 하나를 예약해 translator로 채우고 발행한다. translator가 예외를 던져도 칸은 발행되어 소비자가 멈추지 않는다.
+     */
+    public void publishEvent(EventTranslator<E> translator) {
+        long sequence = next();
+        try {
+            translator.translateTo(get(sequence), sequence);
+        } finally {
+            publish(sequence);
+        }
+    }
+
+    private boolean isAvailable(long sequence) {
+        return availableBuffer.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    /**
+     * low부터 available까지 중 빈틈없이 발행된 마지막 시퀀스. 앞선 생산자가 아직 발행하지 않았으면 그 앞에서 끊는다.
+     */
+    long highestPublished(long low, long available) {
+        for (long sequence = low; sequence <= available; sequence++) {
+            if (!isAvailable(sequence)) {
+                return sequence - 1;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * dependencies가 없으면 생산자가 발행한 이벤트를, 있으면 그 소비자들이 모두 처리한 이벤트를 기다리는 barrier.
+     * 바쁜 대기, yield, 짧은 park를 차례로 거치며 기다린다.
+     */
+    public SequenceBarrier newBarrier(Sequence... dependencies) {
+        return newBarrier(DEFAULT_WAIT_STRATEGY, dependencies);
+    }
+
+    /**
+     * waitStrategy로 기다리는 barrier. 소비자마다 다른 전략을 쓸 수 있다.
+     * 잠드는 전략이면 발행하거나 소비자가 진행할 때마다 signalAll()로 깨운다.
+     */
+    public synchronized SequenceBarrier newBarrier(WaitStrategy waitStrategy, Sequence... dependencies) {
+        if (Arrays.stream(waitStrategies).noneMatch(registered -> registered == waitStrategy)) {
+            WaitStrategy[] updated = Arrays.copyOf(waitStrategies, waitStrategies.length + 1);
+            updated[waitStrategies.length] = waitStrategy;
+            waitStrategies = updated;
+        }
+        return new SequenceBarrier(waitStrategy, dependencies);
+    }
+
+    // 기다리는 소비자를 깨운다. 잠들지 않는 전략의 signalAll()은 아무것도 하지 않는다
+    void signalAll() {
+        for (WaitStrategy waitStrategy : waitStrategies) {
+            waitStrategy.signalAll();
+        }
+    }
+
+    public final class SequenceBarrier {
+        private final WaitStrategy waitStrategy;
+        private final Sequence[] dependencies;
+        private volatile boolean alerted;
+        // waitFor()는 소비자 스레드 하나만 호출하므로 기다리는 시퀀스와 조건을 필드에 두고 재사용한다
+        private long target;
+        private long published;
+        private final BooleanSupplier ready = () -> alerted || (published = publishedFrom(target)) >= target;
+
+        private SequenceBarrier(WaitStrategy waitStrategy, Sequence[] dependencies) {
+            this.waitStrategy = waitStrategy;
+            this.dependencies = dependencies.clone();
+        }
+
+        /**
+         * sequence 이상이 처리 가능해질 때까지 기다렸다가 처리 가능한 마지막 시퀀스를 반환한다.
+         * 반환값이 sequence보다 크면 그만큼을 한 묶음으로 처리하면 된다. alert()되거나 인터럽트되면 sequence - 1을 반환한다.
+         */
+        public long waitFor(long sequence) {
+            long available = publishedFrom(sequence);
+            if (available >= sequence) {
+                return available;
+            }
+            target = sequence;
+            published = sequence - 1;
+            try {
+                waitStrategy.await(ready);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                alerted = true;
+            }
+            return alerted && published < sequence ? sequence - 1 : published;
+        }
+
+        // 커서는 예약된 시퀀스이므로 실제로 발행된 데까지만 넘긴다
+        private long publishedFrom(long sequence) {
+            long available = dependencies.length == 0 ? cursor.get() : Sequence.minimum(dependencies, Long.MAX_VALUE);
+            return available < sequence ? available : highestPublished(sequence, available);
+        }
+
+        public void alert() {
+            alerted = true;
+            waitStrategy.signalAll();
+        }
+
+        public boolean isAlerted() {
+            return alerted;
+        }
+    }
+
+    /**
+     * barrier가 허락하는 이벤트를 묶음 단위로 handler에 넘기고, 묶음이 끝날 때마다 자기 Sequence를 올리는 소비자.
+     * 다른 소비자나 생산자는 이 Sequence를 보고 기다린다. handler가 예외를 던지면 그 이벤트는 건너뛰고 계속한다.
+     */
+    public static final class BatchEventProcessor<E> implements Runnable {
+        private final RingBuffer<E> ringBuffer;
+        private final RingBuffer<E>.SequenceBarrier barrier;
+        private final EventHandler<? super E> handler;
+        private final Sequence sequence = new Sequence();
+
+        public BatchEventProcessor(RingBuffer<E> ringBuffer, RingBuffer<E>.SequenceBarrier barrier,
+                                   EventHandler<? super E> handler) {
+            this.ringBuffer = ringBuffer;
+            this.barrier = barrier;
+            this.handler = handler;
+        }
+
+        public Sequence sequence() {
+            return sequence;
+        }
+
+        @Override
+        public void run() {
+            long nextSequence = sequence.get() + 1;
+            // halt()나 인터럽트로 barrier가 alert되면 멈춘다
+            while (!barrier.isAlerted()) {
+                long available = barrier.waitFor(nextSequence);
+                for (; nextSequence <= available; nextSequence++) {
+                    try {
+                        handler.onEvent(ringBuffer.get(nextSequence), nextSequence, nextSequence == available);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+                sequence.set(available);
+                // 이 소비자를 기다리는 다음 단계 소비자를 깨운다
+                ringBuffer.signalAll();
+            }
+        }
+
+        /**
+         * 처리 중인 묶음을 끝낸 뒤 멈춘다.
+         */
+        public void halt() {
+            barrier.alert();
+        }
+    }
+}
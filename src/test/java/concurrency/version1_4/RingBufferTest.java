@@ -0,0 +1,290 @@
+package concurrency.version1_4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.RingBuffer.BatchEventProcessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+    // 링 버퍼에 미리 만들어 두고 재사용하는 이벤트
+    static class ValueEvent {
+        long value;
+        long doubled;
+        long incremented;
+    }
+
+    @Test
+    @DisplayName("RingBuffer::크기는 2의 거듭제곱이어야 한다")
+    void testBufferSize() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(ValueEvent::new, 1000));
+        assertEquals(1024, new RingBuffer<>(ValueEvent::new, 1024).bufferSize());
+    }
+
+    @Test
+    @DisplayName("RingBuffer::소비자는 발행 순서대로 받고, 이벤트 객체는 버퍼 크기만큼만 만들어 재사용한다")
+    void testOrderAndReuse() throws InterruptedException {
+        int bufferSize = 16;
+        int eventCount = 10_000;
+        RingBuffer<ValueEvent> ringBuffer = new RingBuffer<>(ValueEvent::new, bufferSize);
+        Set<ValueEvent> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(eventCount);
+
+        BatchEventProcessor<ValueEvent> consumer = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(),
+                (event, sequence, endOfBatch) -> {
+                    if (event.value != sequence) {
+                        outOfOrder.set(true);
+                    }
+                    seen.add(event);
+                    done.countDown();
+                });
+        ringBuffer.addGatingSequences(consumer.sequence());
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+
+        for (int i = 0; i < eventCount; i++) {
+            ringBuffer.publishEvent((event, sequence) -> event.value = sequence);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        consumer.halt();
+        consumerThread.join();
+        assertFalse(outOfOrder.get());
+        assertEquals(bufferSize, seen.size());
+        assertEquals(eventCount - 1, consumer.sequence().get());
+    }
+
+    @Test
+    @DisplayName("RingBuffer::여러 생산자가 동시에 발행해도 유실이나 중복이 없다")
+    void testMultipleProducers() throws InterruptedException {
+        int producerCount = 4;
+        int eventsPerProducer = 100_000;
+        RingBuffer<ValueEvent> ringBuffer = new RingBuffer<>(ValueEvent::new, 1024);
+        AtomicLong sum = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(producerCount * eventsPerProducer);
+
+        BatchEventProcessor<ValueEvent> consumer = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(),
+                (event, sequence, endOfBatch) -> {
+                    sum.addAndGet(event.value);
+                    done.countDown();
+                });
+        ringBuffer.addGatingSequences(consumer.sequence());
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+
+        ExecutorService producers = Executors.newFixedThreadPool(producerCount);
+        for (int i = 0; i < producerCount; i++) {
+            producers.submit(() -> {
+                for (int j = 1; j <= eventsPerProducer; j++) {
+                    long value = j;
+                    ringBuffer.publishEvent((event, sequence) -> event.value = value);
+                }
+            });
+        }
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        consumer.halt();
+        consumerThread.join();
+
+        long expected = (long) producerCount * eventsPerProducer * (eventsPerProducer + 1) / 2;
+        assertEquals(expected, sum.get());
+    }
+
+    @Test
+    @DisplayName("RingBuffer::다이아몬드 파이프라인에서 C는 A와 B가 모두 처리한 이벤트만 받는다")
+    void testDiamond() throws InterruptedException {
+        int eventCount = 100_000;
+        RingBuffer<ValueEvent> ringBuffer = new RingBuffer<>(ValueEvent::new, 256);
+        AtomicBoolean incomplete = new AtomicBoolean();
+        AtomicLong batches = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(eventCount);
+
+        //        ┌→ A(doubled) ┐
+        // 생산자 ┤             ├→ C
+        //        └→ B(incremented) ┘
+        BatchEventProcessor<ValueEvent> a = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(),
+                (event, sequence, endOfBatch) -> event.doubled = event.value * 2);
+        BatchEventProcessor<ValueEvent> b = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(),
+                (event, sequence, endOfBatch) -> event.incremented = event.value + 1);
+        BatchEventProcessor<ValueEvent> c = new BatchEventProcessor<>(ringBuffer,
+                ringBuffer.newBarrier(a.sequence(), b.sequence()),
+                (event, sequence, endOfBatch) -> {
+                    if (event.doubled != event.value * 2 || event.incremented != event.value + 1) {
+                        incomplete.set(true);
+                    }
+                    if (endOfBatch) {
+                        batches.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+        ringBuffer.addGatingSequences(c.sequence());
+
+        List<Thread> threads = new ArrayList<>();
+        for (BatchEventProcessor<ValueEvent> processor : List.of(a, b, c)) {
+            Thread thread = new Thread(processor);
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (int i = 0; i < eventCount; i++) {
+            ringBuffer.publishEvent((event, sequence) -> {
+                event.value = sequence;
+                event.doubled = -1;
+                event.incremented = -1;
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (BatchEventProcessor<ValueEvent> processor : List.of(a, b, c)) {
+            processor.halt();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(incomplete.get());
+        System.out.println("C가 받은 묶음 수: " + batches.get() + " (이벤트 " + eventCount + "개)");
+    }
+
+    /**
+     * WaitNotifyTest의 방식대로 synchronized와 wait()/notifyAll()로 만든 크기 제한 큐
+     */
+    static class WaitNotifyQueue {
+        private final long[] items;
+        private int head;
+        private int tail;
+        private int count;
+
+        WaitNotifyQueue(int capacity) {
+            this.items = new long[capacity];
+        }
+
+        synchronized void put(long item) throws InterruptedException {
+            while (count == items.length) {
+                wait();
+            }
+            items[tail] = item;
+            tail = (tail + 1) % items.length;
+            count++;
+            notifyAll();
+        }
+
+        synchronized long take() throws InterruptedException {
+            while (count == 0) {
+                wait();
+            }
+            long item = items[head];
+            head = (head + 1) % items.length;
+            count--;
+            notifyAll();
+            return item;
+        }
+    }
+
+    private static final int EVENT_COUNT = 2_000_000;
+    private static final int BUFFER_SIZE = 1024;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("생산자 하나, 소비자 하나로 wait/notify 큐, ArrayBlockingQueue, RingBuffer의 처리량 비교")
+    void testThroughput() throws Exception {
+        Benchmark.of("events/s")
+                .add("wait/notify", this::measureWaitNotify)
+                .add("ArrayBlockingQueue", this::measureBlockingQueue)
+                .add("RingBuffer", this::measureRingBuffer)
+                .run();
+    }
+
+    private long measureWaitNotify() throws InterruptedException {
+        WaitNotifyQueue queue = new WaitNotifyQueue(BUFFER_SIZE);
+        long[] sum = new long[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < EVENT_COUNT; i++) {
+                    sum[0] += queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.nanoTime();
+        consumer.start();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            queue.put(i);
+        }
+        consumer.join();
+        return eventsPerSecond(System.nanoTime() - start);
+    }
+
+    private long measureBlockingQueue() throws InterruptedException {
+        BlockingQueue<Long> queue = new ArrayBlockingQueue<>(BUFFER_SIZE);
+        long[] sum = new long[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < EVENT_COUNT; i++) {
+                    sum[0] += queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.nanoTime();
+        consumer.start();
+        for (long i = 0; i < EVENT_COUNT; i++) {
+            queue.put(i);
+        }
+        consumer.join();
+        return eventsPerSecond(System.nanoTime() - start);
+    }
+
+    private long measureRingBuffer() throws InterruptedException {
+        RingBuffer<ValueEvent> ringBuffer = new RingBuffer<>(ValueEvent::new, BUFFER_SIZE);
+        long[] sum = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+        BatchEventProcessor<ValueEvent> consumer = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(),
+                (event, sequence, endOfBatch) -> {
+                    sum[0] += event.value;
+                    if (sequence == EVENT_COUNT - 1) {
+                        done.countDown();
+                    }
+                });
+        ringBuffer.addGatingSequences(consumer.sequence());
+        Thread consumerThread = new Thread(consumer);
+
+        long start = System.nanoTime();
+        consumerThread.start();
+        for (long i = 0; i < EVENT_COUNT; i++) {
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).value = i;
+            ringBuffer.publish(sequence);
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        consumer.halt();
+        consumerThread.join();
+        return eventsPerSecond(elapsed);
+    }
+
+    private long eventsPerSecond(long elapsedNanos) {
+        return EVENT_COUNT * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+}
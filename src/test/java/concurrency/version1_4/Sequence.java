@@ -0,0 +1,69 @@
+package concurrency.version1_4;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 링 버퍼의 생산자 커서와 소비자 진행 위치를 나타내는 시퀀스 번호.
+ *
+ * 생산자와 소비자가 서로의 시퀀스를 계속 읽으므로, 앞뒤를 패딩해 다른 시퀀스와 같은 캐시 라인에 놓이지 않도록 한다.
+ * 값을 내보낼 때는 release 쓰기(set)로 충분하다. 소비자는 acquire로 읽으므로 시퀀스보다 앞서 쓴 이벤트 내용이 함께 보인다.
+ */
+public final class Sequence {
+
+    static final long INITIAL_VALUE = -1L;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Sequence.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    long p01, p02, p03, p04, p05, p06, p07;
+    private volatile long value;
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    public Sequence() {
+        this(INITIAL_VALUE);
+    }
+
+    public Sequence(long initialValue) {
+        this.value = initialValue;
+    }
+
+    public long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    public void set(long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+
+    public boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    /**
+     * CAS를 재시도하지 않고 한 번의 fetch-and-add로 delta만큼 올린다. 여러 스레드가 번호를 나눠 가질 때 쓴다.
+     */
+    public long getAndAdd(long delta) {
+        return (long) VALUE.getAndAdd(this, delta);
+    }
+
+    static long minimum(Sequence[] sequences, long defaultValue) {
+        long minimum = defaultValue;
+        for (Sequence sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,239 @@
+package concurrency.version1_4;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 경합이 없을 때는 하나의 CAS 셀(base)만 사용하고, CAS 실패로 경합이 감지되면
+ * 코어 수만큼까지 패딩된 셀 배열로 부풀려 스레드마다 다른 셀을 갱신하는 카운터.
+ *
+ * SynchronizedCounter처럼 모든 increment()가 하나의 모니터에서 직렬화되지 않고,
+ * AtomicLong처럼 모든 스레드가 같은 캐시 라인을 두고 CAS 재시도를 반복하지도 않는다.
+ * 원리는 LongAdder(Striped64)와 같다.
+ */
+public class StripedCounter {
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_CELLS = Integer.highestOneBit(Math.max(1, NCPU - 1) << 1);
+
+    private static final VarHandle BASE;
+    private static final VarHandle CELLS_BUSY;
+    private static final VarHandle CELL_VALUE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BASE = lookup.findVarHandle(StripedCounter.class, "base", long.class);
+            CELLS_BUSY = lookup.findVarHandle(StripedCounter.class, "cellsBusy", int.class);
+            CELL_VALUE = lookup.findVarHandle(Cell.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // 스레드마다 어느 셀을 갱신할지 정하는 해시. 충돌하면 다시 섞는다
+    private static final ThreadLocal<int[]> PROBE =
+            ThreadLocal.withInitial(() -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+    /**
+     * 앞뒤로 long 필드를 채워 다른 셀과 같은 캐시 라인(64바이트)에 놓이지 않도록 한다.
+     * jdk.internal.vm.annotation.Contended는 -XX:-RestrictContended 없이는 무시되므로 직접 패딩한다.
+     */
+    static final class Cell {
+        long p01, p02, p03, p04, p05, p06, p07;
+        volatile long value;
+        long p11, p12, p13, p14, p15, p16, p17;
+
+        Cell(long value) {
+            this.value = value;
+        }
+
+        boolean cas(long expected, long newValue) {
+            return CELL_VALUE.compareAndSet(this, expected, newValue);
+        }
+    }
+
+    private volatile long base;
+    private volatile Cell[] cells;
+    // 셀 배열을 만들거나 늘리는 동안 잡는 스핀락
+    private volatile int cellsBusy;
+
+    // sumApproximate()가 재사용하는 마지막 합계와 계산 시각
+    private volatile long cachedSum;
+    private volatile long cachedAt = Long.MIN_VALUE;
+    private final long staleNanos;
+
+    public StripedCounter() {
+        this(1_000_000L);
+    }
+
+    /**
+     * @param staleNanos sumApproximate()가 셀을 다시 합산하지 않고 이전 합계를 돌려줄 수 있는 시간
+     */
+    public StripedCounter(long staleNanos) {
+        if (staleNanos < 0) {
+            throw new IllegalArgumentException("staleNanos는 0 이상이어야 합니다: " + staleNanos);
+        }
+        this.staleNanos = staleNanos;
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long x) {
+        Cell[] cs = cells;
+        long b;
+        // 아직 경합이 없으면 base 하나에 CAS
+        if (cs == null && BASE.compareAndSet(this, b = base, b + x)) {
+            return;
+        }
+        int[] probe = PROBE.get();
+        Cell c;
+        if (cs != null && (c = cs[probe[0] & (cs.length - 1)]) != null) {
+            long v = c.value;
+            if (c.cas(v, v + x)) {
+                return;
+            }
+        }
+        addContended(x, probe);
+    }
+
+    // CAS가 실패했을 때: 셀을 만들거나, 다른 셀로 옮기거나, 셀 배열을 두 배로 늘린다
+    private void addContended(long x, int[] probe) {
+        boolean collided = false;
+        for (;;) {
+            Cell[] cs = cells;
+            if (cs != null) {
+                int index = probe[0] & (cs.length - 1);
+                Cell c = cs[index];
+                if (c == null) {
+                    if (cellsBusy == 0 && lockCells()) {
+                        try {
+                            if (cells == cs && cs[index] == null) {
+                                cs[index] = new Cell(x);
+                                return;
+                            }
+                        } finally {
+                            cellsBusy = 0;
+                        }
+                    }
+                    collided = false;
+                } else {
+                    long v = c.value;
+                    if (c.cas(v, v + x)) {
+                        return;
+                    }
+                    if (cs.length >= MAX_CELLS || cells != cs) {
+                        collided = false;
+                    } else if (!collided) {
+                        // 한 번 더 충돌하면 배열을 늘린다
+                        collided = true;
+                    } else if (cellsBusy == 0 && lockCells()) {
+                        try {
+                            if (cells == cs) {
+                                Cell[] expanded = new Cell[cs.length << 1];
+                                System.arraycopy(cs, 0, expanded, 0, cs.length);
+                                cells = expanded;
+                            }
+                        } finally {
+                            cellsBusy = 0;
+                        }
+                        collided = false;
+                        continue;
+                    }
+                }
+                probe[0] = rehash(probe[0]);
+            } else if (cellsBusy == 0 && cells == null && lockCells()) {
+                try {
+                    if (cells == null) {
+                        Cell[] created = new Cell[2];
+                        created[probe[0] & 1] = new Cell(x);
+                        cells = created;
+                        return;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+            } else {
+                long b = base;
+                if (BASE.compareAndSet(this, b, b + x)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean lockCells() {
+        return CELLS_BUSY.compareAndSet(this, 0, 1);
+    }
+
+    // xorshift
+    private static int rehash(int h) {
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+
+    /**
+     * base와 모든 셀의 합. 동시에 갱신 중이면 그 중 일부만 반영될 수 있다.
+     */
+    public long sum() {
+        long sum = base;
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) {
+                    sum += c.value;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 합계를 구하면서 base와 셀을 0으로 되돌린다. 셀마다 getAndSet으로 비우므로
+     * 동시에 들어온 증가분은 이번 합계나 다음 합계 중 한 곳에 정확히 한 번 포함된다.
+     */
+    public long sumThenReset() {
+        long sum = (long) BASE.getAndSet(this, 0L);
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) {
+                    sum += (long) CELL_VALUE.getAndSet(c, 0L);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 빠른 근사 읽기. 마지막 합산 후 staleNanos가 지나지 않았으면 셀을 순회하지 않고 이전 합계를 돌려준다.
+     * 메트릭 노출처럼 자주 읽지만 약간 늦은 값이어도 되는 곳에서 쓴다.
+     */
+    public long sumApproximate() {
+        long now = System.nanoTime();
+        long at = cachedAt;
+        if (at != Long.MIN_VALUE && now - at < staleNanos) {
+            return cachedSum;
+        }
+        long sum = sum();
+        cachedSum = sum;
+        cachedAt = now;
+        return sum;
+    }
+
+    // 현재 셀 수 (부풀지 않았으면 0)
+    int stripes() {
+        Cell[] cs = cells;
+        return cs == null ? 0 : cs.length;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,194 @@
+package concurrency.version1_4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class StripedCounterTest {
+
+    @DisplayName("여러 스레드에서 카운터를 증가시켜도 합계가 정확하다")
+    @Test
+    void testConcurrentIncrement() throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+        int threadCount = 8;
+        int incrementsPerThread = 100_000;
+
+        runConcurrently(threadCount, () -> {
+            for (int i = 0; i < incrementsPerThread; i++) {
+                counter.increment();
+            }
+        });
+
+        assertEquals((long) threadCount * incrementsPerThread, counter.sum());
+        System.out.println("셀 수: " + counter.stripes());
+    }
+
+    @DisplayName("sumThenReset()은 합계를 반환하고 카운터를 0으로 되돌린다")
+    @Test
+    void testSumThenReset() {
+        StripedCounter counter = new StripedCounter();
+        counter.add(10);
+        counter.add(-3);
+
+        assertEquals(7, counter.sumThenReset());
+        assertEquals(0, counter.sum());
+
+        counter.increment();
+        assertEquals(1, counter.sum());
+    }
+
+    @DisplayName("동시에 증가하는 중에 sumThenReset()을 반복해도 증가분이 누락되거나 중복되지 않는다")
+    @Test
+    void testSumThenResetDuringIncrement() throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+        int threadCount = 4;
+        int incrementsPerThread = 100_000;
+        AtomicLong drained = new AtomicLong();
+
+        Thread drainer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                drained.addAndGet(counter.sumThenReset());
+            }
+        });
+        drainer.start();
+
+        runConcurrently(threadCount, () -> {
+            for (int i = 0; i < incrementsPerThread; i++) {
+                counter.increment();
+            }
+        });
+
+        drainer.interrupt();
+        drainer.join();
+        drained.addAndGet(counter.sumThenReset());
+
+        assertEquals((long) threadCount * incrementsPerThread, drained.get());
+    }
+
+    @DisplayName("sumApproximate()는 staleNanos 동안 이전 합계를 재사용한다")
+    @Test
+    void testSumApproximate() {
+        StripedCounter cached = new StripedCounter(Long.MAX_VALUE);
+        cached.add(5);
+        assertEquals(5, cached.sumApproximate());
+        cached.add(5);
+        // 합산한 지 staleNanos가 지나지 않았으므로 이전 값
+        assertEquals(5, cached.sumApproximate());
+        assertEquals(10, cached.sum());
+
+        StripedCounter uncached = new StripedCounter(0);
+        uncached.add(5);
+        assertEquals(5, uncached.sumApproximate());
+        uncached.add(5);
+        assertEquals(10, uncached.sumApproximate());
+    }
+
+    interface BenchmarkCounter {
+        void increment();
+
+        long get();
+    }
+
+    static class SynchronizedCounter implements BenchmarkCounter {
+        private long count = 0;
+
+        @Override
+        public synchronized void increment() {
+            count++;
+        }
+
+        @Override
+        public synchronized long get() {
+            return count;
+        }
+    }
+
+    @Tag("benchmark")
+    @DisplayName("1~64개 스레드에서 synchronized, AtomicLong, LongAdder, StripedCounter의 처리량 비교")
+    @Test
+    void testContentionBenchmark() throws InterruptedException {
+        int incrementsPerThread = 200_000;
+        Map<String, Supplier<BenchmarkCounter>> counters = new LinkedHashMap<>();
+        counters.put("synchronized", SynchronizedCounter::new);
+        counters.put("AtomicLong", () -> {
+            AtomicLong atomic = new AtomicLong();
+            return of(atomic::incrementAndGet, atomic::get);
+        });
+        counters.put("LongAdder", () -> {
+            LongAdder adder = new LongAdder();
+            return of(adder::increment, adder::sum);
+        });
+        counters.put("StripedCounter", () -> {
+            StripedCounter striped = new StripedCounter();
+            return of(striped::increment, striped::sum);
+        });
+
+        for (int threadCount = 1; threadCount <= 64; threadCount *= 2) {
+            for (Map.Entry<String, Supplier<BenchmarkCounter>> entry : counters.entrySet()) {
+                BenchmarkCounter counter = entry.getValue().get();
+                long start = System.nanoTime();
+                runConcurrently(threadCount, () -> {
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        counter.increment();
+                    }
+                });
+                long elapsed = System.nanoTime() - start;
+
+                long total = (long) threadCount * incrementsPerThread;
+                assertEquals(total, counter.get(), entry.getKey());
+                System.out.printf("threads=%-3d %-15s %,8d ops/ms%n",
+                        threadCount, entry.getKey(), total * 1_000_000 / Math.max(1, elapsed));
+            }
+        }
+    }
+
+    private static BenchmarkCounter of(Runnable increment, LongSupplier get) {
+        return new BenchmarkCounter() {
+            @Override
+            public void increment() {
+                increment.run();
+            }
+
+            @Override
+            public long get() {
+                return get.getAsLong();
+            }
+        };
+    }
+
+    // 모든 스레드가 준비된 뒤 동시에 출발시키고 끝날 때까지 기다린다
+    private static void runConcurrently(int threadCount, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(threads.stream().noneMatch(Thread::isAlive));
+    }
+}
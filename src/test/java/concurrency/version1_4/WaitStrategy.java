@@ -0,0 +1,239 @@
+package concurrency.version1_4;
+
+import java.lang.invoke.VarHandle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 소비자가 데이터를 기다리는 방법.
+ *
+ * WaitNotifyTest의 소비자는 항상 lock.wait()로 잠들기 때문에 깨어나는 데 문맥 교환이 필요하다.
+ * 지연 시간이 중요한 소비자는 CPU를 쓰더라도 바쁜 대기를, 처리량이나 CPU가 중요한 소비자는 잠드는 방식을 고를 수 있도록
+ * 기다리는 방법을 분리한다. 뒤로 갈수록 CPU를 덜 쓰는 대신 깨어나는 데 오래 걸린다.
+ *
+ * <ul>
+ *     <li>busySpin: Thread.onSpinWait()만 반복한다. 지연 시간이 가장 짧지만 기다리는 동안 코어 하나를 다 쓴다.</li>
+ *     <li>spinThenYield: 잠시 바쁜 대기 후 Thread.yield()로 다른 스레드에 양보한다.</li>
+ *     <li>spinThenPark: 잠시 바쁜 대기 후 park()로 잠들고, 생산자가 signalAll()에서 unpark()로 깨운다.</li>
+ *     <li>timedPark: 매번 parkNanos()로 정해진 시간만큼 잔다. 생산자가 깨울 필요는 없다.</li>
+ *     <li>conditionSignal: ReentrantLock의 Condition에서 기다린다. wait()/notifyAll()과 같은 방식이다.</li>
+ * </ul>
+ * phasedBackoff는 바쁜 대기, yield, 짧은 parkNanos()를 차례로 거치는 절충안으로 RingBuffer와 MpmcArrayQueue의 기본값이다.
+ *
+ * 생산자는 소비자가 기다리는 상태를 바꾼 뒤 signalAll()을 호출해야 한다. 잠들지 않는 전략에서는 아무것도 하지 않는다.
+ */
+public interface WaitStrategy {
+
+    /**
+     * ready가 true를 반환할 때까지 기다린다. ready는 여러 번 호출될 수 있다.
+     */
+    void await(BooleanSupplier ready) throws InterruptedException;
+
+    /**
+     * 기다리는 소비자를 깨운다. 잠든 소비자가 없으면 빠르게 반환해야 한다.
+     * 생산자는 상태를 lazySet(release 쓰기)으로 바꾸는 경우가 많으므로, 잠드는 전략은 기다리는 소비자를 확인하기 전에
+     * 직접 StoreLoad 펜스를 둬야 한다.
+     */
+    default void signalAll() {
+    }
+
+    static WaitStrategy busySpin() {
+        return new BusySpin();
+    }
+
+    static WaitStrategy spinThenYield(int spinTries) {
+        return new SpinThenYield(spinTries);
+    }
+
+    static WaitStrategy spinThenPark(int spinTries) {
+        return new SpinThenPark(spinTries);
+    }
+
+    static WaitStrategy timedPark(long parkTime, TimeUnit unit) {
+        return new TimedPark(unit.toNanos(parkTime));
+    }
+
+    static WaitStrategy conditionSignal() {
+        return new ConditionSignal();
+    }
+
+    static WaitStrategy phasedBackoff(int spinTries, int yieldTries, long parkTime, TimeUnit unit) {
+        return new PhasedBackoff(spinTries, yieldTries, unit.toNanos(parkTime));
+    }
+
+    private static void checkInterrupt() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            while (!ready.getAsBoolean()) {
+                checkInterrupt();
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    final class SpinThenYield implements WaitStrategy {
+        private final int spinTries;
+
+        SpinThenYield(int spinTries) {
+            this.spinTries = spinTries;
+        }
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            // 양보 단계에 들어가면 counter를 더 올리지 않아 오래 기다려도 넘쳐서 다시 스핀하지 않는다
+            int counter = 0;
+            while (!ready.getAsBoolean()) {
+                checkInterrupt();
+                if (counter < spinTries) {
+                    counter++;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    /**
+     * 잠들기 전에 자신을 waiters에 등록하고 ready를 다시 확인한다. 생산자는 상태를 바꾼 뒤 waiters를 확인한다.
+     * 생산자의 상태 변경은 release 쓰기라 뒤따르는 waiters 읽기와 순서가 바뀔 수 있으므로(x86에서도 store-load는 바뀐다)
+     * signalAll()은 fullFence()로 시작한다. 소비자 쪽은 waiters 등록이 CAS라 이미 펜스가 있다.
+     * 둘 다 펜스가 있어야 소비자가 상태 변경을 놓치고 생산자는 등록을 놓쳐 영원히 잠드는 일이 없다.
+     */
+    final class SpinThenPark implements WaitStrategy {
+        private final int spinTries;
+        private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
+        SpinThenPark(int spinTries) {
+            this.spinTries = spinTries;
+        }
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            for (int counter = 0; counter < spinTries; counter++) {
+                if (ready.getAsBoolean()) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+            Thread current = Thread.currentThread();
+            waiters.add(current);
+            try {
+                while (!ready.getAsBoolean()) {
+                    checkInterrupt();
+                    LockSupport.park(this);
+                }
+            } finally {
+                waiters.remove(current);
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            VarHandle.fullFence();
+            if (!waiters.isEmpty()) {
+                for (Thread waiter : waiters) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+    }
+
+    final class TimedPark implements WaitStrategy {
+        private final long parkNanos;
+
+        TimedPark(long parkNanos) {
+            this.parkNanos = parkNanos;
+        }
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            while (!ready.getAsBoolean()) {
+                checkInterrupt();
+                LockSupport.parkNanos(this, parkNanos);
+            }
+        }
+    }
+
+    final class PhasedBackoff implements WaitStrategy {
+        private final int spinTries;
+        private final int yieldTries;
+        private final long parkNanos;
+
+        PhasedBackoff(int spinTries, int yieldTries, long parkNanos) {
+            this.spinTries = spinTries;
+            this.yieldTries = yieldTries;
+            this.parkNanos = parkNanos;
+        }
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            // 잠드는 단계에 들어가면 counter를 더 올리지 않아 오래 기다려도 넘쳐서 다시 스핀하지 않는다
+            long counter = 0;
+            while (!ready.getAsBoolean()) {
+                checkInterrupt();
+                if (counter < spinTries) {
+                    counter++;
+                    Thread.onSpinWait();
+                } else if (counter < (long) spinTries + yieldTries) {
+                    counter++;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, parkNanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * 기다리는 스레드 수를 세어 두고, 아무도 기다리지 않으면 signalAll()에서 락을 잡지 않는다.
+     * SpinThenPark와 같은 이유로 waiters를 읽기 전에 fullFence()를 둔다.
+     */
+    final class ConditionSignal implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition readyCondition = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            if (ready.getAsBoolean()) {
+                return;
+            }
+            lock.lock();
+            waiters.incrementAndGet();
+            try {
+                while (!ready.getAsBoolean()) {
+                    readyCondition.await();
+                }
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            VarHandle.fullFence();
+            if (waiters.get() > 0) {
+                lock.lock();
+                try {
+                    readyCondition.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package concurrency.version1_4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.RingBuffer.BatchEventProcessor;
+import concurrency.version5.LatencyHistogram;
+import concurrency.version5.MpmcArrayQueue;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class WaitStrategyTest {
+
+    static Map<String, Supplier<WaitStrategy>> strategies() {
+        Map<String, Supplier<WaitStrategy>> strategies = new LinkedHashMap<>();
+        strategies.put("busySpin", WaitStrategy::busySpin);
+        strategies.put("spinThenYield", () -> WaitStrategy.spinThenYield(100));
+        strategies.put("spinThenPark", () -> WaitStrategy.spinThenPark(100));
+        strategies.put("timedPark(50us)", () -> WaitStrategy.timedPark(50, TimeUnit.MICROSECONDS));
+        strategies.put("conditionSignal", WaitStrategy::conditionSignal);
+        strategies.put("phasedBackoff", () -> WaitStrategy.phasedBackoff(100, 100, 1, TimeUnit.MICROSECONDS));
+        return strategies;
+    }
+
+    static Stream<Arguments> strategyArguments() {
+        return strategies().entrySet().stream().map(entry -> Arguments.of(entry.getKey(), entry.getValue()));
+    }
+
+    static class TimestampEvent {
+        long value;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("strategyArguments")
+    @DisplayName("WaitStrategy::어떤 전략으로 기다려도 RingBuffer 소비자가 모든 이벤트를 받는다")
+    void testRingBufferHandoff(String name, Supplier<WaitStrategy> strategy) throws InterruptedException {
+        RingBuffer<TimestampEvent> ringBuffer = new RingBuffer<>(TimestampEvent::new, 64);
+        int eventCount = 10_000;
+        AtomicLong sum = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(eventCount);
+        BatchEventProcessor<TimestampEvent> consumer = new BatchEventProcessor<>(ringBuffer,
+                ringBuffer.newBarrier(strategy.get()), (event, sequence, endOfBatch) -> {
+                    sum.addAndGet(event.value);
+                    done.countDown();
+                });
+        ringBuffer.addGatingSequences(consumer.sequence());
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+
+        for (int i = 1; i <= eventCount; i++) {
+            long value = i;
+            ringBuffer.publishEvent((event, sequence) -> event.value = value);
+            if (i % 1000 == 0) {
+                Thread.sleep(1);  // 소비자가 잠드는 구간도 지나가도록
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), name);
+        consumer.halt();
+        consumerThread.join(1000);
+        assertEquals((long) eventCount * (eventCount + 1) / 2, sum.get());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("strategyArguments")
+    @DisplayName("WaitStrategy::MpmcArrayQueue의 put()/take()도 같은 전략으로 기다린다")
+    void testQueueHandoff(String name, Supplier<WaitStrategy> strategy) throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(4, strategy.get());
+        int count = 10_000;
+        long[] sum = {0};
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    sum[0] += queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        for (int i = 1; i <= count; i++) {
+            queue.put(i);
+        }
+        consumer.join(10_000);
+        assertEquals((long) count * (count + 1) / 2, sum[0], name);
+    }
+
+    @Test
+    @DisplayName("WaitStrategy::기다리는 중에 인터럽트되면 InterruptedException을 던진다")
+    void testInterrupt() throws InterruptedException {
+        for (Supplier<WaitStrategy> strategy : strategies().values()) {
+            WaitStrategy waitStrategy = strategy.get();
+            AtomicBoolean interrupted = new AtomicBoolean();
+            Thread waiter = new Thread(() -> {
+                try {
+                    waitStrategy.await(() -> false);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            });
+            waiter.start();
+            Thread.sleep(20);
+            waiter.interrupt();
+            waitStrategy.signalAll();
+            waiter.join(1000);
+            assertTrue(interrupted.get());
+        }
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> WaitStrategy.busySpin().await(() -> false));
+    }
+
+    private static final int HANDOFFS = 20_000;
+
+    /**
+     * 원소 하나를 주고받을 때마다 양쪽 모두 잠든 상태에서 깨어나야 하는 핑퐁. 생산자가 lazySet으로 발행한 뒤 펜스 없이
+     * 기다리는 스레드를 확인하면, 등록을 놓쳐 시간 제한 없이 잠든 소비자를 영원히 깨우지 않는 경우가 생긴다.
+     */
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {"spinThenPark", "conditionSignal"})
+    @DisplayName("WaitStrategy::잠드는 전략에서 원소 하나씩 주고받아도 깨우기를 놓치지 않는다")
+    void testNoLostWakeup(String name) throws InterruptedException {
+        Supplier<WaitStrategy> strategy = name.equals("spinThenPark")
+                ? () -> WaitStrategy.spinThenPark(0) : WaitStrategy::conditionSignal;
+        MpmcArrayQueue<Integer> ping = new MpmcArrayQueue<>(2, strategy.get());
+        MpmcArrayQueue<Integer> pong = new MpmcArrayQueue<>(2, strategy.get());
+        Thread echo = new Thread(() -> {
+            try {
+                for (int i = 0; i < HANDOFFS; i++) {
+                    pong.put(ping.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        echo.setDaemon(true);
+        echo.start();
+
+        Thread sender = new Thread(() -> {
+            try {
+                for (int i = 0; i < HANDOFFS; i++) {
+                    ping.put(i);
+                    assertEquals(i, pong.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sender.setDaemon(true);
+        sender.start();
+
+        sender.join(TimeUnit.SECONDS.toMillis(30));
+        echo.join(1000);
+        assertTrue(!sender.isAlive() && !echo.isAlive(), name + " 깨우기를 놓쳐 멈췄다");
+    }
+
+    private static final int LATENCY_SAMPLES = 2_000;
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * 생산자가 100us 간격으로 발행 시각을 담아 보내고, 소비자가 받은 시각과의 차이를 기록한다.
+     * 간격을 두는 이유는 소비자가 매번 기다리는 상태에서 깨어나는 비용을 재기 위해서다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("전략별 전달 지연 시간(p50, p99)과 기다리는 동안 소비자가 쓴 CPU 시간 비교")
+    void testLatencyAndCpu() throws InterruptedException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        for (Map.Entry<String, Supplier<WaitStrategy>> entry : strategies().entrySet()) {
+            RingBuffer<TimestampEvent> ringBuffer = new RingBuffer<>(TimestampEvent::new, 1024);
+            LatencyHistogram latency = new LatencyHistogram();
+            CountDownLatch done = new CountDownLatch(LATENCY_SAMPLES);
+            BatchEventProcessor<TimestampEvent> consumer = new BatchEventProcessor<>(ringBuffer,
+                    ringBuffer.newBarrier(entry.getValue().get()), (event, sequence, endOfBatch) -> {
+                        latency.record(System.nanoTime() - event.value);
+                        done.countDown();
+                    });
+            ringBuffer.addGatingSequences(consumer.sequence());
+            Thread consumerThread = new Thread(consumer);
+            consumerThread.start();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < LATENCY_SAMPLES; i++) {
+                long publishAt = start + i * PUBLISH_INTERVAL_NANOS;
+                while (System.nanoTime() < publishAt) {
+                    Thread.onSpinWait();
+                }
+                ringBuffer.publishEvent((event, sequence) -> event.value = System.nanoTime());
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS), entry.getKey());
+            long elapsed = System.nanoTime() - start;
+            long cpu = threadMXBean.isThreadCpuTimeSupported() ? threadMXBean.getThreadCpuTime(consumerThread.getId()) : -1;
+            consumer.halt();
+            consumerThread.join(1000);
+
+            System.out.printf("%-16s p50=%,8dns p99=%,10dns max=%,11dns 소비자 CPU=%5.1f%%%n",
+                    entry.getKey(), latency.percentile(50), latency.percentile(99), latency.max(),
+                    cpu < 0 ? Double.NaN : 100.0 * cpu / elapsed);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package concurrency.version21;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 블로킹 작업을 어떤 스레드에서 실행할지 정한다.
+ *
+ * ExecutorServiceTest처럼 newFixedThreadPool(n)에서 sleep이나 I/O로 막히는 작업을 돌리면 동시에 진행되는 작업 수가 n으로 묶인다.
+ * 가상 스레드는 막히는 동안 캐리어(플랫폼) 스레드를 내려놓으므로 작업마다 스레드를 하나씩 줘도 된다.
+ *
+ * 가상 스레드는 JDK 21부터 있으므로 이 프로젝트(JDK 17)에서 바로 부를 수 없다. 실행 중인 JDK에
+ * Executors.newVirtualThreadPerTaskExecutor()가 있으면 리플렉션으로 부르고, 없으면 작업마다 플랫폼 스레드를 주는
+ * newCachedThreadPool()로 대신한다. 대체 실행기도 동시성 제한은 없지만 스레드마다 스택과 커널 스레드를 쓴다.
+ *
+ * 컴포넌트마다 -Dexecution.mode.&lt;컴포넌트 이름&gt;=VIRTUAL 처럼 실행 방식을 바꿀 수 있다.
+ */
+public enum ExecutionMode {
+
+    /**
+     * 크기가 고정된 플랫폼 스레드 풀. 동시에 막힐 수 있는 작업 수가 풀 크기로 제한된다.
+     */
+    PLATFORM_POOL {
+        @Override
+        public ExecutorService newExecutor(int poolSize) {
+            return Executors.newFixedThreadPool(poolSize);
+        }
+    },
+
+    /**
+     * 작업마다 가상 스레드 하나. poolSize는 쓰지 않는다.
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService newExecutor(int poolSize) {
+            if (NEW_VIRTUAL_EXECUTOR == null) {
+                return Executors.newCachedThreadPool();
+            }
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalStateException("가상 스레드 실행기를 만들지 못했습니다.", t);
+            }
+        }
+    };
+
+    private static final MethodHandle NEW_VIRTUAL_EXECUTOR;
+    private static final MethodHandle IS_VIRTUAL;
+
+    static {
+        MethodHandle newExecutor = null;
+        MethodHandle isVirtual = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+            isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            // JDK 21 미만. VIRTUAL은 newCachedThreadPool()로 대신한다
+        }
+        NEW_VIRTUAL_EXECUTOR = newExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    /**
+     * @param poolSize PLATFORM_POOL의 스레드 수
+     */
+    public abstract ExecutorService newExecutor(int poolSize);
+
+    /**
+     * 실행 중인 JDK가 가상 스레드를 지원하는지
+     */
+    public static boolean virtualThreadsSupported() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * execution.mode.&lt;component&gt; 시스템 속성에 지정한 실행 방식. 없으면 defaultMode를 반환한다.
+     */
+    public static ExecutionMode forComponent(String component, ExecutionMode defaultMode) {
+        String configured = System.getProperty("execution.mode." + component);
+        return configured == null ? defaultMode : valueOf(configured.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,129 @@
+package concurrency.version21;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * 가상 스레드가 캐리어 스레드에 고정(pinning)되는 코드 위치를 찾는다.
+ *
+ * 가상 스레드는 synchronized 블록 안에서 막히면 캐리어 스레드를 내려놓지 못한다(JDK 21 기준). 이런 곳이 많으면
+ * 캐리어 수(기본값은 코어 수)만큼만 동시에 진행되어 고정 크기 풀과 다를 게 없어진다. 두 가지 방법으로 찾는다.
+ *
+ * <ul>
+ *     <li>표본 조사: 주기마다 ThreadMXBean으로 플랫폼 스레드를 훑어, 모니터를 쥔 채 WAITING/TIMED_WAITING인 스레드가
+ *     그 모니터를 잡은 위치를 센다. 가상 스레드로 옮기기 전에 플랫폼 스레드 풀에서 미리 돌려 볼 때 쓴다.</li>
+ *     <li>JFR: 가상 스레드를 지원하는 JDK라면 jdk.VirtualThreadPinned 이벤트도 구독해 실제로 고정된 위치를 센다.
+ *     가상 스레드는 ThreadMXBean에 보이지 않으므로 이 방법만 가상 스레드를 본다. 이벤트는 1초 정도 늦게 도착한다.</li>
+ * </ul>
+ */
+public class PinningDetector implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    // dumpAllThreads()는 safepoint에서 모든 스레드를 멈추고 스택을 훑으므로 짧은 주기로 돌리면 애플리케이션 전체가 자주 멈춘다
+    private static final Duration DEFAULT_INTERVAL = Duration.ofMillis(100);
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final Predicate<String> threadNameFilter;
+    private final long intervalNanos;
+    private final Map<String, LongAdder> pinnedSites = new ConcurrentHashMap<>();
+    private final Thread sampler;
+    private final RecordingStream recording;
+    private volatile boolean running = true;
+
+    public PinningDetector() {
+        this(name -> true, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * 표본 조사는 매번 JVM 전체를 잠깐 멈추고 멈춤은 스레드 수에 비례하므로, 주기를 줄이는 것은 짧은 진단에서만 한다.
+     *
+     * @param threadNameFilter 표본 조사할 플랫폼 스레드 이름 조건
+     * @param interval         표본 조사 주기. 기본값은 100ms
+     */
+    public PinningDetector(Predicate<String> threadNameFilter, Duration interval) {
+        this.threadNameFilter = threadNameFilter;
+        this.intervalNanos = interval.toNanos();
+        this.sampler = new Thread(this::sample, "pinning-detector");
+        this.sampler.setDaemon(true);
+        this.sampler.start();
+        this.recording = ExecutionMode.virtualThreadsSupported() ? startRecording() : null;
+    }
+
+    private RecordingStream startRecording() {
+        RecordingStream stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+        stream.onEvent(PINNED_EVENT, event -> record(siteOf(event.getStackTrace())));
+        stream.startAsync();
+        return stream;
+    }
+
+    private void sample() {
+        while (running) {
+            for (ThreadInfo info : threadMXBean.dumpAllThreads(true, false)) {
+                Thread.State state = info.getThreadState();
+                if ((state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING)
+                        && info.getLockedMonitors().length > 0
+                        && threadNameFilter.test(info.getThreadName())) {
+                    for (MonitorInfo monitor : info.getLockedMonitors()) {
+                        StackTraceElement frame = monitor.getLockedStackFrame();
+                        record(frame == null ? "unknown" : frame.toString());
+                    }
+                }
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String siteOf(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        // 맨 위는 park 같은 JDK 내부 프레임이므로 JDK 밖의 첫 프레임을 위치로 삼는다
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.")) {
+                return type + "." + frame.getMethod().getName() + "(line " + frame.getLineNumber() + ")";
+            }
+        }
+        return "unknown";
+    }
+
+    private void record(String site) {
+        pinnedSites.computeIfAbsent(site, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * 지금까지 발견한 위치별 횟수. 표본 조사는 같은 대기를 여러 번 셀 수 있으므로 횟수는 머문 시간에 비례한다.
+     */
+    public Map<String, Long> pinnedSites() {
+        Map<String, Long> sites = new TreeMap<>();
+        pinnedSites.forEach((site, count) -> sites.put(site, count.sum()));
+        return sites;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        sampler.interrupt();
+        sampler.join();
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
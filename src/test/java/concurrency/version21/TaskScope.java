@@ -0,0 +1,318 @@
+package concurrency.version21;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 여러 하위 작업을 한 범위(scope) 안에서 실행하고, 결과가 정해지는 즉시 남은 작업을 취소하는 구조적 동시성 API.
+ *
+ * invokeAll()은 하나가 실패해도 나머지가 끝날 때까지 기다리고, 팬아웃 조회에서 늦게 온 답은 아무도 읽지 않는데도 끝까지 CPU를 쓴다.
+ * JDK 21의 StructuredTaskScope(프리뷰)와 같은 모양으로, 다음 정책 중 하나가 정해지면 끝나지 않은 하위 작업을 인터럽트한다.
+ * <ul>
+ *     <li>allSuccess: 모두 성공해야 한다. 하나라도 실패하면 바로 끝난다. invokeAll()에 해당한다.</li>
+ *     <li>firstSuccess: 하나만 성공하면 된다. 모두 실패해야 실패로 끝난다. invokeAny()에 해당한다.</li>
+ *     <li>quorum(n): fork한 M개 중 n개가 성공하면 끝난다. 남은 작업이 모두 성공해도 n개가 안 되면 바로 실패로 끝난다.</li>
+ * </ul>
+ *
+ * 범위에는 마감 시각이 있고, 하위 작업을 실행하는 동안 그 스레드의 현재 마감 시각으로 전파된다. 하위 작업은 remaining()으로
+ * 남은 시간을 읽어 자신의 I/O 타임아웃에 쓰고, 하위 작업 안에서 연 범위는 더 긴 타임아웃을 줘도 바깥 마감 시각을 넘지 않는다.
+ *
+ * fork()와 join()은 범위를 연 스레드에서만 부르고, try-with-resources로 닫는다. close()는 남은 작업을 취소하고
+ * 실제로 모두 끝날 때까지 기다리므로, 범위를 벗어난 뒤에는 하위 작업이 남아 있지 않다.
+ */
+public final class TaskScope<T> implements AutoCloseable {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+    private static final int ALL = -1;
+
+    public enum State {
+        // 아직 끝나지 않았거나 시작하기 전에 취소됨
+        UNAVAILABLE,
+        SUCCESS,
+        FAILED
+    }
+
+    /**
+     * fork()한 하위 작업. 범위가 join()에서 돌아온 뒤에 결과를 읽는다.
+     */
+    public final class Subtask implements Runnable {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        private final Callable<? extends T> task;
+        private final AtomicInteger runState = new AtomicInteger(NEW);
+        private Thread runner;  // runState 전환과 인터럽트는 this로 보호한다
+        private volatile State state = State.UNAVAILABLE;
+        private T result;
+        private Throwable exception;
+
+        private Subtask(Callable<? extends T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (!runState.compareAndSet(NEW, RUNNING)) {
+                    return;  // 시작하기 전에 취소됐다
+                }
+                runner = Thread.currentThread();
+            }
+            Long previousDeadline = DEADLINE.get();
+            DEADLINE.set(deadlineNanos);
+            try {
+                result = task.call();
+                state = State.SUCCESS;
+            } catch (Throwable t) {
+                exception = t;
+                state = State.FAILED;
+            } finally {
+                if (previousDeadline == null) {
+                    DEADLINE.remove();
+                } else {
+                    DEADLINE.set(previousDeadline);
+                }
+                synchronized (this) {
+                    runState.set(DONE);
+                    runner = null;
+                }
+                onComplete(this);
+            }
+        }
+
+        /**
+         * 시작 전이면 실행되지 않게 하고, 실행 중이면 인터럽트한다. DONE 이후에는 스레드가 다른 작업을 돌고 있을 수 있으므로 건드리지 않는다.
+         */
+        private void cancel() {
+            synchronized (this) {
+                if (runState.compareAndSet(NEW, CANCELLED)) {
+                    finished();
+                } else if (runState.get() == RUNNING) {
+                    runner.interrupt();
+                }
+            }
+        }
+
+        public State state() {
+            return state;
+        }
+
+        public T get() {
+            if (state != State.SUCCESS) {
+                throw new IllegalStateException("성공한 작업이 아닙니다: " + state);
+            }
+            return result;
+        }
+
+        public Throwable exception() {
+            if (state != State.FAILED) {
+                throw new IllegalStateException("실패한 작업이 아닙니다: " + state);
+            }
+            return exception;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int required;
+    private final long deadlineNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition resolvedCondition = lock.newCondition();
+    private final Condition allFinished = lock.newCondition();
+    private final List<Subtask> subtasks = new ArrayList<>();
+    private final List<Subtask> succeeded = new ArrayList<>();
+    private final List<Throwable> failures = new ArrayList<>();
+    private int unfinished;
+    private boolean joining;
+    private boolean resolved;
+    private boolean closed;
+
+    private TaskScope(ExecutorService executor, int required, Duration timeout) {
+        this.executor = executor;
+        this.required = required;
+        long deadline = System.nanoTime() + Math.min(timeout.toNanos(), Long.MAX_VALUE / 2);
+        Long inherited = DEADLINE.get();
+        this.deadlineNanos = inherited != null && inherited - deadline < 0 ? inherited : deadline;
+    }
+
+    public static <T> TaskScope<T> allSuccess(ExecutorService executor, Duration timeout) {
+        return new TaskScope<>(executor, ALL, timeout);
+    }
+
+    public static <T> TaskScope<T> firstSuccess(ExecutorService executor, Duration timeout) {
+        return new TaskScope<>(executor, 1, timeout);
+    }
+
+    public static <T> TaskScope<T> quorum(int required, ExecutorService executor, Duration timeout) {
+        if (required < 1) {
+            throw new IllegalArgumentException("required는 1 이상이어야 합니다: " + required);
+        }
+        return new TaskScope<>(executor, required, timeout);
+    }
+
+    /**
+     * 지금 스레드가 실행 중인 하위 작업의 남은 시간. 범위 밖에서 부르면 비어 있다.
+     */
+    public static Optional<Duration> remaining() {
+        Long deadline = DEADLINE.get();
+        return deadline == null ? Optional.empty()
+                : Optional.of(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+    }
+
+    /**
+     * 결과가 이미 정해졌으면 실행하지 않은 채 UNAVAILABLE 상태인 작업을 반환한다.
+     * executor가 거부하면 그 작업은 범위에서 빼고 RejectedExecutionException을 그대로 던진다. join()은 거부된 작업을 세지 않는다.
+     */
+    public Subtask fork(Callable<? extends T> task) {
+        Subtask subtask = new Subtask(task);
+        lock.lock();
+        try {
+            if (closed || joining) {
+                throw new IllegalStateException("join() 또는 close() 이후에는 fork()할 수 없습니다.");
+            }
+            subtasks.add(subtask);
+            unfinished++;
+            if (resolved) {
+                subtask.cancel();
+                return subtask;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            executor.execute(subtask);
+        } catch (RejectedExecutionException e) {
+            lock.lock();
+            try {
+                subtask.cancel();
+                subtasks.remove(subtask);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+        return subtask;
+    }
+
+    private void onComplete(Subtask subtask) {
+        lock.lock();
+        try {
+            if (!resolved) {
+                if (subtask.state == State.SUCCESS) {
+                    succeeded.add(subtask);
+                } else {
+                    failures.add(subtask.exception);
+                }
+                evaluate();
+            }
+            finished();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finished() {
+        lock.lock();
+        try {
+            if (--unfinished == 0) {
+                allFinished.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 결과가 정해졌는지 본다. 모두 성공해야 하는지, 실패가 너무 많은지는 fork한 수에 달려 있으므로 join()을 시작한 뒤에만 판단한다.
+     */
+    private void evaluate() {
+        int forks = subtasks.size();
+        int needed = required == ALL ? forks : required;
+        boolean forkingDone = joining;
+        if (succeeded.size() >= needed && (required != ALL || forkingDone)) {
+            resolve();
+        } else if (required == ALL ? !failures.isEmpty() : forkingDone && forks - failures.size() < needed) {
+            resolve();
+        }
+    }
+
+    private void resolve() {
+        resolved = true;
+        for (Subtask subtask : subtasks) {
+            subtask.cancel();
+        }
+        resolvedCondition.signalAll();
+    }
+
+    /**
+     * 결과가 정해질 때까지 기다리고 성공한 결과를 fork한 순서로 반환한다. firstSuccess는 하나, quorum(n)은 n개다.
+     *
+     * @throws ExecutionException 정책을 만족하지 못했을 때. 첫 실패를 원인으로, 나머지를 suppressed로 담는다
+     * @throws TimeoutException   마감 시각까지 결과가 정해지지 않았을 때. 남은 작업은 취소한다
+     */
+    public List<T> join() throws InterruptedException, ExecutionException, TimeoutException {
+        lock.lock();
+        try {
+            joining = true;
+            if (!resolved) {
+                evaluate();
+            }
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            while (!resolved) {
+                if (remainingNanos <= 0) {
+                    resolve();
+                    throw new TimeoutException("마감 시각까지 결과가 정해지지 않았습니다.");
+                }
+                remainingNanos = resolvedCondition.awaitNanos(remainingNanos);
+            }
+            int needed = required == ALL ? subtasks.size() : required;
+            if (succeeded.size() < needed) {
+                ExecutionException exception = new ExecutionException(
+                        String.format("성공 %d개로 필요한 %d개를 채우지 못했습니다.", succeeded.size(), needed),
+                        failures.isEmpty() ? null : failures.get(0));
+                failures.stream().skip(1).forEach(exception::addSuppressed);
+                throw exception;
+            }
+            List<T> results = new ArrayList<>();
+            for (Subtask subtask : subtasks) {
+                if (succeeded.contains(subtask) && results.size() < needed) {
+                    results.add(subtask.result);
+                }
+            }
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 남은 작업을 취소하고, 실행 중이던 작업이 인터럽트에 반응해 끝날 때까지 기다린다.
+     * 기다리는 동안 인터럽트되어도 하위 작업이 범위 밖에 남지 않도록 끝까지 기다린 뒤 인터럽트 상태를 되살린다.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (!resolved) {
+                resolve();
+            }
+            while (unfinished > 0) {
+                allFinished.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package concurrency.version21;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class TaskScopeTest {
+
+    private static final Duration LONG_TIMEOUT = Duration.ofSeconds(10);
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("TaskScope::allSuccess는 fork한 순서로 결과를 돌려주고, 하나가 실패하면 남은 작업을 바로 인터럽트한다")
+    void testAllSuccess() throws Exception {
+        try (TaskScope<Integer> scope = TaskScope.allSuccess(executor, LONG_TIMEOUT)) {
+            scope.fork(() -> sleepAndReturn(30, 1));
+            scope.fork(() -> 2);
+            scope.fork(() -> sleepAndReturn(10, 3));
+            assertEquals(List.of(1, 2, 3), scope.join());
+        }
+
+        AtomicBoolean interrupted = new AtomicBoolean();
+        // 느린 작업이 시작하기 전에 실패하면 인터럽트가 아니라 취소로 끝나므로, 실패하는 작업은 느린 작업이 시작하기를 기다린다
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        long start = System.nanoTime();
+        try (TaskScope<Integer> scope = TaskScope.allSuccess(executor, LONG_TIMEOUT)) {
+            scope.fork(() -> {
+                slowStarted.countDown();
+                try {
+                    return sleepAndReturn(10_000, 1);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw e;
+                }
+            });
+            scope.fork(() -> {
+                slowStarted.await();
+                throw new IllegalStateException("의도한 실패");
+            });
+            ExecutionException exception = assertThrows(ExecutionException.class, scope::join);
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+        }
+        // close()는 인터럽트된 작업이 끝날 때까지 기다린다
+        assertTrue(interrupted.get());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    @DisplayName("TaskScope::firstSuccess는 가장 먼저 성공한 결과를 돌려주고 나머지를 인터럽트하며, 모두 실패해야 실패한다")
+    void testFirstSuccess() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        CountDownLatch slowStarted = new CountDownLatch(3);
+        try (TaskScope<String> scope = TaskScope.firstSuccess(executor, LONG_TIMEOUT)) {
+            for (int i = 0; i < 3; i++) {
+                scope.fork(() -> {
+                    slowStarted.countDown();
+                    try {
+                        return sleepAndReturn(10_000, "느린 복제본");
+                    } catch (InterruptedException e) {
+                        interrupted.incrementAndGet();
+                        throw e;
+                    }
+                });
+            }
+            scope.fork(() -> {
+                throw new IllegalStateException("실패한 복제본");
+            });
+            scope.fork(() -> {
+                slowStarted.await();
+                return "빠른 복제본";
+            });
+            assertEquals(List.of("빠른 복제본"), scope.join());
+        }
+        assertEquals(3, interrupted.get());
+
+        try (TaskScope<String> scope = TaskScope.firstSuccess(executor, LONG_TIMEOUT)) {
+            scope.fork(() -> {
+                throw new IllegalStateException("첫 번째 실패");
+            });
+            scope.fork(() -> {
+                throw new IllegalArgumentException("두 번째 실패");
+            });
+            ExecutionException exception = assertThrows(ExecutionException.class, scope::join);
+            assertEquals(1, exception.getSuppressed().length);
+        }
+    }
+
+    @Test
+    @DisplayName("TaskScope::quorum은 N개가 성공하면 끝나고, N개를 채울 수 없게 되면 바로 실패한다")
+    void testQuorum() throws Exception {
+        try (TaskScope<Integer> scope = TaskScope.quorum(2, executor, LONG_TIMEOUT)) {
+            scope.fork(() -> sleepAndReturn(10_000, 1));
+            scope.fork(() -> sleepAndReturn(10, 2));
+            scope.fork(() -> 3);
+            assertEquals(List.of(2, 3), scope.join());
+        }
+
+        long start = System.nanoTime();
+        try (TaskScope<Integer> scope = TaskScope.quorum(2, executor, LONG_TIMEOUT)) {
+            scope.fork(() -> sleepAndReturn(10_000, 1));
+            scope.fork(() -> {
+                throw new IllegalStateException("첫 번째 실패");
+            });
+            scope.fork(() -> {
+                throw new IllegalStateException("두 번째 실패");
+            });
+            // 느린 작업이 성공해도 1개뿐이므로 기다릴 필요가 없다
+            assertThrows(ExecutionException.class, scope::join);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    @DisplayName("TaskScope::마감 시각이 지나면 남은 작업을 취소하고, 하위 작업과 중첩된 범위에 마감 시각을 전파한다")
+    void testDeadlinePropagation() throws Exception {
+        assertEquals(Optional.empty(), TaskScope.remaining());
+
+        long start = System.nanoTime();
+        try (TaskScope<Integer> scope = TaskScope.allSuccess(executor, Duration.ofMillis(100))) {
+            scope.fork(() -> sleepAndReturn(10_000, 1));
+            assertThrows(TimeoutException.class, scope::join);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 100 && elapsedMillis < 1000, elapsedMillis + "ms");
+
+        AtomicReference<Duration> childRemaining = new AtomicReference<>();
+        AtomicReference<Duration> nestedRemaining = new AtomicReference<>();
+        try (TaskScope<Integer> scope = TaskScope.allSuccess(executor, Duration.ofMillis(500))) {
+            scope.fork(() -> {
+                childRemaining.set(TaskScope.remaining().orElseThrow());
+                // 안쪽 범위에 더 긴 타임아웃을 줘도 바깥 마감 시각을 넘지 않는다
+                try (TaskScope<Integer> nested = TaskScope.allSuccess(executor, LONG_TIMEOUT)) {
+                    nested.fork(() -> {
+                        nestedRemaining.set(TaskScope.remaining().orElseThrow());
+                        return 1;
+                    });
+                    return nested.join().get(0);
+                }
+            });
+            assertEquals(List.of(1), scope.join());
+        }
+        assertTrue(childRemaining.get().compareTo(Duration.ofMillis(500)) <= 0, childRemaining.toString());
+        assertTrue(nestedRemaining.get().compareTo(childRemaining.get()) <= 0, nestedRemaining.toString());
+        assertEquals(Optional.empty(), TaskScope.remaining());
+    }
+
+    @Test
+    @DisplayName("TaskScope::close()는 하위 작업이 모두 끝날 때까지 기다리고, 이후에는 fork()할 수 없다")
+    void testCloseWaitsForSubtasks() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        TaskScope<Integer> scope = TaskScope.firstSuccess(executor, LONG_TIMEOUT);
+        scope.fork(() -> {
+            started.countDown();
+            try {
+                return sleepAndReturn(10_000, 1);
+            } finally {
+                finished.set(true);
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        scope.close();
+        assertTrue(finished.get());
+        assertThrows(IllegalStateException.class, () -> scope.fork(() -> 2));
+    }
+
+    private static final int REPLICAS = 5;
+    private static final int QUERIES = 30;
+
+    @Test
+    @DisplayName("TaskScope::executor가 거부한 작업은 범위에서 빠지므로 join()이 그 작업을 기다리지 않는다")
+    void testRejectedFork() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        long start = System.nanoTime();
+        ExecutorService saturated = singleThreadAbortPolicy();
+        try (TaskScope<Integer> scope = TaskScope.allSuccess(saturated, LONG_TIMEOUT)) {
+            scope.fork(() -> {
+                release.await();
+                return 1;
+            });
+            assertThrows(RejectedExecutionException.class, () -> scope.fork(() -> 2));
+            release.countDown();
+            assertEquals(List.of(1), scope.join());
+        } finally {
+            saturated.shutdownNow();
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        // 거부된 작업까지 세면 남은 작업이 모두 실패해도 quorum을 채울 수 있다고 보고 마감 시각까지 기다린다
+        CountDownLatch fail = new CountDownLatch(1);
+        start = System.nanoTime();
+        saturated = singleThreadAbortPolicy();
+        try (TaskScope<Integer> scope = TaskScope.quorum(1, saturated, LONG_TIMEOUT)) {
+            scope.fork(() -> {
+                fail.await();
+                throw new IllegalStateException("의도한 실패");
+            });
+            assertThrows(RejectedExecutionException.class, () -> scope.fork(() -> 2));
+            fail.countDown();
+            ExecutionException exception = assertThrows(ExecutionException.class, scope::join);
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+        } finally {
+            saturated.shutdownNow();
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    // 스레드 하나가 바쁘면 다음 작업을 바로 거부하는 풀
+    private static ExecutorService singleThreadAbortPolicy() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 같은 조회를 복제본 5곳에 보내고 가장 빠른 답 하나만 쓴다. 복제본마다 걸리는 시간은 다르고, 작업은 일정 단위마다
+     * 인터럽트를 확인하는 CPU 작업이다. 늦은 답을 취소하지 않으면 아무도 읽지 않을 답을 계산하느라 CPU를 쓴다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("팬아웃 조회에서 취소하지 않는 CompletionService와 TaskScope의 버려지는 작업량 비교")
+    void testWastedWork() throws Exception {
+        Map<String, Long> wasted = Benchmark.of("단위")
+                .label("버려진 작업")
+                .add("CompletionService", this::wastedWithCompletionService)
+                .add("TaskScope", this::wastedWithTaskScope)
+                .run();
+        assertTrue(wasted.get("TaskScope") < wasted.get("CompletionService"), wasted.toString());
+    }
+
+    private long wastedWithCompletionService() throws Exception {
+        AtomicLong used = new AtomicLong();
+        AtomicLong total = new AtomicLong();
+        for (int query = 0; query < QUERIES; query++) {
+            CompletionService<Long> completionService = new ExecutorCompletionService<>(executor);
+            for (int replica = 0; replica < REPLICAS; replica++) {
+                long units = workUnits(replica);
+                completionService.submit(() -> spin(units, total));
+            }
+            used.addAndGet(completionService.take().get());
+            // 나머지는 끝날 때까지 그대로 돈다
+            for (int replica = 1; replica < REPLICAS; replica++) {
+                completionService.take();
+            }
+        }
+        return total.get() - used.get();
+    }
+
+    private long wastedWithTaskScope() throws Exception {
+        AtomicLong used = new AtomicLong();
+        AtomicLong total = new AtomicLong();
+        for (int query = 0; query < QUERIES; query++) {
+            try (TaskScope<Long> scope = TaskScope.firstSuccess(executor, LONG_TIMEOUT)) {
+                for (int replica = 0; replica < REPLICAS; replica++) {
+                    long units = workUnits(replica);
+                    scope.fork(() -> spin(units, total));
+                }
+                used.addAndGet(scope.join().get(0));
+            }
+        }
+        return total.get() - used.get();
+    }
+
+    // 가장 빠른 복제본의 두 배부터 다섯 배까지
+    private static long workUnits(int replica) {
+        return 2_000L * (replica + 1);
+    }
+
+    /**
+     * 1단위마다 인터럽트를 확인하는 CPU 작업. 실제로 수행한 단위를 total에 더하고, 끝까지 마쳤으면 수행한 단위를 반환한다.
+     */
+    private static long spin(long units, AtomicLong total) throws InterruptedException {
+        long done = 0;
+        try {
+            for (; done < units; done++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                busyWork();
+                if (done % 100 == 0) {
+                    Thread.yield();  // CPU가 하나뿐이어도 복제본이 번갈아 돌게 한다
+                }
+            }
+            return done;
+        } finally {
+            total.addAndGet(done);
+        }
+    }
+
+    private static volatile long sink;
+
+    private static void busyWork() {
+        long x = sink;
+        for (int i = 0; i < 1_000; i++) {
+            x = x * 31 + i;
+        }
+        sink = x;
+    }
+
+    private static <T> T sleepAndReturn(long millis, T value) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(millis);
+        return value;
+    }
+}
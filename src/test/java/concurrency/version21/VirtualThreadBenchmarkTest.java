@@ -0,0 +1,169 @@
+package concurrency.version21;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadBenchmarkTest {
+
+    @Test
+    @DisplayName("ExecutionMode::VIRTUAL은 풀 크기와 상관없이 막힌 작업을 모두 동시에 진행한다")
+    void testConcurrencyNotCappedByPoolSize() throws InterruptedException {
+        int tasks = 500;
+        assertTrue(allStartTogether(ExecutionMode.VIRTUAL, 10, tasks));
+        assertFalse(allStartTogether(ExecutionMode.PLATFORM_POOL, 10, tasks));
+    }
+
+    private static boolean allStartTogether(ExecutionMode mode, int poolSize, int tasks) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(tasks);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = mode.newExecutor(poolSize);
+        for (int i = 0; i < tasks; i++) {
+            executor.submit(() -> {
+                started.countDown();
+                release.await();
+                return null;
+            });
+        }
+        boolean together = started.await(5, TimeUnit.SECONDS);
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        return together;
+    }
+
+    @Test
+    @DisplayName("ExecutionMode::컴포넌트마다 시스템 속성으로 실행 방식을 바꿀 수 있다")
+    void testForComponent() {
+        assertEquals(ExecutionMode.PLATFORM_POOL, ExecutionMode.forComponent("order-client", ExecutionMode.PLATFORM_POOL));
+        System.setProperty("execution.mode.order-client", "virtual");
+        try {
+            assertEquals(ExecutionMode.VIRTUAL, ExecutionMode.forComponent("order-client", ExecutionMode.PLATFORM_POOL));
+            assertEquals(ExecutionMode.PLATFORM_POOL, ExecutionMode.forComponent("other", ExecutionMode.PLATFORM_POOL));
+        } finally {
+            System.clearProperty("execution.mode.order-client");
+        }
+    }
+
+    private static final Object LEGACY_LOCK = new Object();
+
+    @Test
+    @DisplayName("PinningDetector::synchronized 안에서 막히는 위치만 찾아낸다")
+    void testPinningDetector() throws InterruptedException {
+        ExecutorService executor = ExecutionMode.PLATFORM_POOL.newExecutor(4);
+        try (PinningDetector detector = new PinningDetector(name -> name.startsWith("pool-"), Duration.ofMillis(2))) {
+            for (int i = 0; i < 4; i++) {
+                executor.submit(() -> {
+                    sleepInsideMonitor();
+                    sleep(50);
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            Map<String, Long> sites = detector.pinnedSites();
+            System.out.println("고정 위치: " + sites);
+            assertEquals(1, sites.size());
+            assertTrue(sites.keySet().iterator().next().contains("sleepInsideMonitor"));
+        }
+    }
+
+    private static void sleepInsideMonitor() {
+        synchronized (LEGACY_LOCK) {
+            sleep(20);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final int PLATFORM_POOL_SIZE = 200;
+    private static final long BLOCKING_MILLIS = 20;
+
+    /**
+     * 20ms 동안 막히는 작업 N개를 플랫폼 스레드 200개 풀과 VIRTUAL에서 실행한다.
+     * 처리량, 가장 많을 때의 힙 사용량을 작업 수로 나눈 값, 가장 많을 때의 플랫폼 스레드 수, 작업이 돈 캐리어 스레드 수를 출력한다.
+     *
+     * 가상 스레드가 없는 JDK에서는 VIRTUAL이 작업마다 플랫폼 스레드를 만들므로 1만 개까지만 돌린다.
+     * 100만 개까지 돌리려면 JDK 21 이상에서 -Dbenchmark.virtual.max=1000000을 준다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("막히는 작업 1만~100만 개를 플랫폼 스레드 풀과 가상 스레드에서 실행할 때 처리량, 작업당 메모리, 스케줄러 동작 비교")
+    void testBlockingTaskBenchmark() throws InterruptedException {
+        System.out.println("가상 스레드 지원: " + ExecutionMode.virtualThreadsSupported());
+        int max = ExecutionMode.virtualThreadsSupported() ? Integer.getInteger("benchmark.virtual.max", 100_000) : 10_000;
+        for (int tasks = 10_000; tasks <= max; tasks *= 10) {
+            if (tasks <= 10_000) {
+                run(ExecutionMode.PLATFORM_POOL, tasks);  // 풀은 작업 수가 늘면 시간만 비례해 늘어난다
+            }
+            run(ExecutionMode.VIRTUAL, tasks);
+        }
+    }
+
+    private static void run(ExecutionMode mode, int tasks) throws InterruptedException {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long baselineHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+        threadMXBean.resetPeakThreadCount();
+
+        // 실행 중 힙 사용량의 최댓값을 잰다
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                peakHeap.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max);
+                sleep(5);
+            }
+        });
+        sampler.start();
+
+        Set<String> carriers = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = mode.newExecutor(PLATFORM_POOL_SIZE);
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(() -> {
+                Thread current = Thread.currentThread();
+                if (ExecutionMode.isVirtual(current)) {
+                    // VirtualThread[#21]/runnable@ForkJoinPool-1-worker-1 처럼 캐리어 이름이 붙는다
+                    String name = current.toString();
+                    carriers.add(name.substring(name.indexOf('@') + 1));
+                } else {
+                    carriers.add(current.getName());
+                }
+                sleep(BLOCKING_MILLIS);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        sampling.set(false);
+        sampler.join();
+
+        System.out.printf("%-13s 작업 %,9d개: %6d ms, %,10d 작업/s, 작업당 힙 %,6d bytes, 최대 플랫폼 스레드 %,6d개, 작업을 실행한 스레드 %,6d개%n",
+                mode, tasks, TimeUnit.NANOSECONDS.toMillis(elapsed), tasks * TimeUnit.SECONDS.toNanos(1) / elapsed,
+                Math.max(0, peakHeap.get() - baselineHeap) / tasks, threadMXBean.getPeakThreadCount(), carriers.size());
+    }
+}
@@ -0,0 +1,221 @@
+package concurrency.version5;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 하위 서비스의 응답 시간(RTT)과 실패를 보고 동시 실행 한도를 스스로 조정하는 리미터.
+ *
+ * 허가는 Semaphore로 관리한다. 한도가 늘면 release(n)로 허가를 추가하고, 줄면 reducePermits(n)으로
+ * 회수한다. 이미 나간 허가는 돌려받을 때 회수되므로 실행 중인 요청을 끊지 않는다.
+ * 한도를 어떻게 바꿀지는 LimitAlgorithm(AIMD, Vegas, Gradient)에 맡긴다.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Outcome {
+        SUCCESS,
+        // 하위 서비스가 과부하로 요청을 거절함
+        DROPPED,
+        // 응답을 기다리다 포기함
+        TIMEOUT
+    }
+
+    /**
+     * 요청이 끝날 때마다 호출되어 새 한도를 반환한다. 리미터가 호출을 직렬화하므로 스레드 안전할 필요는 없다.
+     */
+    public interface LimitAlgorithm {
+        int update(int limit, long rttNanos, int inFlight, Outcome outcome);
+    }
+
+    /**
+     * 한도가 거의 다 쓰이는 동안 성공하면 1씩 늘리고, 실패하면 backoffRatio를 곱해 줄인다.
+     */
+    public static class Aimd implements LimitAlgorithm {
+        private final double backoffRatio;
+
+        public Aimd(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("backoffRatio는 0과 1 사이여야 합니다: " + backoffRatio);
+            }
+            this.backoffRatio = backoffRatio;
+        }
+
+        @Override
+        public int update(int limit, long rttNanos, int inFlight, Outcome outcome) {
+            if (outcome != Outcome.SUCCESS) {
+                return (int) (limit * backoffRatio);
+            }
+            // 한도를 다 쓰지도 않았는데 늘리면 실제 용량과 관계없이 한도가 끝없이 커진다
+            return inFlight * 2 >= limit ? limit + 1 : limit;
+        }
+    }
+
+    /**
+     * TCP Vegas처럼 최소 RTT와 현재 RTT의 차이로 하위 서비스에 쌓인 대기열 길이를 추정한다.
+     * 대기열이 alpha보다 짧으면 한도를 늘리고 beta보다 길면 줄인다.
+     */
+    public static class Vegas implements LimitAlgorithm {
+        private long minRtt = Long.MAX_VALUE;
+
+        @Override
+        public int update(int limit, long rttNanos, int inFlight, Outcome outcome) {
+            if (outcome != Outcome.SUCCESS) {
+                return limit / 2;
+            }
+            minRtt = Math.min(minRtt, rttNanos);
+            int queue = (int) Math.ceil(limit * (1 - (double) minRtt / rttNanos));
+            int log = Math.max(1, 32 - Integer.numberOfLeadingZeros(limit));
+            int alpha = 3 * log;
+            int beta = 6 * log;
+            if (queue > beta) {
+                return limit - log;
+            }
+            // 한도를 다 쓰지 않고 있으면 늘리지 않는다
+            if (inFlight * 2 < limit) {
+                return limit;
+            }
+            if (queue <= log) {
+                return limit + beta;
+            }
+            return queue < alpha ? limit + log : limit;
+        }
+    }
+
+    /**
+     * 오래 지켜본 평균 RTT와 최근 RTT의 비(gradient)로 한도를 비례 조정한다.
+     * RTT가 늘면 gradient가 1보다 작아져 한도가 줄고, sqrt(limit)만큼의 여유 대기열을 더해 탐색을 계속한다.
+     * smoothing으로 한 번에 바뀌는 폭을 줄여 흔들리지 않게 한다.
+     */
+    public static class Gradient implements LimitAlgorithm {
+        private final double smoothing;
+        private double longRtt;
+        private double shortRtt;
+        private double estimatedLimit;
+
+        public Gradient(double smoothing) {
+            if (smoothing <= 0 || smoothing > 1) {
+                throw new IllegalArgumentException("smoothing은 0 초과 1 이하여야 합니다: " + smoothing);
+            }
+            this.smoothing = smoothing;
+        }
+
+        @Override
+        public int update(int limit, long rttNanos, int inFlight, Outcome outcome) {
+            // 처음이거나 리미터가 최소/최대 한도로 잘라냈으면 실제 한도에서 다시 시작한다
+            if ((int) estimatedLimit != limit) {
+                estimatedLimit = limit;
+            }
+            if (outcome != Outcome.SUCCESS) {
+                estimatedLimit = estimatedLimit * 0.9;
+                return (int) estimatedLimit;
+            }
+            longRtt = longRtt == 0 ? rttNanos : longRtt * 0.99 + rttNanos * 0.01;
+            shortRtt = shortRtt == 0 ? rttNanos : shortRtt * 0.8 + rttNanos * 0.2;
+            double gradient = Math.max(0.5, Math.min(1.0, longRtt / shortRtt));
+            // 한도를 다 쓰지 않고 있으면 늘리지 않는다
+            if (inFlight * 2 < estimatedLimit) {
+                return (int) estimatedLimit;
+            }
+            double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            estimatedLimit = estimatedLimit * (1 - smoothing) + target * smoothing;
+            return (int) estimatedLimit;
+        }
+    }
+
+    /**
+     * 획득한 허가. 요청이 끝나면 결과와 함께 release()에 넘겨야 한다.
+     */
+    public static final class Permit {
+        private final long startNanos;
+        // 여러 스레드가 같은 허가를 동시에 반환해도 한 번만 반환되도록 CAS로 바꾼다
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    private final LimitAlgorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final ResizableSemaphore permits;
+    private volatile int limit;
+    private int inFlight;
+
+    public AdaptiveConcurrencyLimiter(LimitAlgorithm algorithm, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("1 <= minLimit <= initialLimit <= maxLimit 이어야 합니다.");
+        }
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.permits = new ResizableSemaphore(initialLimit);
+    }
+
+    // reducePermits()가 protected이므로 서브클래스로 연다
+    private static final class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        void shrink(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+
+    /**
+     * 한도 안이면 바로 허가를 반환하고, 한도가 찼으면 null을 반환한다. null이면 요청을 거절(load shedding)하면 된다.
+     */
+    public Permit tryAcquire() {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        return started();
+    }
+
+    /**
+     * timeout 동안 자리가 나기를 기다린다. 기다려도 자리가 나지 않으면 null.
+     */
+    public Permit tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!permits.tryAcquire(timeout, unit)) {
+            return null;
+        }
+        return started();
+    }
+
+    private Permit started() {
+        synchronized (this) {
+            inFlight++;
+        }
+        return new Permit(System.nanoTime());
+    }
+
+    public void release(Permit permit, Outcome outcome) {
+        if (!permit.released.compareAndSet(false, true)) {
+            throw new IllegalStateException("이미 반환된 허가입니다.");
+        }
+        long rtt = System.nanoTime() - permit.startNanos;
+        synchronized (this) {
+            int newLimit = Math.max(minLimit, Math.min(maxLimit, algorithm.update(limit, rtt, inFlight, outcome)));
+            inFlight--;
+            int delta = newLimit - limit;
+            limit = newLimit;
+            if (delta > 0) {
+                permits.release(delta);
+            } else if (delta < 0) {
+                permits.shrink(-delta);
+            }
+        }
+        permits.release();
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,216 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version5.AdaptiveConcurrencyLimiter.Outcome;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    @DisplayName("AIMD::한도를 다 쓰는 중에 성공하면 1 늘리고, 실패하면 비율만큼 줄인다")
+    public void testAimd() {
+        AdaptiveConcurrencyLimiter.Aimd aimd = new AdaptiveConcurrencyLimiter.Aimd(0.5);
+
+        assertEquals(11, aimd.update(10, 1_000, 10, Outcome.SUCCESS));
+        assertEquals(10, aimd.update(10, 1_000, 1, Outcome.SUCCESS), "한도를 다 쓰지 않으면 늘리지 않음");
+        assertEquals(5, aimd.update(10, 1_000, 10, Outcome.DROPPED));
+        assertEquals(5, aimd.update(10, 1_000, 10, Outcome.TIMEOUT));
+    }
+
+    @Test
+    @DisplayName("Vegas::RTT가 최소 RTT보다 크게 늘면 대기열이 쌓인 것으로 보고 한도를 줄인다")
+    public void testVegas() {
+        AdaptiveConcurrencyLimiter.Vegas vegas = new AdaptiveConcurrencyLimiter.Vegas();
+
+        int limit = vegas.update(20, 1_000_000, 20, Outcome.SUCCESS);
+        assertTrue(limit > 20, "대기열이 없으면 한도를 늘림");
+
+        int reduced = vegas.update(limit, 10_000_000, limit, Outcome.SUCCESS);
+        assertTrue(reduced < limit, "RTT가 10배가 되면 한도를 줄임");
+    }
+
+    @Test
+    @DisplayName("허가를 다 쓰면 tryAcquire()는 null을 반환하고, 한도가 줄어도 나간 허가는 반환할 수 있다")
+    public void testPermits() {
+        AdaptiveConcurrencyLimiter limiter =
+                new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Aimd(0.5), 2, 1, 10);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.tryAcquire());
+        assertEquals(2, limiter.inFlight());
+
+        limiter.release(first, Outcome.DROPPED);  // 2 * 0.5 = 1
+        assertEquals(1, limiter.limit());
+        assertNull(limiter.tryAcquire(), "한도가 1이고 하나가 실행 중이므로 자리가 없어야 함");
+
+        limiter.release(second, Outcome.SUCCESS);
+        assertEquals(0, limiter.inFlight());
+        assertThrows(IllegalStateException.class, () -> limiter.release(second, Outcome.SUCCESS));
+
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("여러 스레드가 같은 허가를 동시에 반환해도 한 번만 반환되고 나머지는 IllegalStateException을 던진다")
+    public void testConcurrentDoubleRelease() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter =
+                new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Aimd(0.5), 1, 1, 1);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+                assertNotNull(permit);
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(threads);
+                AtomicInteger released = new AtomicInteger();
+                for (int i = 0; i < threads; i++) {
+                    executor.execute(() -> {
+                        try {
+                            start.await();
+                            limiter.release(permit, Outcome.SUCCESS);
+                            released.incrementAndGet();
+                        } catch (IllegalStateException | InterruptedException ignored) {
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                start.countDown();
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+                assertEquals(1, released.get());
+                assertEquals(0, limiter.inFlight());
+            }
+            // 허가가 두 번 반환됐다면 한도 1을 넘어 두 개를 받을 수 있다
+            assertNotNull(limiter.tryAcquire());
+            assertNull(limiter.tryAcquire());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 동시에 capacity개까지만 처리할 수 있는 가짜 하위 서비스.
+     * 넘치는 요청은 대기열에서 기다리고, 대기열이 maxQueue를 넘으면 거절하며, timeout까지 차례가 오지 않으면 실패한다.
+     */
+    static class FakeBackend {
+        private final Semaphore slots;
+        private final int maxQueue;
+        private final long serviceMillis;
+        private final long timeoutMillis;
+
+        FakeBackend(int capacity, int maxQueue, long serviceMillis, long timeoutMillis) {
+            this.slots = new Semaphore(capacity, true);
+            this.maxQueue = maxQueue;
+            this.serviceMillis = serviceMillis;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        Outcome call() throws InterruptedException {
+            if (slots.getQueueLength() >= maxQueue) {
+                return Outcome.DROPPED;
+            }
+            if (!slots.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return Outcome.TIMEOUT;
+            }
+            try {
+                Thread.sleep(serviceMillis);
+                return Outcome.SUCCESS;
+            } finally {
+                slots.release();
+            }
+        }
+    }
+
+    private static final int BACKEND_CAPACITY = 10;
+    private static final int CLIENT_COUNT = 100;
+    private static final long SIMULATION_MILLIS = 1000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("가짜 하위 서비스에 과부하를 걸고 고정 한도와 AIMD, Vegas, Gradient의 처리량과 지연 시간을 비교한다")
+    public void testSimulation() throws InterruptedException {
+        Map<String, Supplier<AdaptiveConcurrencyLimiter>> limiters = new LinkedHashMap<>();
+        limiters.put("고정 한도 200", () -> new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Aimd(0.5), 200, 200, 200));
+        limiters.put("AIMD", () -> new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Aimd(0.9), 20, 1, 200));
+        limiters.put("Vegas", () -> new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Vegas(), 20, 1, 200));
+        limiters.put("Gradient", () -> new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Gradient(0.2), 20, 1, 200));
+
+        for (Map.Entry<String, Supplier<AdaptiveConcurrencyLimiter>> entry : limiters.entrySet()) {
+            AdaptiveConcurrencyLimiter limiter = entry.getValue().get();
+            SimulationResult result = simulate(limiter, new FakeBackend(BACKEND_CAPACITY, 20, 5, 50));
+            System.out.printf("%-10s 최종 한도=%-4d 성공=%-5d 거절(리미터)=%-7d 거절(서비스)=%-5d 타임아웃=%-5d 지연 %s%n",
+                    entry.getKey(), limiter.limit(), result.success.get(), result.shed.get(),
+                    result.dropped.get(), result.timeout.get(), result.latency);
+            assertTrue(result.success.get() > 0);
+        }
+    }
+
+    static class SimulationResult {
+        final AtomicLong success = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong timeout = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private SimulationResult simulate(AdaptiveConcurrencyLimiter limiter, FakeBackend backend)
+            throws InterruptedException {
+        SimulationResult result = new SimulationResult();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENT_COUNT);
+
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            clients.submit(() -> {
+                while (running.get()) {
+                    AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+                    if (permit == null) {
+                        // 리미터가 거절한 요청은 하위 서비스에 보내지 않는다
+                        result.shed.incrementAndGet();
+                        Thread.sleep(1);
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    Outcome outcome = backend.call();
+                    limiter.release(permit, outcome);
+                    switch (outcome) {
+                        case SUCCESS -> {
+                            result.success.incrementAndGet();
+                            result.latency.record(System.nanoTime() - start);
+                        }
+                        case DROPPED -> result.dropped.incrementAndGet();
+                        case TIMEOUT -> result.timeout.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        Thread.sleep(SIMULATION_MILLIS);
+        running.set(false);
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(5, TimeUnit.SECONDS));
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package concurrency.version5;
+
+import concurrency.version1_4.Sequence;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 추가만 하는 락 없는 리스트.
+ *
+ * CopyOnWriteArrayList에 여러 스레드가 add()하면 모두 같은 락을 기다리고 매번 배열 전체를 복사한다.
+ * 여기서는 추가하는 스레드가 claimed 카운터에 fetch-and-add 한 번으로 자기 자리를 받고, 그 자리에 바로 쓴다.
+ * 저장 공간은 크기가 2배씩 커지는 세그먼트로 나누고 처음 필요해질 때 만들므로, 이미 들어간 원소를 복사하는 일이 없다.
+ *
+ * 자리를 받은 순서와 쓰기를 마친 순서는 다를 수 있으므로 size()는 빈 칸 없이 채워진 앞부분의 길이(published)다.
+ * 쓰기를 마친 스레드는 published 바로 뒤가 채워져 있는 동안 published를 올리며, 먼저 끝낸 스레드의 몫도 대신 올린다.
+ * 읽는 스레드는 published보다 작은 위치만 읽으므로 get()은 기다리지 않고(wait-free) 끝난다.
+ * null은 빈 칸 표시로 쓰므로 넣을 수 없고, set()과 remove()는 지원하지 않는다.
+ */
+public class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final VarHandle ELEMENT = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final int SEGMENT_COUNT = 32;
+
+    // 0번 세그먼트 크기의 log2. k번 세그먼트는 firstSegmentSize << k칸이다
+    private final int firstSegmentShift;
+    private final AtomicReferenceArray<Object[]> segments = new AtomicReferenceArray<>(SEGMENT_COUNT);
+    private final Sequence claimed = new Sequence(0);
+    private final Sequence published = new Sequence(0);
+
+    public AppendOnlyList() {
+        this(16);
+    }
+
+    /**
+     * @param firstSegmentSize 처음 만드는 세그먼트의 크기. 2의 거듭제곱으로 올림한다
+     */
+    public AppendOnlyList(int firstSegmentSize) {
+        if (firstSegmentSize < 1 || firstSegmentSize > 1 << 20) {
+            throw new IllegalArgumentException("firstSegmentSize는 1 이상 2^20 이하여야 합니다: " + firstSegmentSize);
+        }
+        this.firstSegmentShift = 32 - Integer.numberOfLeadingZeros(firstSegmentSize - 1);
+    }
+
+    @Override
+    public boolean add(E element) {
+        append(element);
+        return true;
+    }
+
+    /**
+     * element를 넣고 받은 위치를 반환한다. 앞 자리를 받은 스레드가 아직 쓰지 않았으면 이 원소는 그 스레드가 쓴 뒤에 함께 보인다.
+     */
+    public int append(E element) {
+        Objects.requireNonNull(element);
+        long index = claimed.getAndAdd(1);
+        if (index >= Integer.MAX_VALUE - (1L << firstSegmentShift)) {
+            throw new IllegalStateException("더 이상 추가할 수 없습니다.");
+        }
+        long position = index + (1L << firstSegmentShift);
+        int segment = segmentOf(position);
+        Object[] array = segments.get(segment);
+        if (array == null) {
+            array = allocate(segment);
+        }
+        ELEMENT.setRelease(array, (int) (position - (1L << (segment + firstSegmentShift))), element);
+        // 원소를 쓴 뒤 published를 읽는다. 이 순서를 강제해야 published를 올리던 스레드와 서로를 놓치지 않는다
+        VarHandle.fullFence();
+        advancePublished();
+        return (int) index;
+    }
+
+    /**
+     * 세그먼트를 처음 쓰는 스레드들이 동시에 만들 수 있다. CAS에서 이긴 배열 하나만 쓴다.
+     */
+    private Object[] allocate(int segment) {
+        Object[] array = new Object[1 << (segment + firstSegmentShift)];
+        if (segments.compareAndSet(segment, null, array)) {
+            return array;
+        }
+        return segments.get(segment);
+    }
+
+    /**
+     * published 위치가 채워져 있는 동안 published를 하나씩 올린다. 다른 스레드가 이미 올렸으면 CAS가 실패하고 다시 읽는다.
+     */
+    private void advancePublished() {
+        for (;;) {
+            long current = published.get();
+            if (current >= claimed.get() || slot(current) == null) {
+                return;
+            }
+            published.compareAndSet(current, current + 1);
+        }
+    }
+
+    private Object slot(long index) {
+        long position = index + (1L << firstSegmentShift);
+        int segment = segmentOf(position);
+        Object[] array = segments.get(segment);
+        return array == null ? null : ELEMENT.getAcquire(array, (int) (position - (1L << (segment + firstSegmentShift))));
+    }
+
+    /**
+     * position = index + firstSegmentSize라 두면, position의 최상위 비트 위치가 세그먼트 번호를 정한다.
+     */
+    private int segmentOf(long position) {
+        return 63 - Long.numberOfLeadingZeros(position) - firstSegmentShift;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size());
+        return (E) slot(index);
+    }
+
+    @Override
+    public int size() {
+        return (int) published.get();
+    }
+}
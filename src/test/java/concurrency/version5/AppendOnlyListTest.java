@@ -0,0 +1,129 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class AppendOnlyListTest {
+
+    @Test
+    @DisplayName("AppendOnlyList::세그먼트 경계를 여러 번 넘어도 넣은 순서대로 읽는다")
+    public void testSegments() {
+        for (int firstSegmentSize : new int[]{1, 3, 16}) {
+            AppendOnlyList<Integer> list = new AppendOnlyList<>(firstSegmentSize);
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals(i, list.append(i));
+            }
+            assertEquals(10_000, list.size());
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals(i, list.get(i));
+            }
+            int expected = 0;
+            for (Integer value : list) {
+                assertEquals(expected++, value);
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> list.get(10_000));
+        }
+        assertThrows(NullPointerException.class, () -> new AppendOnlyList<>().add(null));
+        assertThrows(UnsupportedOperationException.class, () -> new AppendOnlyList<>().remove(0));
+    }
+
+    @Test
+    @DisplayName("AppendOnlyList::여러 스레드가 동시에 추가해도 모든 원소가 한 번씩 들어가고, 읽는 쪽은 size()까지 빈 칸을 보지 않는다")
+    public void testConcurrentAppend() throws InterruptedException {
+        AppendOnlyList<Integer> list = new AppendOnlyList<>(1);
+        int threads = 8;
+        int perThread = 50_000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean sawGap = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                int size = list.size();
+                for (int i = Math.max(0, size - 100); i < size; i++) {
+                    if (list.get(i) == null) {
+                        sawGap.set(true);
+                    }
+                }
+                Thread.yield();
+            }
+        });
+        reader.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    list.add(base + i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        running.set(false);
+        reader.join();
+
+        assertEquals(threads * perThread, list.size());
+        BitSet seen = new BitSet();
+        for (Integer value : list) {
+            assertTrue(!seen.get(value), "중복: " + value);
+            seen.set(value);
+        }
+        assertEquals(threads * perThread, seen.cardinality());
+        assertTrue(!sawGap.get());
+    }
+
+    private static final int THREADS = 4;
+    private static final int APPENDS_PER_THREAD = 250_000;
+
+    /**
+     * CopyOnWriteArrayList는 추가할 때마다 전체를 복사해 같은 횟수로는 끝나지 않으므로 1/50만 추가하고 처리량으로 비교한다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("스레드 4개가 동시에 추가할 때 CopyOnWriteArrayList, synchronizedList, ConcurrentLinkedQueue, AppendOnlyList 처리량 비교")
+    public void testAppendThroughput() throws Exception {
+        Benchmark.of("appends/s")
+                .add("CopyOnWriteArrayList", () -> measure(CopyOnWriteArrayList::new, APPENDS_PER_THREAD / 50))
+                .add("synchronizedList", () -> measure(() -> Collections.synchronizedList(new ArrayList<>()),
+                        APPENDS_PER_THREAD))
+                .add("ConcurrentLinkedQueue", () -> measure(ConcurrentLinkedQueue::new, APPENDS_PER_THREAD))
+                .add("AppendOnlyList", () -> measure(AppendOnlyList::new, APPENDS_PER_THREAD))
+                .run();
+    }
+
+    private static long measure(Supplier<Collection<Integer>> factory, int perThread) throws InterruptedException {
+        Collection<Integer> collection = factory.get();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        Integer element = 1;
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    collection.add(element);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(THREADS * perThread, collection.size());
+        return THREADS * perThread * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
@@ -0,0 +1,453 @@
+package concurrency.version5;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 원소를 여러 조각(chunk)으로 나눠 담는 copy-on-write 리스트.
+ *
+ * CopyOnWriteArrayList는 add/remove마다 배열 전체를 복사하므로 원소가 10만 개면 쓰기 한 번에 400KB를 복사한다.
+ * 여기서는 최대 chunkSize개씩 담은 불변 조각 배열과 조각별 누적 끝 위치를 한 스냅샷으로 묶고, 쓰기는 바뀐 조각 하나와
+ * 조각 참조 배열, 누적 위치 배열만 새로 만든다. 복사량은 O(n / chunkSize + chunkSize)이고 chunkSize가 √n 근처일 때 가장 작다.
+ *
+ * 읽기는 volatile 스냅샷 하나를 읽은 뒤 락 없이 진행하고, iterator()는 CopyOnWriteArrayList처럼 만든 시점의 스냅샷을 순회한다.
+ * get()은 누적 위치를 이진 탐색하므로 O(log(n / chunkSize))이다. 쓰기는 락 하나로 직렬화한다.
+ */
+public class ChunkedCopyOnWriteList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final Object[][] NO_CHUNKS = new Object[0][];
+    private static final int[] NO_ENDS = new int[0];
+
+    /**
+     * 한 시점의 리스트 내용. 만든 뒤에는 바꾸지 않으므로 여러 스냅샷이 조각을 공유한다.
+     */
+    private static final class Snapshot {
+        final Object[][] chunks;
+        // ends[i]는 0번부터 i번 조각까지의 원소 수. 빈 조각은 두지 않으므로 순증가한다
+        final int[] ends;
+
+        Snapshot(Object[][] chunks, int[] ends) {
+            this.chunks = chunks;
+            this.ends = ends;
+        }
+
+        int size() {
+            return ends.length == 0 ? 0 : ends[ends.length - 1];
+        }
+
+        int start(int chunk) {
+            return chunk == 0 ? 0 : ends[chunk - 1];
+        }
+
+        /**
+         * index가 들어 있는 조각 번호. index == size()이면 마지막 조각을 반환한다.
+         */
+        int chunkOf(int index) {
+            int found = Arrays.binarySearch(ends, index);
+            int chunk = found >= 0 ? found + 1 : -found - 1;
+            return Math.min(chunk, chunks.length - 1);
+        }
+
+        Object get(int index) {
+            int chunk = chunkOf(index);
+            return chunks[chunk][index - start(chunk)];
+        }
+    }
+
+    private final int chunkSize;
+    private final Object lock = new Object();
+    private volatile Snapshot snapshot = new Snapshot(NO_CHUNKS, NO_ENDS);
+
+    public ChunkedCopyOnWriteList() {
+        this(256);
+    }
+
+    /**
+     * @param chunkSize 조각 하나의 최대 원소 수. 원소 수가 n이면 √n 근처가 쓰기 복사량이 가장 적다
+     */
+    public ChunkedCopyOnWriteList(int chunkSize) {
+        if (chunkSize < 2) {
+            throw new IllegalArgumentException("chunkSize는 2 이상이어야 합니다: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Snapshot current = snapshot;
+        Objects.checkIndex(index, current.size());
+        return (E) current.get(index);
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            Objects.checkIndex(index, current.size());
+            int chunk = current.chunkOf(index);
+            Object[] copy = current.chunks[chunk].clone();
+            int offset = index - current.start(chunk);
+            E previous = (E) copy[offset];
+            copy[offset] = element;
+            Object[][] chunks = current.chunks.clone();
+            chunks[chunk] = copy;
+            // 크기가 그대로이므로 누적 위치 배열은 공유한다
+            snapshot = new Snapshot(chunks, current.ends);
+            return previous;
+        }
+    }
+
+    @Override
+    public boolean add(E element) {
+        synchronized (lock) {
+            add(snapshot.size(), element);
+            return true;
+        }
+    }
+
+    @Override
+    public void add(int index, E element) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            Objects.checkIndex(index, current.size() + 1);
+            if (current.chunks.length == 0) {
+                snapshot = new Snapshot(new Object[][]{{element}}, new int[]{1});
+                return;
+            }
+            int chunk = current.chunkOf(index);
+            Object[] old = current.chunks[chunk];
+            int offset = index - current.start(chunk);
+            if (old.length == chunkSize && offset == old.length) {
+                // 가득 찬 조각의 끝에 붙이면 새 조각을 만든다. 뒤에서부터 채우는 add(E)가 이 경로를 탄다
+                snapshot = replace(current, chunk + 1, 0, new Object[]{element});
+                return;
+            }
+            Object[] inserted = new Object[old.length + 1];
+            System.arraycopy(old, 0, inserted, 0, offset);
+            inserted[offset] = element;
+            System.arraycopy(old, offset, inserted, offset + 1, old.length - offset);
+            if (inserted.length <= chunkSize) {
+                snapshot = replace(current, chunk, 1, inserted);
+            } else {
+                int half = inserted.length / 2;
+                snapshot = replace(current, chunk, 1, Arrays.copyOfRange(inserted, 0, half),
+                        Arrays.copyOfRange(inserted, half, inserted.length));
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            Objects.checkIndex(index, current.size());
+            int chunk = current.chunkOf(index);
+            Object[] old = current.chunks[chunk];
+            int offset = index - current.start(chunk);
+            E removed = (E) old[offset];
+            Object[] shrunk = new Object[old.length - 1];
+            System.arraycopy(old, 0, shrunk, 0, offset);
+            System.arraycopy(old, offset + 1, shrunk, offset, shrunk.length - offset);
+
+            if (shrunk.length == 0) {
+                snapshot = replace(current, chunk, 1);
+            } else if (shrunk.length < chunkSize / 4 && chunk + 1 < current.chunks.length
+                    && shrunk.length + current.chunks[chunk + 1].length <= chunkSize) {
+                // 조각이 너무 작아지면 다음 조각과 합쳐 조각 수(참조 배열 복사량)가 늘어나지 않게 한다
+                Object[] next = current.chunks[chunk + 1];
+                Object[] merged = Arrays.copyOf(shrunk, shrunk.length + next.length);
+                System.arraycopy(next, 0, merged, shrunk.length, next.length);
+                snapshot = replace(current, chunk, 2, merged);
+            } else {
+                snapshot = replace(current, chunk, 1, shrunk);
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        synchronized (lock) {
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            snapshot = new Snapshot(NO_CHUNKS, NO_ENDS);
+        }
+    }
+
+    /**
+     * 조건에 맞는 원소를 모두 지우고 스냅샷은 한 번만 새로 만든다. 지울 원소가 없는 조각은 그대로 공유한다.
+     * filter가 예외를 던지면 리스트는 바뀌지 않는다.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        synchronized (lock) {
+            return removeMatching(filter, 0, snapshot.size());
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(element -> !c.contains(element));
+    }
+
+    /**
+     * 조각마다 바꾼 복사본을 만들고 스냅샷은 한 번만 새로 만든다. 조각 구성과 누적 위치는 그대로 쓴다.
+     * operator가 예외를 던지면 리스트는 바뀌지 않는다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            Object[][] chunks = new Object[current.chunks.length][];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                Object[] old = current.chunks[chunk];
+                Object[] replaced = new Object[old.length];
+                for (int offset = 0; offset < old.length; offset++) {
+                    replaced[offset] = operator.apply((E) old[offset]);
+                }
+                chunks[chunk] = replaced;
+            }
+            snapshot = new Snapshot(chunks, current.ends);
+        }
+    }
+
+    /**
+     * 전체를 한 배열로 펼쳐 정렬한 뒤 같은 누적 위치로 다시 나눠 스냅샷을 한 번만 새로 만든다.
+     * comparator가 예외를 던지면 리스트는 바뀌지 않는다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void sort(Comparator<? super E> c) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            Object[] elements = new Object[current.size()];
+            for (int chunk = 0; chunk < current.chunks.length; chunk++) {
+                Object[] old = current.chunks[chunk];
+                System.arraycopy(old, 0, elements, current.start(chunk), old.length);
+            }
+            Arrays.sort((E[]) elements, c);
+            Object[][] chunks = new Object[current.chunks.length][];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                chunks[chunk] = Arrays.copyOfRange(elements, current.start(chunk), current.ends[chunk]);
+            }
+            snapshot = new Snapshot(chunks, current.ends);
+        }
+    }
+
+    /**
+     * subList(from, to).clear()가 부른다.
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        synchronized (lock) {
+            Objects.checkFromToIndex(fromIndex, toIndex, snapshot.size());
+            removeMatching(element -> true, fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * [from, to) 안에서 filter에 맞는 원소를 지운 스냅샷을 만든다. 조각이 chunkSize / 4보다 작아지면
+     * remove(int)처럼 이웃 조각과 합쳐 조각 수가 늘어나지 않게 한다. lock을 잡고 부른다.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean removeMatching(Predicate<? super E> filter, int from, int to) {
+        Snapshot current = snapshot;
+        List<Object[]> chunks = new ArrayList<>(current.chunks.length);
+        boolean removed = false;
+        for (int chunk = 0; chunk < current.chunks.length; chunk++) {
+            Object[] old = current.chunks[chunk];
+            int start = current.start(chunk);
+            Object[] kept = old;
+            if (start < to && start + old.length > from) {
+                kept = new Object[old.length];
+                int length = 0;
+                for (int offset = 0; offset < old.length; offset++) {
+                    int index = start + offset;
+                    if (index < from || index >= to || !filter.test((E) old[offset])) {
+                        kept[length++] = old[offset];
+                    }
+                }
+                kept = length == old.length ? old : Arrays.copyOf(kept, length);
+            }
+            if (kept == old) {
+                chunks.add(old);
+                continue;
+            }
+            removed = true;
+            if (kept.length == 0) {
+                continue;
+            }
+            int last = chunks.size() - 1;
+            if (last >= 0 && Math.min(kept.length, chunks.get(last).length) < chunkSize / 4
+                    && kept.length + chunks.get(last).length <= chunkSize) {
+                Object[] previous = chunks.get(last);
+                Object[] merged = Arrays.copyOf(previous, previous.length + kept.length);
+                System.arraycopy(kept, 0, merged, previous.length, kept.length);
+                chunks.set(last, merged);
+            } else {
+                chunks.add(kept);
+            }
+        }
+        if (!removed) {
+            return false;
+        }
+        int[] ends = new int[chunks.size()];
+        int end = 0;
+        for (int i = 0; i < ends.length; i++) {
+            end += chunks.get(i).length;
+            ends[i] = end;
+        }
+        snapshot = new Snapshot(chunks.toArray(NO_CHUNKS), ends);
+        return true;
+    }
+
+    /**
+     * current의 from번 조각부터 count개를 replacements로 바꾼 새 스냅샷을 만든다. 바뀐 조각 뒤의 누적 위치만 다시 계산한다.
+     */
+    private static Snapshot replace(Snapshot current, int from, int count, Object[]... replacements) {
+        int length = current.chunks.length - count + replacements.length;
+        Object[][] chunks = new Object[length][];
+        int[] ends = new int[length];
+        System.arraycopy(current.chunks, 0, chunks, 0, from);
+        System.arraycopy(current.ends, 0, ends, 0, from);
+        int end = current.start(from);
+        for (int i = 0; i < replacements.length; i++) {
+            chunks[from + i] = replacements[i];
+            end += replacements[i].length;
+            ends[from + i] = end;
+        }
+        for (int i = from + count, j = from + replacements.length; i < current.chunks.length; i++, j++) {
+            chunks[j] = current.chunks[i];
+            end += current.chunks[i].length;
+            ends[j] = end;
+        }
+        return new Snapshot(chunks, ends);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Snapshot current = snapshot;
+        int index = 0;
+        for (Object[] chunk : current.chunks) {
+            for (Object element : chunk) {
+                if (Objects.equals(o, element)) {
+                    return index;
+                }
+                index++;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * 지금 내용을 담은 변하지 않는 리스트. 이후의 쓰기는 반영되지 않는다.
+     */
+    public List<E> snapshot() {
+        Snapshot current = snapshot;
+        return Collections.unmodifiableList(new AbstractList<E>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public E get(int index) {
+                Objects.checkIndex(index, current.size());
+                return (E) current.get(index);
+            }
+
+            @Override
+            public int size() {
+                return current.size();
+            }
+
+            @Override
+            public Iterator<E> iterator() {
+                return new SnapshotIterator<>(current);
+            }
+        });
+    }
+
+    /**
+     * 만든 시점의 스냅샷을 순회한다. 조각 단위로 이동하므로 원소마다 이진 탐색하지 않는다. remove()는 지원하지 않는다.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new SnapshotIterator<>(snapshot);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return snapshot().listIterator(index);
+    }
+
+    private static final class SnapshotIterator<E> implements Iterator<E> {
+        private final Object[][] chunks;
+        private int chunk;
+        private int offset;
+
+        SnapshotIterator(Snapshot snapshot) {
+            this.chunks = snapshot.chunks;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return chunk < chunks.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (chunk >= chunks.length) {
+                throw new NoSuchElementException();
+            }
+            E element = (E) chunks[chunk][offset];
+            if (++offset == chunks[chunk].length) {
+                chunk++;
+                offset = 0;
+            }
+            return element;
+        }
+    }
+}
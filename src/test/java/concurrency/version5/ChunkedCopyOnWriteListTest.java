@@ -0,0 +1,247 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class ChunkedCopyOnWriteListTest {
+
+    @Test
+    @DisplayName("ChunkedCopyOnWriteList::임의의 위치에 넣고 빼고 바꾸거나 정렬, replaceAll()을 해도 ArrayList와 같은 내용을 가진다")
+    public void testSameAsArrayList() {
+        ChunkedCopyOnWriteList<Integer> list = new ChunkedCopyOnWriteList<>(8);
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            int operation = random.nextInt(10);
+            if (expected.isEmpty() || operation < 4) {
+                list.add(i);
+                expected.add(i);
+            } else if (operation < 6) {
+                int index = random.nextInt(expected.size() + 1);
+                list.add(index, i);
+                expected.add(index, i);
+            } else if (operation < 8) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), list.remove(index));
+            } else if (operation < 9) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.set(index, -i), list.set(index, -i));
+            } else {
+                Integer value = expected.get(random.nextInt(expected.size()));
+                assertEquals(expected.remove(value), list.remove(value));
+            }
+        }
+        assertEquals(expected, list);
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(expected.size()));
+
+        List<Integer> before = list.snapshot();
+        List<Integer> unsorted = new ArrayList<>(expected);
+        list.sort(Comparator.reverseOrder());
+        expected.sort(Comparator.reverseOrder());
+        assertEquals(expected, list);
+        list.replaceAll(value -> value * 2);
+        expected.replaceAll(value -> value * 2);
+        assertEquals(expected, list);
+        list.sort(null);
+        expected.sort(null);
+        assertEquals(expected, list);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+        assertThrows(IllegalStateException.class, () -> list.sort((a, b) -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(expected, list);
+        // 정렬과 replaceAll()도 새 스냅샷을 발행하므로 이전 스냅샷은 그대로다
+        assertEquals(unsorted, before);
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertFalse(list.iterator().hasNext());
+    }
+
+    @Test
+    @DisplayName("ChunkedCopyOnWriteList::iterator는 만든 시점의 스냅샷을 순회하고 remove()를 지원하지 않는다")
+    public void testIteratorSnapshot() {
+        ChunkedCopyOnWriteList<String> list = new ChunkedCopyOnWriteList<>(4);
+        list.addAll(List.of("A", "B", "C", "D", "E"));
+        Iterator<String> iterator = list.iterator();
+        List<String> snapshot = list.snapshot();
+        list.add("F");
+        list.remove("A");
+        list.set(0, "b");
+
+        List<String> iterated = new ArrayList<>();
+        iterator.forEachRemaining(iterated::add);
+        assertEquals(List.of("A", "B", "C", "D", "E"), iterated);
+        assertEquals(List.of("A", "B", "C", "D", "E"), snapshot);
+        assertEquals(List.of("b", "C", "D", "E", "F"), list);
+        assertThrows(UnsupportedOperationException.class, () -> list.iterator().remove());
+    }
+
+    @Test
+    @DisplayName("ChunkedCopyOnWriteList::removeIf, removeAll, retainAll, subList().clear()는 ArrayList와 같은 결과를 낸다")
+    public void testBulkRemoval() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            ChunkedCopyOnWriteList<Integer> list = new ChunkedCopyOnWriteList<>(8);
+            List<Integer> expected = new ArrayList<>();
+            int size = random.nextInt(200);
+            for (int i = 0; i < size; i++) {
+                int value = random.nextInt(50);
+                list.add(value);
+                expected.add(value);
+            }
+            int modulus = 2 + random.nextInt(5);
+            assertEquals(expected.removeIf(value -> value % modulus == 0), list.removeIf(value -> value % modulus == 0));
+            assertEquals(expected, list);
+            List<Integer> others = List.of(random.nextInt(50), random.nextInt(50), random.nextInt(50));
+            assertEquals(expected.removeAll(others), list.removeAll(others));
+            assertEquals(expected, list);
+            if (!expected.isEmpty()) {
+                int from = random.nextInt(expected.size());
+                int to = from + random.nextInt(expected.size() - from + 1);
+                expected.subList(from, to).clear();
+                list.subList(from, to).clear();
+                assertEquals(expected, list);
+            }
+            List<Integer> kept = List.of(random.nextInt(50), random.nextInt(50), random.nextInt(50), random.nextInt(50));
+            assertEquals(expected.retainAll(kept), list.retainAll(kept));
+            assertEquals(expected, list);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), list.get(i));
+            }
+        }
+
+        // 조건이 예외를 던지면 아무것도 지우지 않는다
+        ChunkedCopyOnWriteList<Integer> list = new ChunkedCopyOnWriteList<>(4);
+        list.addAll(List.of(1, 2, 3, 4, 5, 6));
+        assertThrows(IllegalStateException.class, () -> list.removeIf(value -> {
+            if (value == 5) {
+                throw new IllegalStateException("의도한 실패");
+            }
+            return value < 3;
+        }));
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), list);
+        assertFalse(list.removeIf(value -> value > 10));
+    }
+
+    @Test
+    @DisplayName("ChunkedCopyOnWriteList::쓰기가 계속되는 중에도 읽는 스레드는 항상 일관된 스냅샷을 본다")
+    public void testConsistentSnapshotUnderWrites() throws InterruptedException {
+        // 쓰는 쪽은 뒤에 다음 수를 붙이고 앞에서 가장 작은 수를 빼므로, 어느 시점에도 리스트는 1000개나 1001개의 연속된 정수다
+        ChunkedCopyOnWriteList<Integer> list = new ChunkedCopyOnWriteList<>(16);
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        executor.submit(() -> {
+            for (int next = 1000; next < 200_000; next++) {
+                list.add(next);
+                list.remove(0);
+            }
+            running.set(false);
+        });
+        for (int r = 0; r < 3; r++) {
+            executor.submit(() -> {
+                while (running.get()) {
+                    Integer previous = null;
+                    int count = 0;
+                    for (Integer value : list) {
+                        if (previous != null && value != previous + 1) {
+                            consistent.set(false);
+                        }
+                        previous = value;
+                        count++;
+                    }
+                    if (count != 1000 && count != 1001) {
+                        consistent.set(false);
+                    }
+                    Thread.yield();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(consistent.get());
+        assertEquals(199_000, list.get(0));
+    }
+
+    private static final int LIST_SIZE = 100_000;
+    private static final int WRITE_COUNT = 20_000;
+
+    /**
+     * 구독자 10만 명인 목록에서 구독 해지와 재구독(중간 원소 remove 후 끝에 add)을 반복하는 시간과
+     * 전체를 한 번 순회하는 시간을 잰다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("원소 10만 개에서 CopyOnWriteArrayList와 ChunkedCopyOnWriteList의 쓰기, 순회 비용 비교")
+    public void testWriteCost() throws Exception {
+        Benchmark.of("ns/op")
+                .add("CopyOnWriteArrayList 쓰기", () -> measureWrites(new CopyOnWriteArrayList<>(initial())))
+                .add("CopyOnWriteArrayList 순회", "us", () -> measureIteration(new CopyOnWriteArrayList<>(initial())))
+                .add("ChunkedCopyOnWriteList 쓰기", () -> measureWrites(chunked(initial())))
+                .add("ChunkedCopyOnWriteList 순회", "us", () -> measureIteration(chunked(initial())))
+                .run();
+    }
+
+    private static List<Integer> initial() {
+        List<Integer> initial = new ArrayList<>();
+        for (int i = 0; i < LIST_SIZE; i++) {
+            initial.add(i);
+        }
+        return initial;
+    }
+
+    private static ChunkedCopyOnWriteList<Integer> chunked(List<Integer> initial) {
+        ChunkedCopyOnWriteList<Integer> chunked = new ChunkedCopyOnWriteList<>();
+        chunked.addAll(initial);
+        return chunked;
+    }
+
+    private static long measureWrites(List<Integer> list) {
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITE_COUNT; i++) {
+            Integer unsubscribed = list.remove(random.nextInt(list.size()));
+            list.add(unsubscribed);
+        }
+        return (System.nanoTime() - start) / (2L * WRITE_COUNT);
+    }
+
+    private static long measureIteration(List<Integer> list) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            for (Integer value : list) {
+                sum += value;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(100L * LIST_SIZE * (LIST_SIZE - 1) / 2, sum);
+        return TimeUnit.NANOSECONDS.toMicros(elapsed / 100);
+    }
+}
@@ -0,0 +1,136 @@
+package concurrency.version5;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 플랫 컴바이닝(flat combining)으로 순차 자료구조(Stack, TreeMap 등)를 여러 스레드에서 안전하게 쓰게 한다.
+ *
+ * 각 스레드는 자기 전용 슬롯에 연산을 올려두고, 락을 잡은 스레드(컴바이너)가 모든 슬롯을 훑어
+ * 대기 중인 연산을 한 번에 실행한다. 락을 잡지 못한 스레드는 락을 기다리는 대신 자기 슬롯에
+ * 결과가 채워지기를 기다린다. 자료구조는 컴바이너 스레드의 캐시에만 머물고, 락 핸드오프 횟수도 줄어든다.
+ */
+public class Combiner<S> {
+
+    // 이 횟수만큼 컴바이닝하는 동안 쓰이지 않은 슬롯은 목록에서 뺀다
+    private static final int SLOT_MAX_AGE = 1024;
+    private static final int SPINS_BEFORE_YIELD = 128;
+
+    static final class Slot {
+        // 실행할 연산. 컴바이너가 실행을 마치면 null로 바꿔 결과가 준비됐음을 알린다
+        volatile Function<Object, Object> request;
+        Object result;
+        Throwable failure;
+        // 목록에 연결되어 있는지. 빠졌으면 다음 요청 때 다시 연결한다
+        volatile boolean active;
+        long lastUsedPass;
+        volatile Slot next;
+    }
+
+    private final S structure;
+    private final AtomicBoolean lock = new AtomicBoolean();
+    private final AtomicReference<Slot> head = new AtomicReference<>();
+    private final ThreadLocal<Slot> slots = ThreadLocal.withInitial(Slot::new);
+    // 컴바이닝 횟수. 컴바이너만 갱신한다
+    private long passes;
+
+    public Combiner(S structure) {
+        this.structure = structure;
+    }
+
+    /**
+     * 자료구조에 연산을 적용하고 결과를 반환한다. 연산은 어느 스레드에서 실행될지 알 수 없으므로
+     * 자료구조 외의 상태를 건드리지 않아야 한다.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R apply(Function<S, R> operation) {
+        Slot slot = slots.get();
+        slot.result = null;
+        slot.failure = null;
+        slot.request = (Function<Object, Object>) operation;
+        if (!slot.active) {
+            register(slot);
+        }
+
+        int spins = 0;
+        while (slot.request != null) {
+            if (!lock.get() && lock.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    lock.set(false);
+                }
+            } else if (++spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                spins = 0;
+                Thread.yield();
+            }
+            // 컴바이너가 오래된 슬롯으로 판단해 목록에서 뺐다면 다시 연결한다
+            if (slot.request != null && !slot.active) {
+                register(slot);
+            }
+        }
+
+        Throwable failure = slot.failure;
+        if (failure != null) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw (Error) failure;
+        }
+        return (R) slot.result;
+    }
+
+    public void accept(Consumer<S> operation) {
+        apply(s -> {
+            operation.accept(s);
+            return null;
+        });
+    }
+
+    // 슬롯 목록의 맨 앞에 연결한다. 맨 앞에 붙이는 일은 여러 스레드가 CAS로 하고, 중간 노드 제거는 컴바이너만 한다
+    private void register(Slot slot) {
+        slot.active = true;
+        Slot first;
+        do {
+            first = head.get();
+            slot.next = first;
+        } while (!head.compareAndSet(first, slot));
+    }
+
+    private void combine() {
+        long pass = ++passes;
+        Slot previous = null;
+        for (Slot slot = head.get(); slot != null; slot = slot.next) {
+            Function<Object, Object> request = slot.request;
+            if (request != null) {
+                try {
+                    slot.result = request.apply(structure);
+                } catch (RuntimeException | Error e) {
+                    slot.failure = e;
+                }
+                slot.lastUsedPass = pass;
+                slot.request = null;
+                previous = slot;
+            } else if (previous != null && pass - slot.lastUsedPass > SLOT_MAX_AGE) {
+                // 맨 앞 노드는 다른 스레드가 CAS 중일 수 있으므로 빼지 않는다
+                previous.next = slot.next;
+                slot.active = false;
+            } else {
+                previous = slot;
+            }
+        }
+    }
+
+    // 슬롯 목록에 연결된 스레드 수
+    int registeredSlots() {
+        int count = 0;
+        for (Slot slot = head.get(); slot != null; slot = slot.next) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,154 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EmptyStackException;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class CombinerTest {
+
+    @Test
+    @DisplayName("Combiner::여러 스레드의 push, pop이 하나의 Stack에 빠짐없이 적용된다")
+    public void testConcurrentStack() throws InterruptedException {
+        Combiner<Stack<Integer>> stack = new Combiner<>(new Stack<>());
+        int numberOfThreads = 8;
+        int operationsPerThread = 10_000;
+        AtomicLong poppedSum = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < operationsPerThread; j++) {
+                    int value = j;
+                    stack.accept(s -> s.push(value));
+                    poppedSum.addAndGet(stack.apply(Stack::pop));
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        long expectedSum = (long) numberOfThreads * operationsPerThread * (operationsPerThread - 1) / 2;
+        assertEquals(expectedSum, poppedSum.get());
+        boolean empty = stack.apply(Stack::isEmpty);
+        assertTrue(empty);
+        // 오래 쓰이지 않은 슬롯은 목록에서 빠지므로 스레드 수보다 많을 수 없다
+        assertTrue(stack.registeredSlots() <= numberOfThreads + 1);
+    }
+
+    @Test
+    @DisplayName("Combiner::TreeMap에 대한 동시 put이 모두 반영된다")
+    public void testConcurrentTreeMap() throws InterruptedException {
+        Combiner<TreeMap<Integer, Integer>> map = new Combiner<>(new TreeMap<>());
+        int numberOfThreads = 10;
+        int operationsPerThread = 1000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            int base = i * operationsPerThread;
+            executor.submit(() -> {
+                for (int j = 0; j < operationsPerThread; j++) {
+                    int key = base + j;
+                    map.accept(m -> m.put(key, key));
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        int size = map.apply(TreeMap::size);
+        int firstKey = map.apply(TreeMap::firstKey);
+        int lastKey = map.apply(TreeMap::lastKey);
+        assertEquals(numberOfThreads * operationsPerThread, size);
+        assertEquals(0, firstKey);
+        assertEquals(numberOfThreads * operationsPerThread - 1, lastKey);
+    }
+
+    @Test
+    @DisplayName("Combiner::연산에서 발생한 예외는 연산을 요청한 스레드에서 다시 던져진다")
+    public void testExceptionPropagation() {
+        Combiner<Stack<Integer>> stack = new Combiner<>(new Stack<>());
+
+        assertThrows(EmptyStackException.class, () -> stack.apply(Stack::pop));
+
+        // 예외 이후에도 계속 사용할 수 있어야 함
+        stack.accept(s -> s.push(1));
+        int popped = stack.apply(Stack::pop);
+        assertEquals(1, popped);
+    }
+
+    private static final int OPERATION_COUNT = 100_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("synchronized, ReentrantLock, Combiner로 감싼 Stack의 push/pop 성능 비교")
+    public void testCombinerPerformance() throws InterruptedException {
+        for (int threadCount = 1; threadCount <= 16; threadCount *= 2) {
+            Stack<Integer> synchronizedStack = new Stack<>();
+            Object monitor = new Object();
+            long synchronizedTime = measurePerformance(threadCount, value -> {
+                synchronized (monitor) {
+                    synchronizedStack.push(value);
+                    return synchronizedStack.pop();
+                }
+            });
+
+            Stack<Integer> lockedStack = new Stack<>();
+            ReentrantLock lock = new ReentrantLock();
+            long lockTime = measurePerformance(threadCount, value -> {
+                lock.lock();
+                try {
+                    lockedStack.push(value);
+                    return lockedStack.pop();
+                } finally {
+                    lock.unlock();
+                }
+            });
+
+            Combiner<Stack<Integer>> combiner = new Combiner<>(new Stack<>());
+            long combinerTime = measurePerformance(threadCount, value -> combiner.apply(s -> {
+                s.push(value);
+                return s.pop();
+            }));
+
+            System.out.println("threads=" + threadCount
+                    + " synchronized: " + synchronizedTime + " ms"
+                    + ", ReentrantLock: " + lockTime + " ms"
+                    + ", Combiner: " + combinerTime + " ms");
+        }
+    }
+
+    private long measurePerformance(int threadCount, Function<Integer, Integer> pushThenPop)
+            throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.currentTimeMillis();
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    pushThenPop.apply(j);
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+
+        long endTime = System.currentTimeMillis();
+        return endTime - startTime;
+    }
+}
@@ -0,0 +1,163 @@
+package concurrency.version5;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 소거 배열(elimination array)을 둔 락 없는 Treiber 스택.
+ *
+ * 평소에는 top 포인터 하나를 CAS로 바꾸고, CAS가 실패해 경합이 감지되면 바로 재시도하는 대신
+ * 소거 배열의 임의 칸에서 반대 연산을 기다린다. push와 pop이 만나면 원소를 직접 주고받고 끝나므로
+ * top을 건드리지 않는다. java.util.Stack과 달리 push/pop/peek 외의 연산(add(index, e) 등)은 없다.
+ */
+public class EliminationBackoffStack<E> {
+
+    private static final class Node<E> {
+        final E item;
+        Node<E> next;
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+
+    // pop이 교환기에 내놓는 표시. push가 이것을 받으면 원소가 pop에게 전달된 것이다
+    private static final Object POP = new Object();
+    private static final Object TIMEOUT = new Object();
+
+    private final AtomicReference<Node<E>> top = new AtomicReference<>();
+    private final Exchanger[] eliminationArray;
+    private final long exchangeTimeoutNanos;
+    private final LongAdder eliminated = new LongAdder();
+
+    public EliminationBackoffStack() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), 1_000);
+    }
+
+    /**
+     * @param eliminationSize      소거 배열 칸 수
+     * @param exchangeTimeoutNanos 소거 배열 칸에서 반대 연산을 기다리는 시간
+     */
+    public EliminationBackoffStack(int eliminationSize, long exchangeTimeoutNanos) {
+        if (eliminationSize < 1 || exchangeTimeoutNanos < 0) {
+            throw new IllegalArgumentException("eliminationSize >= 1, exchangeTimeoutNanos >= 0 이어야 합니다.");
+        }
+        this.eliminationArray = new Exchanger[eliminationSize];
+        for (int i = 0; i < eliminationSize; i++) {
+            eliminationArray[i] = new Exchanger();
+        }
+        this.exchangeTimeoutNanos = exchangeTimeoutNanos;
+    }
+
+    public void push(E item) {
+        if (item == null) {
+            throw new NullPointerException("null은 넣을 수 없습니다.");
+        }
+        Node<E> node = new Node<>(item);
+        for (;;) {
+            Node<E> oldTop = top.get();
+            node.next = oldTop;
+            if (top.compareAndSet(oldTop, node)) {
+                return;
+            }
+            if (visit(item) == POP) {
+                eliminated.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return 맨 위 원소. 스택이 비었으면 null
+     */
+    @SuppressWarnings("unchecked")
+    public E pop() {
+        for (;;) {
+            Node<E> oldTop = top.get();
+            if (oldTop == null) {
+                return null;
+            }
+            if (top.compareAndSet(oldTop, oldTop.next)) {
+                return oldTop.item;
+            }
+            Object other = visit(POP);
+            if (other != POP && other != TIMEOUT) {
+                eliminated.increment();
+                return (E) other;
+            }
+        }
+    }
+
+    public E peek() {
+        Node<E> node = top.get();
+        return node == null ? null : node.item;
+    }
+
+    public boolean isEmpty() {
+        return top.get() == null;
+    }
+
+    // 소거 배열에서 반대 연산과 만나 끝난 push/pop 수
+    public long eliminatedOperations() {
+        return eliminated.sum();
+    }
+
+    private Object visit(Object value) {
+        int slot = ThreadLocalRandom.current().nextInt(eliminationArray.length);
+        return eliminationArray[slot].exchange(value, exchangeTimeoutNanos);
+    }
+
+    /**
+     * 두 스레드가 값을 맞바꾸는 락 없는 교환기. 상태는 스탬프로 표현한다.
+     * EMPTY: 비어 있음, WAITING: 한 스레드가 값을 두고 기다리는 중, BUSY: 다른 스레드가 값을 가져가고 자기 값을 둠
+     */
+    private static final class Exchanger {
+        private static final int EMPTY = 0;
+        private static final int WAITING = 1;
+        private static final int BUSY = 2;
+
+        private final AtomicStampedReference<Object> slot = new AtomicStampedReference<>(null, EMPTY);
+
+        Object exchange(Object myItem, long timeoutNanos) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            int[] stamp = new int[1];
+            while (System.nanoTime() - deadline < 0) {
+                Object yourItem = slot.get(stamp);
+                switch (stamp[0]) {
+                    case EMPTY -> {
+                        if (slot.compareAndSet(yourItem, myItem, EMPTY, WAITING)) {
+                            return awaitPartner(myItem, deadline, stamp);
+                        }
+                    }
+                    case WAITING -> {
+                        if (slot.compareAndSet(yourItem, myItem, WAITING, BUSY)) {
+                            return yourItem;
+                        }
+                    }
+                    default -> Thread.onSpinWait();
+                }
+            }
+            return TIMEOUT;
+        }
+
+        private Object awaitPartner(Object myItem, long deadline, int[] stamp) {
+            while (System.nanoTime() - deadline < 0) {
+                Object yourItem = slot.get(stamp);
+                if (stamp[0] == BUSY) {
+                    slot.set(null, EMPTY);
+                    return yourItem;
+                }
+                Thread.onSpinWait();
+            }
+            // 시간이 다 됐으면 내 값을 거둔다. 그 사이 누가 가져갔으면 교환이 성립한 것이다
+            if (slot.compareAndSet(myItem, null, WAITING, EMPTY)) {
+                return TIMEOUT;
+            }
+            Object yourItem = slot.get(stamp);
+            slot.set(null, EMPTY);
+            return yourItem;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Stack;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class EliminationBackoffStackTest {
+
+    @Test
+    @DisplayName("EliminationBackoffStack::push, pop만으로 후입선출 순서를 지킨다")
+    public void testLifo() {
+        EliminationBackoffStack<String> stack = new EliminationBackoffStack<>();
+        stack.push("first");
+        stack.push("second");
+        stack.push("third");
+
+        assertEquals("third", stack.peek());
+        assertEquals("third", stack.pop());
+        assertEquals("second", stack.pop());
+        assertEquals("first", stack.pop());
+        assertNull(stack.pop());
+        assertTrue(stack.isEmpty());
+        assertThrows(NullPointerException.class, () -> stack.push(null));
+    }
+
+    @Test
+    @DisplayName("EliminationBackoffStack::동시에 push, pop해도 원소가 유실되거나 중복되지 않는다")
+    public void testConcurrentPushPop() throws InterruptedException {
+        EliminationBackoffStack<Integer> stack = new EliminationBackoffStack<>(4, 10_000);
+        int numberOfThreads = 8;
+        int operationsPerThread = 100_000;
+        AtomicLong pushedSum = new AtomicLong();
+        AtomicLong poppedSum = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            boolean pusher = i % 2 == 0;
+            executor.submit(() -> {
+                long sum = 0;
+                for (int j = 1; j <= operationsPerThread; j++) {
+                    if (pusher) {
+                        stack.push(j);
+                        sum += j;
+                    } else {
+                        Integer item = stack.pop();
+                        if (item != null) {
+                            sum += item;
+                        }
+                    }
+                }
+                (pusher ? pushedSum : poppedSum).addAndGet(sum);
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        // 남은 원소까지 꺼내면 넣은 합과 꺼낸 합이 같아야 함
+        Integer item;
+        while ((item = stack.pop()) != null) {
+            poppedSum.addAndGet(item);
+        }
+        assertEquals(pushedSum.get(), poppedSum.get());
+        System.out.println("소거 배열에서 끝난 연산 수: " + stack.eliminatedOperations());
+    }
+
+    private static final int OPERATION_COUNT = 200_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Stack, ConcurrentLinkedDeque, EliminationBackoffStack의 push/pop 성능 비교")
+    public void testStackPerformance() throws InterruptedException {
+        for (int threadCount = 2; threadCount <= 16; threadCount *= 2) {
+            Stack<Integer> synchronizedStack = new Stack<>();
+            long stackTime = measurePerformance(threadCount, synchronizedStack::push, () -> {
+                synchronized (synchronizedStack) {
+                    return synchronizedStack.isEmpty() ? null : synchronizedStack.pop();
+                }
+            });
+
+            ConcurrentLinkedDeque<Integer> deque = new ConcurrentLinkedDeque<>();
+            long dequeTime = measurePerformance(threadCount, deque::push, deque::pollFirst);
+
+            EliminationBackoffStack<Integer> elimination = new EliminationBackoffStack<>();
+            long eliminationTime = measurePerformance(threadCount, elimination::push, elimination::pop);
+
+            System.out.println("threads=" + threadCount
+                    + " Stack: " + stackTime + " ms"
+                    + ", ConcurrentLinkedDeque: " + dequeTime + " ms"
+                    + ", EliminationBackoffStack: " + eliminationTime + " ms"
+                    + " (소거 " + elimination.eliminatedOperations() + ")");
+        }
+    }
+
+    private long measurePerformance(int threadCount, Consumer<Integer> push, Supplier<Integer> pop) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.currentTimeMillis();
+
+        // 절반은 push, 절반은 pop
+        for (int i = 0; i < threadCount; i++) {
+            boolean pusher = i % 2 == 0;
+            executorService.submit(() -> {
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    if (pusher) {
+                        push.accept(j);
+                    } else {
+                        pop.get();
+                    }
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+
+        long endTime = System.currentTimeMillis();
+        return endTime - startTime;
+    }
+}
@@ -0,0 +1,287 @@
+package concurrency.version5;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 스레드 하나가 자기 큐만 처리하는 이벤트 루프. EventLoopGroup이 코어 수만큼 만든다.
+ *
+ * 루프마다 다음을 따로 가지고, 루프 스레드 외에는 받은편지함만 건드린다.
+ * <ul>
+ *     <li>받은편지함(inbox): 다른 스레드가 넣은 작업. 생산자 여럿, 소비자 하나인 MpscArrayQueue다.</li>
+ *     <li>준비 큐(ready): 이번 바퀴에 실행할 작업. 루프 스레드가 자기 자신에게 넣는 작업은 받은편지함을 거치지 않고 바로 들어간다.</li>
+ *     <li>타이머: 마감 시각 순 PriorityQueue. 다른 스레드가 건 타이머는 받은편지함을 거쳐 들어온다.</li>
+ * </ul>
+ * 한 바퀴마다 받은편지함을 묶음으로 꺼내고, 만료된 타이머를 옮긴 뒤, 준비 큐를 최대 BATCH개 실행한다.
+ * 할 일이 없으면 잠깐 양보하다가 다음 타이머까지 잠든다. 생산자는 루프가 잠들려 할 때만 깨운다.
+ *
+ * 작업은 루프 스레드를 막으면 안 된다. 같은 루프의 모든 작업이 그동안 멈춘다.
+ *
+ * 받은편지함이 가득 찼을 때(배압):
+ * <ul>
+ *     <li>루프 밖의 스레드는 자리가 날 때까지 양보하며 기다린다. 생산 속도가 루프를 앞지르면 생산자가 느려진다.</li>
+ *     <li>다른 루프 스레드는 기다리지 않고 크기 제한이 없는 넘침 큐(overflow)에 넣는다. 두 루프가 서로의 가득 찬
+ *     받은편지함을 기다리며 멈추는 교착을 막기 위해서다. 그 대신 루프끼리 주고받는 작업은 메모리로만 제한되므로,
+ *     루프 사이 메시지가 계속 쌓이는지 overflowedTasks()로 지켜봐야 한다.</li>
+ * </ul>
+ * 한 생산자가 넣은 작업의 순서는 넘침 큐를 거쳐도 지킨다.
+ */
+public final class EventLoop implements Executor {
+
+    private static final int BATCH = 1024;
+    private static final int IDLE_YIELDS = 64;
+    // 지금 스레드가 돌리는 루프. 루프 스레드가 아니면 null이다
+    private static final ThreadLocal<EventLoop> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 건 타이머. 마감 전이면 cancel()로 취소한다.
+     */
+    public static final class Timer implements Comparable<Timer> {
+        private final Runnable task;
+        private final long deadline;
+        // 같은 마감 시각이면 건 순서대로 실행하도록 루프 스레드가 큐에 넣을 때 매긴다
+        private long sequence;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Timer(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 취소된 타이머는 마감 시각에 실행하지 않고 버린다.
+         */
+        public boolean cancel() {
+            return cancelled.compareAndSet(false, true);
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            int compare = Long.compare(deadline - other.deadline, 0);
+            return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final int index;
+    private final MpscArrayQueue<Runnable> inbox;
+    // 받은편지함이 가득 찼을 때 다른 루프가 넣는 작업
+    private final ConcurrentLinkedQueue<Runnable> overflow = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean wakeupNeeded;
+    private volatile boolean shutdown;
+    // shutdown을 확인하고 작업을 넣는 중인 루프 밖의 스레드 수. 0이 아니면 루프가 끝나지 않는다
+    private final AtomicInteger submitting = new AtomicInteger();
+    private final LongAdder failedTasks = new LongAdder();
+    private final LongAdder overflowedTasks = new LongAdder();
+
+    // 루프 스레드만 읽고 쓴다
+    private final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private long timerSequence;
+
+    EventLoop(int index, int inboxCapacity, String name) {
+        this.index = index;
+        this.inbox = new MpscArrayQueue<>(inboxCapacity);
+        this.thread = new Thread(this::run, name + "-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 루프 스레드에서 부르면 준비 큐에 바로 넣고, 다른 스레드(다른 루프 포함)에서 부르면 받은편지함에 넣는다.
+     * 받은편지함이 가득 차면 루프 밖의 스레드는 빌 때까지 양보하며 기다리고, 다른 루프 스레드는 넘침 큐에 넣고 바로 반환한다.
+     *
+     * 루프 밖의 스레드는 submitting을 올린 뒤 shutdown을 확인하고, 작업을 넣은 뒤 내린다. 루프는 shutdown 뒤에
+     * submitting이 0인 것을 확인하고 나서 큐가 비었는지 보므로, shutdown 전에 받아들인 작업은 루프가 끝나기 전에 반드시 실행된다.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (inEventLoop()) {
+            if (shutdown) {
+                throw new RejectedExecutionException(thread.getName() + "은 종료되었습니다.");
+            }
+            ready.add(task);
+            return;
+        }
+        submitting.incrementAndGet();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException(thread.getName() + "은 종료되었습니다.");
+            }
+            offer(task);
+        } finally {
+            submitting.decrementAndGet();
+        }
+        if (wakeupNeeded) {
+            wakeup();
+        }
+    }
+
+    private void offer(Runnable task) {
+        if (CURRENT.get() != null) {
+            // 넘침 큐에 앞서 넣은 작업이 남아 있으면 순서를 지키기 위해 받은편지함을 건너뛴다
+            if (!overflow.isEmpty() || !inbox.offer(task)) {
+                overflow.add(task);
+                overflowedTasks.increment();
+            }
+        } else {
+            while (!inbox.offer(task)) {
+                wakeup();
+                Thread.yield();
+            }
+        }
+    }
+
+    private void wakeup() {
+        wakeupNeeded = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * delay 뒤에 루프 스레드에서 task를 실행한다.
+     */
+    public Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        Timer timer = new Timer(task, System.nanoTime() + unit.toNanos(delay));
+        if (inEventLoop()) {
+            addTimer(timer);
+        } else {
+            execute(() -> addTimer(timer));
+        }
+        return timer;
+    }
+
+    private void addTimer(Timer timer) {
+        timer.sequence = timerSequence++;
+        timers.add(timer);
+    }
+
+    private void run() {
+        CURRENT.set(this);
+        int idle = 0;
+        while (true) {
+            int drained = inbox.drain(ready::add, BATCH) + drainOverflow();
+            long now = System.nanoTime();
+            runExpiredTimers(now);
+            int executed = runReady();
+            if (drained > 0 || executed > 0) {
+                idle = 0;
+                continue;
+            }
+            // submitting을 큐보다 먼저 읽어야 넣는 중이던 작업을 놓치지 않는다
+            if (shutdown && submitting.get() == 0 && inbox.isEmpty() && overflow.isEmpty() && ready.isEmpty()) {
+                return;
+            }
+            if (++idle < IDLE_YIELDS) {
+                Thread.yield();
+                continue;
+            }
+            // 잠들기 전에 깨워 달라고 알리고 받은편지함을 다시 본다. 생산자는 넣은 뒤 이 플래그를 읽는다
+            wakeupNeeded = true;
+            VarHandle.fullFence();
+            if (inbox.isEmpty() && overflow.isEmpty() && !shutdown) {
+                Timer next = timers.peek();
+                if (next == null) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, next.deadline - System.nanoTime());
+                }
+            }
+            wakeupNeeded = false;
+            idle = 0;
+        }
+    }
+
+    private int drainOverflow() {
+        int drained = 0;
+        Runnable task;
+        while (drained < BATCH && (task = overflow.poll()) != null) {
+            ready.add(task);
+            drained++;
+        }
+        return drained;
+    }
+
+    private void runExpiredTimers(long now) {
+        Timer timer;
+        while ((timer = timers.peek()) != null && timer.deadline - now <= 0) {
+            timers.poll();
+            if (!timer.cancelled.get()) {
+                ready.add(timer.task);
+            }
+        }
+    }
+
+    private int runReady() {
+        int executed = 0;
+        Runnable task;
+        while (executed < BATCH && (task = ready.poll()) != null) {
+            executed++;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failedTasks.increment();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * 예외를 던진 작업 수
+     */
+    public long failedTasks() {
+        return failedTasks.sum();
+    }
+
+    /**
+     * 받은편지함이 가득 차서 다른 루프가 넘침 큐에 넣은 작업 수
+     */
+    public long overflowedTasks() {
+        return overflowedTasks.sum();
+    }
+
+    /**
+     * 받은편지함과 넘침 큐에 남은 작업 수 (근삿값)
+     */
+    public int pendingTasks() {
+        return inbox.size() + overflow.size();
+    }
+
+    /**
+     * 받은편지함과 준비 큐를 비운 뒤 루프를 끝낸다. 아직 마감되지 않은 타이머는 실행하지 않는다.
+     */
+    void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(thread);
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        thread.join(Math.max(1, unit.toMillis(timeout)));
+        return !thread.isAlive();
+    }
+
+    @Override
+    public String toString() {
+        return thread.getName() + "[pending=" + pendingTasks() + ", failed=" + failedTasks() + "]";
+    }
+}
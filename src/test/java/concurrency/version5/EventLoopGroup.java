@@ -0,0 +1,103 @@
+package concurrency.version5;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 코어마다 EventLoop 하나를 두고 키로 루프를 고르는 공유 없는(shared-nothing) 스케줄러.
+ *
+ * Executors.newFixedThreadPool()은 모든 스레드가 큐 하나를 나눠 쓰므로 작업마다 큐 락을 두고 다투고, 같은 키의 작업이
+ * 매번 다른 스레드로 가서 키별 상태를 락으로 보호하고 캐시 사이로 옮겨 다녀야 한다.
+ * 여기서는 같은 키를 항상 같은 루프로 보낸다(sticky routing). 키별 상태는 그 루프 스레드만 건드리므로 락 없이 두고,
+ * 다른 키의 상태가 필요하면 그 키의 루프에 작업을 보내 처리하게 한다(cross-loop message passing).
+ *
+ * Java에는 스레드를 특정 코어에 고정하는 API가 없으므로 루프 수를 코어 수에 맞추는 데까지만 한다.
+ */
+public class EventLoopGroup implements AutoCloseable {
+
+    private static final int DEFAULT_INBOX_CAPACITY = 1 << 16;
+
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public EventLoopGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public EventLoopGroup(int loopCount) {
+        this(loopCount, DEFAULT_INBOX_CAPACITY);
+    }
+
+    /**
+     * @param inboxCapacity 루프마다 받은편지함 크기. 2의 거듭제곱으로 올린다
+     */
+    public EventLoopGroup(int loopCount, int inboxCapacity) {
+        if (loopCount < 1) {
+            throw new IllegalArgumentException("loopCount는 1 이상이어야 합니다: " + loopCount);
+        }
+        loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i, inboxCapacity, "event-loop");
+        }
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public int size() {
+        return loops.length;
+    }
+
+    public EventLoop loop(int index) {
+        return loops[index];
+    }
+
+    /**
+     * 키가 없는 작업을 돌아가며 나눠 줄 루프
+     */
+    public EventLoop next() {
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * key를 맡은 루프. 같은 키는 그룹이 살아 있는 동안 항상 같은 루프다.
+     */
+    public EventLoop loopFor(Object key) {
+        return loops[loopIndex(key.hashCode(), loops.length)];
+    }
+
+    // hashCode의 상위 비트도 섞어 하위 비트만 다른 키가 한 루프에 몰리지 않게 한다
+    static int loopIndex(int hash, int loopCount) {
+        int spread = hash ^ (hash >>> 16);
+        return Math.floorMod(spread, loopCount);
+    }
+
+    /**
+     * key를 맡은 루프에서 task를 실행한다. 받은편지함이 가득 찼을 때의 동작은 EventLoop.execute()와 같다.
+     */
+    public void execute(Object key, Runnable task) {
+        loopFor(key).execute(task);
+    }
+
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (EventLoop loop : loops) {
+            if (!loop.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        shutdown();
+        awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
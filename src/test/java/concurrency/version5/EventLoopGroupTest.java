@@ -0,0 +1,281 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class EventLoopGroupTest {
+
+    @Test
+    @DisplayName("EventLoopGroup::같은 키의 작업은 항상 같은 루프 스레드에서 넣은 순서대로 실행한다")
+    void testStickyRouting() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(4)) {
+            Map<Integer, List<Integer>> orderByKey = new ConcurrentHashMap<>();
+            Map<Integer, String> threadByKey = new ConcurrentHashMap<>();
+            AtomicInteger wrongThread = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                int key = i % 10;
+                int sequence = i;
+                group.execute(key, () -> {
+                    String name = Thread.currentThread().getName();
+                    if (!name.equals(threadByKey.computeIfAbsent(key, k -> name))) {
+                        wrongThread.incrementAndGet();
+                    }
+                    // 키별 목록은 그 키를 맡은 루프만 건드리므로 락이 필요 없다
+                    orderByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(sequence);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, wrongThread.get());
+            orderByKey.forEach((key, sequences) -> {
+                for (int i = 1; i < sequences.size(); i++) {
+                    assertTrue(sequences.get(i - 1) < sequences.get(i));
+                }
+            });
+            assertEquals(group.loopFor(3).index(), group.loopFor(3).index());
+        }
+    }
+
+    @Test
+    @DisplayName("EventLoopGroup::루프끼리 작업을 주고받고, 루프 안에서 넣은 작업은 같은 루프에서 실행한다")
+    void testCrossLoopMessagePassing() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            EventLoop ping = group.loop(0);
+            EventLoop pong = group.loop(1);
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            AtomicInteger wrongLoop = new AtomicInteger();
+            ping.execute(() -> bounce(ping, pong, 0, result, wrongLoop));
+            assertEquals(1000, result.get(5, TimeUnit.SECONDS));
+            assertEquals(0, wrongLoop.get());
+
+            CompletableFuture<Boolean> local = new CompletableFuture<>();
+            ping.execute(() -> ping.execute(() -> local.complete(ping.inEventLoop())));
+            assertTrue(local.get(1, TimeUnit.SECONDS));
+            assertFalse(ping.inEventLoop());
+        }
+    }
+
+    // 두 루프가 번갈아 count를 하나씩 올려 상대에게 보낸다
+    private static void bounce(EventLoop self, EventLoop other, int count, CompletableFuture<Integer> result,
+                               AtomicInteger wrongLoop) {
+        if (!self.inEventLoop()) {
+            wrongLoop.incrementAndGet();
+        }
+        if (count == 1000) {
+            result.complete(count);
+            return;
+        }
+        other.execute(() -> bounce(other, self, count + 1, result, wrongLoop));
+    }
+
+    @Test
+    @DisplayName("EventLoopGroup::두 루프가 서로의 받은편지함을 가득 채워도 교착되지 않고 모든 작업을 순서대로 실행한다")
+    void testMutualSaturation() throws Exception {
+        int perLoop = 10_000;
+        try (EventLoopGroup group = new EventLoopGroup(2, 16)) {
+            EventLoop first = group.loop(0);
+            EventLoop second = group.loop(1);
+            List<Integer> toFirst = new ArrayList<>();
+            List<Integer> toSecond = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(2 * perLoop);
+            // 각 루프가 한 작업 안에서 상대 루프에 받은편지함보다 훨씬 많은 작업을 연달아 보낸다
+            first.execute(() -> {
+                for (int i = 0; i < perLoop; i++) {
+                    int sequence = i;
+                    second.execute(() -> {
+                        toSecond.add(sequence);
+                        done.countDown();
+                    });
+                }
+            });
+            second.execute(() -> {
+                for (int i = 0; i < perLoop; i++) {
+                    int sequence = i;
+                    first.execute(() -> {
+                        toFirst.add(sequence);
+                        done.countDown();
+                    });
+                }
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(first.overflowedTasks() + second.overflowedTasks() > 0);
+            for (List<Integer> received : List.of(toFirst, toSecond)) {
+                for (int i = 0; i < perLoop; i++) {
+                    assertEquals(i, received.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("EventLoopGroup::타이머는 마감 시각 순으로 루프 스레드에서 실행하고, 취소한 타이머는 실행하지 않는다")
+    void testTimers() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(1)) {
+            EventLoop loop = group.loop(0);
+            List<String> fired = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(3);
+            loop.schedule(() -> {
+                fired.add("50ms");
+                done.countDown();
+            }, 50, TimeUnit.MILLISECONDS);
+            loop.schedule(() -> {
+                fired.add("10ms");
+                done.countDown();
+            }, 10, TimeUnit.MILLISECONDS);
+            // 마감 전에 취소해야 하므로 걸자마자 취소한다
+            EventLoop.Timer cancelled = loop.schedule(() -> fired.add("취소됨"), 20, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.cancel());
+            assertFalse(cancelled.cancel());
+            loop.schedule(() -> {
+                fired.add("30ms:" + loop.inEventLoop());
+                done.countDown();
+            }, 30, TimeUnit.MILLISECONDS);
+
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            assertEquals(List.of("10ms", "30ms:true", "50ms"), fired);
+        }
+    }
+
+    @Test
+    @DisplayName("EventLoopGroup::작업이 예외를 던져도 루프는 계속 돈다")
+    void testFailingTaskDoesNotKillLoop() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(1)) {
+            EventLoop loop = group.loop(0);
+            loop.execute(() -> {
+                throw new IllegalStateException("의도한 실패");
+            });
+            CompletableFuture<String> after = new CompletableFuture<>();
+            loop.execute(() -> after.complete("계속 실행"));
+            assertEquals("계속 실행", after.get(1, TimeUnit.SECONDS));
+            assertEquals(1, loop.failedTasks());
+        }
+    }
+
+    @Test
+    @DisplayName("EventLoopGroup::shutdown()과 겹쳐 받아들인 작업은 모두 실행하고, 그 뒤의 작업은 거절한다")
+    void testShutdownRace() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            EventLoopGroup group = new EventLoopGroup(1);
+            EventLoop loop = group.loop(0);
+            AtomicInteger executed = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Integer> accepted = CompletableFuture.supplyAsync(() -> {
+                int count = 0;
+                try {
+                    while (true) {
+                        loop.execute(executed::incrementAndGet);
+                        count++;
+                        started.countDown();
+                    }
+                } catch (RejectedExecutionException e) {
+                    return count;
+                }
+            });
+            started.await();
+            group.shutdown();
+            assertTrue(group.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(accepted.get(5, TimeUnit.SECONDS), executed.get());
+        }
+    }
+
+    private static final int PARTITIONS = 256;
+    private static final int TASK_COUNT = 1_000_000;
+
+    /**
+     * 파티션별 상태(HashMap)를 갱신하는 짧은 작업 100만 개. 스레드 풀에서는 같은 파티션의 작업이 여러 스레드로 흩어지므로
+     * 파티션 상태를 락으로 보호해야 하고, 이벤트 루프에서는 파티션을 맡은 루프만 상태를 건드리므로 락이 없다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("파티션별 상태를 갱신하는 짧은 작업으로 ThreadPoolExecutor와 EventLoopGroup의 처리량 비교")
+    void testPartitionedThroughput() throws Exception {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        Benchmark.of("tasks/s")
+                .label(threads + "개 스레드")
+                .rounds(1, 2)
+                .add("ThreadPoolExecutor", () -> measurePool(threads))
+                .add("EventLoopGroup", () -> measureEventLoops(threads))
+                .run();
+    }
+
+    private static long measurePool(int threads) throws InterruptedException {
+        List<Map<Integer, Long>> partitionState = newState();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        long start = System.nanoTime();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            Map<Integer, Long> state = partitionState.get(i % PARTITIONS);
+            int item = i;
+            pool.execute(() -> {
+                synchronized (state) {
+                    update(state, item);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        long rate = TASK_COUNT * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(total(partitionState), TASK_COUNT);
+        return rate;
+    }
+
+    private static long measureEventLoops(int threads) throws InterruptedException {
+        List<Map<Integer, Long>> partitionState = newState();
+        long rate;
+        try (EventLoopGroup group = new EventLoopGroup(threads)) {
+            CountDownLatch done = new CountDownLatch(TASK_COUNT);
+            long start = System.nanoTime();
+            for (int i = 0; i < TASK_COUNT; i++) {
+                int partition = i % PARTITIONS;
+                Map<Integer, Long> state = partitionState.get(partition);
+                int item = i;
+                group.execute(partition, () -> {
+                    update(state, item);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(1, TimeUnit.MINUTES));
+            rate = TASK_COUNT * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        }
+        assertEquals(total(partitionState), TASK_COUNT);
+        return rate;
+    }
+
+    private static List<Map<Integer, Long>> newState() {
+        List<Map<Integer, Long>> state = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            state.add(new HashMap<>());
+        }
+        return state;
+    }
+
+    private static void update(Map<Integer, Long> state, int item) {
+        state.merge(item & 15, 1L, Long::sum);
+    }
+
+    private static long total(List<Map<Integer, Long>> state) {
+        return state.stream().flatMap(map -> map.values().stream()).mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,214 @@
+package concurrency.version5;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * 교환/결합 법칙이 성립하는 갱신(add, max, min)만 허용하는 long 값 맵.
+ *
+ * 평소에는 ConcurrentHashMap.merge()로 갱신하지만, 샘플링으로 갱신이 몰리는 키(hot key)를 찾으면
+ * 그 키의 값을 여러 개의 셀로 쪼개 스레드마다 다른 셀을 갱신하게 한다.
+ * 같은 키에 대한 compute()가 하나의 bin 락에서 직렬화되는 문제를 피하기 위함이다.
+ * 읽을 때는 일반 경로의 값과 셀들의 값을 같은 연산으로 합친다.
+ *
+ * 승격과 강등은 샘플링한 갱신 횟수로 정한다. ConcurrentHashMap은 bin 락 경합을 알려주지 않으므로,
+ * 갱신이 자주 들어오는 키일수록 여러 스레드가 같은 bin 락에서 만난다고 보고 빈도를 경합의 근사값으로 쓴다.
+ * <ul>
+ *     <li>승격: 한 윈도우(windowSize개 샘플) 안에서 hotThreshold번 샘플링된 키</li>
+ *     <li>강등: 승격된 윈도우가 지난 뒤, 한 윈도우 내내 hotThreshold번 미만으로 샘플링된 핫 키. 셀의 값은 일반 경로로 옮긴다.
+ *     승격된 윈도우는 남은 샘플만 세므로 강등 판단에 쓰지 않는다.</li>
+ * </ul>
+ * 강등하는 동안에는 셀을 맵에서 뗀 뒤 값을 옮기므로 get()이 잠깐 옮기기 전의 일반 경로 값만 볼 수 있지만, 갱신은 잃지 않는다.
+ */
+public class HotKeyShardedMap<K> {
+
+    public enum Op {
+        ADD(0L, Long::sum),
+        MAX(Long.MIN_VALUE, Math::max),
+        MIN(Long.MAX_VALUE, Math::min);
+
+        private final long identity;
+        private final LongBinaryOperator operator;
+
+        Op(long identity, LongBinaryOperator operator) {
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        long apply(long left, long right) {
+            return operator.applyAsLong(left, right);
+        }
+    }
+
+    // 셀 사이 간격. long 8개(64바이트)마다 하나씩 써서 셀끼리 캐시 라인을 공유하지 않게 한다
+    private static final int PADDING = 8;
+    private static final int STRIPES =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+
+    /**
+     * 핫 키의 값을 나눠 담는 셀 묶음. 셀마다 바로 뒤 칸에 그 셀을 갱신하는 중인 스레드 수를 두어,
+     * 강등할 때 이미 들어온 갱신이 끝나기를 기다릴 수 있게 한다. 같은 캐시 라인이므로 경합을 늘리지 않는다.
+     */
+    static final class StripedCell {
+        private final AtomicLongArray cells;
+        private final Op op;
+        // 승격된 윈도우 번호
+        final int promotedWindow;
+        private volatile boolean retired;
+
+        StripedCell(Op op, int promotedWindow) {
+            this.op = op;
+            this.promotedWindow = promotedWindow;
+            this.cells = new AtomicLongArray(STRIPES * PADDING);
+            for (int i = 0; i < STRIPES; i++) {
+                cells.set(i * PADDING, op.identity);
+            }
+        }
+
+        /**
+         * 강등된 셀이면 갱신하지 않고 false를 반환한다.
+         */
+        boolean update(long x) {
+            int index = (ThreadLocalRandom.current().nextInt() & (STRIPES - 1)) * PADDING;
+            // 갱신 중 표시를 retired 확인보다 먼저 해야 retire()가 이 갱신을 기다린다
+            cells.incrementAndGet(index + 1);
+            try {
+                if (retired) {
+                    return false;
+                }
+                cells.accumulateAndGet(index, x, op.operator);
+                return true;
+            } finally {
+                cells.decrementAndGet(index + 1);
+            }
+        }
+
+        /**
+         * 새 갱신을 막고 이미 들어온 갱신이 끝나기를 기다린 뒤 최종 값을 반환한다.
+         */
+        long retire() {
+            retired = true;
+            for (int i = 0; i < STRIPES; i++) {
+                while (cells.get(i * PADDING + 1) != 0) {
+                    Thread.onSpinWait();
+                }
+            }
+            return combine();
+        }
+
+        long combine() {
+            long result = op.identity;
+            for (int i = 0; i < STRIPES; i++) {
+                result = op.apply(result, cells.get(i * PADDING));
+            }
+            return result;
+        }
+    }
+
+    private final Op op;
+    private final ConcurrentHashMap<K, Long> cold = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, StripedCell> hot = new ConcurrentHashMap<>();
+
+    // 갱신 sampleMask + 1번 중 한 번 꼴로 키를 샘플링해 빈도를 센다
+    private final int sampleMask;
+    private final int hotThreshold;
+    private final int windowSize;
+    private final ConcurrentHashMap<K, AtomicInteger> samples = new ConcurrentHashMap<>();
+    private final AtomicInteger samplesInWindow = new AtomicInteger();
+    // 윈도우를 닫는 스레드만 올린다
+    private volatile int window;
+
+    public HotKeyShardedMap(Op op) {
+        this(op, 64, 32, 1024);
+    }
+
+    /**
+     * @param sampleRate   몇 번의 갱신마다 한 번 샘플링할지 (2의 거듭제곱)
+     * @param hotThreshold 한 윈도우 안에서 이만큼 샘플링된 키를 핫 키로 승격하고, 한 윈도우 내내 이보다 적게 샘플링된 핫 키는 강등한다
+     * @param windowSize   샘플이 이만큼 모이면 윈도우를 닫고 빈도를 초기화한다
+     */
+    public HotKeyShardedMap(Op op, int sampleRate, int hotThreshold, int windowSize) {
+        if (Integer.bitCount(sampleRate) != 1) {
+            throw new IllegalArgumentException("sampleRate는 2의 거듭제곱이어야 합니다: " + sampleRate);
+        }
+        if (hotThreshold < 1 || windowSize < hotThreshold) {
+            throw new IllegalArgumentException("1 <= hotThreshold <= windowSize 이어야 합니다.");
+        }
+        this.op = op;
+        this.sampleMask = sampleRate - 1;
+        this.hotThreshold = hotThreshold;
+        this.windowSize = windowSize;
+    }
+
+    public void update(K key, long x) {
+        StripedCell cell = hot.get(key);
+        if (cell == null || !cell.update(x)) {
+            // 승격 직전이나 강등 중에 일반 경로로 들어간 값은 cold에 남지만, 읽을 때 함께 합치므로 잃어버리지 않는다
+            cold.merge(key, x, (left, right) -> op.apply(left, right));
+        }
+        // 강등할 수 있도록 핫 키의 갱신도 샘플링한다
+        if ((ThreadLocalRandom.current().nextInt() & sampleMask) == 0) {
+            sample(key);
+        }
+    }
+
+    private void sample(K key) {
+        int count = samples.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        if (count == hotThreshold) {
+            hot.computeIfAbsent(key, k -> new StripedCell(op, window));
+        }
+        if (samplesInWindow.incrementAndGet() == windowSize) {
+            closeWindow();
+        }
+    }
+
+    private void closeWindow() {
+        int closing = window;
+        window = closing + 1;
+        hot.forEach((key, cell) -> {
+            AtomicInteger count = samples.get(key);
+            if (cell.promotedWindow < closing && (count == null || count.get() < hotThreshold)) {
+                demote(key, cell);
+            }
+        });
+        samples.clear();
+        samplesInWindow.set(0);
+    }
+
+    // 셀을 먼저 떼어 새 갱신이 일반 경로로 가게 한 뒤, 셀의 최종 값을 일반 경로에 합친다
+    private void demote(K key, StripedCell cell) {
+        if (hot.remove(key, cell)) {
+            cold.merge(key, cell.retire(), (left, right) -> op.apply(left, right));
+        }
+    }
+
+    /**
+     * 일반 경로와 핫 키 셀의 값을 합친 결과. 한 번도 갱신되지 않은 키면 null.
+     */
+    public Long get(K key) {
+        Long coldValue = cold.get(key);
+        StripedCell cell = hot.get(key);
+        if (cell == null) {
+            return coldValue;
+        }
+        long hotValue = cell.combine();
+        return coldValue == null ? hotValue : op.apply(coldValue, hotValue);
+    }
+
+    public Map<K, Long> snapshot() {
+        Map<K, Long> snapshot = new HashMap<>(cold);
+        hot.forEach((key, cell) -> snapshot.merge(key, cell.combine(), (left, right) -> op.apply(left, right)));
+        return snapshot;
+    }
+
+    public Set<K> hotKeys() {
+        return Collections.unmodifiableSet(hot.keySet());
+    }
+}
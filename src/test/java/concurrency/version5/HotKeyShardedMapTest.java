@@ -0,0 +1,170 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class HotKeyShardedMapTest {
+
+    @Test
+    @DisplayName("하나의 키에 갱신이 몰리면 핫 키로 승격되고, 최종 값은 누락 없이 합쳐진다")
+    public void testHotKeyUpdates() throws InterruptedException {
+        HotKeyShardedMap<String> map = new HotKeyShardedMap<>(HotKeyShardedMap.Op.ADD);
+        String key = "count";
+        int numberOfTasks = 100;
+        int updatesPerTask = 1000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(10);
+        for (int i = 0; i < numberOfTasks; i++) {
+            executorService.submit(() -> {
+                for (int j = 0; j < updatesPerTask; j++) {
+                    map.update(key, 1);
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(numberOfTasks * updatesPerTask, map.get(key));
+        assertTrue(map.hotKeys().contains(key), "갱신이 몰린 키는 핫 키여야 합니다.");
+    }
+
+    @Test
+    @DisplayName("드물게 갱신되는 키는 일반 ConcurrentHashMap 경로에 남는다")
+    public void testColdKeysStayOnNormalPath() {
+        HotKeyShardedMap<String> map = new HotKeyShardedMap<>(HotKeyShardedMap.Op.ADD);
+        for (int i = 0; i < 1000; i++) {
+            map.update("tenant" + i, 1);
+        }
+
+        assertTrue(map.hotKeys().isEmpty());
+        assertEquals(1, map.get("tenant0"));
+        assertNull(map.get("unknown"));
+        assertEquals(1000, map.snapshot().size());
+    }
+
+    @Test
+    @DisplayName("max, min 갱신도 핫 키 셀에서 올바르게 합쳐진다")
+    public void testMaxAndMin() throws InterruptedException {
+        // 매 갱신을 샘플링해 바로 승격되도록 한다
+        HotKeyShardedMap<String> max = new HotKeyShardedMap<>(HotKeyShardedMap.Op.MAX, 1, 1, 16);
+        HotKeyShardedMap<String> min = new HotKeyShardedMap<>(HotKeyShardedMap.Op.MIN, 1, 1, 16);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(10);
+        for (int i = 0; i < 100; i++) {
+            long value = i;
+            executorService.submit(() -> {
+                max.update("latency", value);
+                min.update("latency", value);
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertTrue(max.hotKeys().contains("latency"));
+        assertEquals(99, max.get("latency"));
+        assertEquals(0, min.get("latency"));
+        assertEquals(Map.of("latency", 99L), max.snapshot());
+    }
+
+    @Test
+    @DisplayName("갱신이 줄어든 핫 키는 한 윈도우 내내 임계값보다 적게 샘플링되면 강등되고, 셀의 값은 일반 경로로 옮겨진다")
+    public void testDemotion() {
+        // 매 갱신을 샘플링하고, 한 윈도우(16개)에 4번 샘플링되면 승격한다
+        HotKeyShardedMap<String> map = new HotKeyShardedMap<>(HotKeyShardedMap.Op.ADD, 1, 4, 16);
+        for (int i = 0; i < 20; i++) {
+            map.update("hot", 1);
+        }
+        assertTrue(map.hotKeys().contains("hot"));
+
+        // 승격된 윈도우와 그다음 윈도우(hot 샘플 4번)가 지나고, hot이 한 번도 샘플링되지 않은 윈도우가 닫히면 강등된다
+        for (int i = 0; i < 28; i++) {
+            map.update("cold" + i, 1);
+        }
+        assertTrue(map.hotKeys().isEmpty());
+        assertEquals(20, map.get("hot"));
+        map.update("hot", 1);
+        assertEquals(21, map.get("hot"));
+    }
+
+    @Test
+    @DisplayName("승격과 강등이 반복되는 동안에도 갱신을 잃지 않는다")
+    public void testPromotionAndDemotionUnderContention() throws InterruptedException {
+        // 윈도우를 작게 잡아 승격과 강등이 자주 일어나게 한다
+        HotKeyShardedMap<String> map = new HotKeyShardedMap<>(HotKeyShardedMap.Op.ADD, 1, 8, 64);
+        int threads = 4;
+        int bursts = 200;
+        int burstSize = 100;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executorService.submit(() -> {
+                for (int burst = 0; burst < bursts; burst++) {
+                    // 핫 키 갱신과 다른 키 갱신을 번갈아 몰아 보낸다
+                    String key = burst % 2 == 0 ? "hot" : "other" + thread;
+                    for (int i = 0; i < burstSize; i++) {
+                        map.update(key, 1);
+                    }
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(threads * bursts / 2 * burstSize, map.get("hot"));
+        long total = map.snapshot().values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(threads * bursts * burstSize, total);
+    }
+
+    private static final int THREAD_COUNT = 10;
+    private static final int OPERATION_COUNT = 100_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("하나의 키에 대한 ConcurrentHashMap.compute()와 HotKeyShardedMap.update() 비교")
+    public void testHotKeyPerformance() throws InterruptedException {
+        ConcurrentHashMap<String, Long> concurrentHashMap = new ConcurrentHashMap<>();
+        HotKeyShardedMap<String> shardedMap = new HotKeyShardedMap<>(HotKeyShardedMap.Op.ADD);
+
+        long computeTime = measurePerformance(() -> concurrentHashMap.compute("count", (k, v) -> v == null ? 1 : v + 1));
+        long shardedTime = measurePerformance(() -> shardedMap.update("count", 1));
+
+        System.out.println("ConcurrentHashMap.compute() Time: " + computeTime + " ms");
+        System.out.println("HotKeyShardedMap.update() Time: " + shardedTime + " ms");
+
+        assertEquals(THREAD_COUNT * OPERATION_COUNT, concurrentHashMap.get("count"));
+        assertEquals(THREAD_COUNT * OPERATION_COUNT, shardedMap.get("count"));
+    }
+
+    private long measurePerformance(Runnable update) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        long startTime = System.currentTimeMillis();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            executorService.submit(() -> {
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    update.run();
+                }
+            });
+        }
+
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
+
+        long endTime = System.currentTimeMillis();
+        return endTime - startTime;
+    }
+}
@@ -0,0 +1,215 @@
+package concurrency.version5;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ThreadPoolExecutor를 감싸 작업별 대기 시간, 실행 시간, 거절 수를 기록하는 실행기.
+ *
+ * 작업을 넣을 때 시각을 담은 래퍼로 감싸 두고, 작업 스레드가 꺼내 실행할 때 (시작 - 넣은 시각)을 대기 시간으로,
+ * 실행에 걸린 시간을 실행 시간으로 LatencyHistogram에 남긴다. 작업에 태그를 붙이면 태그별로도 따로 센다.
+ * 작업 하나에 드는 비용은 래퍼 할당 하나, nanoTime() 세 번, LongAdder 몇 번 증가가 전부라 운영 중에도 켜 둘 수 있다.
+ * 큐 길이와 활성 스레드 수는 작업마다 세지 않고 snapshot()을 부를 때 풀에 물어본다.
+ *
+ * submit()으로 넣은 작업의 예외는 Future가 삼키므로 실패 수에는 execute()로 넣은 작업의 예외만 들어간다.
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService {
+
+    public static final String UNTAGGED = "untagged";
+
+    private final ThreadPoolExecutor delegate;
+    private final Map<String, TaskStats> statsByTag = new ConcurrentHashMap<>();
+    private final TaskStats total = new TaskStats();
+
+    private static final class TaskStats {
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LatencyHistogram waitTime = new LatencyHistogram();
+        final LatencyHistogram runTime = new LatencyHistogram();
+
+        void finish(long runNanos, boolean failedWithException) {
+            runTime.record(runNanos);
+            if (failedWithException) {
+                failed.increment();
+            } else {
+                completed.increment();
+            }
+        }
+    }
+
+    /**
+     * delegate의 RejectedExecutionHandler를 거절 수를 세는 핸들러로 감싼다. 거절 후 동작은 원래 핸들러를 따른다.
+     */
+    public InstrumentedExecutorService(ThreadPoolExecutor delegate) {
+        this.delegate = delegate;
+        RejectedExecutionHandler handler = delegate.getRejectedExecutionHandler();
+        delegate.setRejectedExecutionHandler((task, executor) -> {
+            if (task instanceof InstrumentedTask instrumented) {
+                instrumented.stats.rejected.increment();
+            }
+            total.rejected.increment();
+            handler.rejectedExecution(task, executor);
+        });
+    }
+
+    /**
+     * Executors.newFixedThreadPool(threads)와 같은 풀을 감싼다.
+     */
+    public static InstrumentedExecutorService newFixedThreadPool(int threads) {
+        return new InstrumentedExecutorService(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()));
+    }
+
+    /**
+     * 넣은 시각과 기록할 통계를 함께 들고 다니는 작업
+     */
+    private final class InstrumentedTask implements Runnable {
+        private final Runnable task;
+        private final TaskStats stats;
+        private final long enqueuedAt = System.nanoTime();
+
+        InstrumentedTask(Runnable task, TaskStats stats) {
+            this.task = task;
+            this.stats = stats;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            stats.waitTime.record(start - enqueuedAt);
+            total.waitTime.record(start - enqueuedAt);
+            boolean failed = true;
+            try {
+                task.run();
+                failed = false;
+            } finally {
+                long runNanos = System.nanoTime() - start;
+                stats.finish(runNanos, failed);
+                total.finish(runNanos, failed);
+            }
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(UNTAGGED, command);
+    }
+
+    /**
+     * tag별로 따로 기록한다. 태그 종류는 작업 유형처럼 몇 가지로 한정되어야 한다.
+     */
+    public void execute(String tag, Runnable command) {
+        TaskStats stats = statsByTag.computeIfAbsent(tag, key -> new TaskStats());
+        stats.submitted.increment();
+        total.submitted.increment();
+        delegate.execute(new InstrumentedTask(command, stats));
+    }
+
+    public <T> Future<T> submit(String tag, Callable<T> task) {
+        RunnableFuture<T> future = newTaskFor(task);
+        execute(tag, future);
+        return future;
+    }
+
+    public Future<?> submit(String tag, Runnable task) {
+        RunnableFuture<Void> future = newTaskFor(task, null);
+        execute(tag, future);
+        return future;
+    }
+
+    public record HistogramSnapshot(long count, double mean, long p50, long p99, long max) {
+        static HistogramSnapshot of(LatencyHistogram histogram) {
+            return new HistogramSnapshot(histogram.count(), histogram.mean(), histogram.percentile(50),
+                    histogram.percentile(99), histogram.max());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0fns p50=%dns p99=%dns max=%dns", count, mean, p50, p99, max);
+        }
+    }
+
+    public record TaskSnapshot(long submitted, long completed, long failed, long rejected,
+                               HistogramSnapshot waitTime, HistogramSnapshot runTime) {
+        static TaskSnapshot of(TaskStats stats) {
+            return new TaskSnapshot(stats.submitted.sum(), stats.completed.sum(), stats.failed.sum(),
+                    stats.rejected.sum(), HistogramSnapshot.of(stats.waitTime), HistogramSnapshot.of(stats.runTime));
+        }
+    }
+
+    /**
+     * @param total         모든 태그를 합친 값. completed는 예외 없이 끝난 수, failed는 예외로 끝난 수다
+     * @param queueDepth    지금 큐에서 기다리는 작업 수
+     * @param activeThreads 지금 작업을 실행 중인 스레드 수 (근삿값)
+     * @param byTag         태그 이름순
+     */
+    public record Snapshot(int poolSize, int largestPoolSize, int activeThreads, int queueDepth,
+                           TaskSnapshot total, Map<String, TaskSnapshot> byTag) {
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(
+                    "pool=%d (largest %d) active=%d queue=%d submitted=%d completed=%d failed=%d rejected=%d%n"
+                            + "  wait: %s%n  run:  %s",
+                    poolSize, largestPoolSize, activeThreads, queueDepth, total.submitted(), total.completed(),
+                    total.failed(), total.rejected(), total.waitTime(), total.runTime()));
+            byTag.forEach((tag, task) -> builder.append(String.format("%n  [%s] completed=%d rejected=%d wait p99=%dns run p99=%dns",
+                    tag, task.completed(), task.rejected(), task.waitTime().p99(), task.runTime().p99())));
+            return builder.toString();
+        }
+    }
+
+    public Snapshot snapshot() {
+        Map<String, TaskSnapshot> byTag = new TreeMap<>();
+        statsByTag.forEach((tag, stats) -> byTag.put(tag, TaskSnapshot.of(stats)));
+        return new Snapshot(delegate.getPoolSize(), delegate.getLargestPoolSize(), delegate.getActiveCount(),
+                delegate.getQueue().size(), TaskSnapshot.of(total), byTag);
+    }
+
+    /**
+     * 감싼 풀. 크기를 바꾸는 등 설정을 조정할 때 쓴다.
+     */
+    public ThreadPoolExecutor delegate() {
+        return delegate;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * 실행되지 못한 작업은 감싼 상태 그대로 반환한다.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
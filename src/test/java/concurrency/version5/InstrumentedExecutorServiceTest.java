@@ -0,0 +1,125 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import concurrency.version5.InstrumentedExecutorService.Snapshot;
+import concurrency.version5.InstrumentedExecutorService.TaskSnapshot;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class InstrumentedExecutorServiceTest {
+
+    @Test
+    @DisplayName("InstrumentedExecutorService::태그별로 대기 시간과 실행 시간을 나눠 기록한다")
+    void testWaitAndRunTimeByTag() throws Exception {
+        InstrumentedExecutorService executor = InstrumentedExecutorService.newFixedThreadPool(1);
+        // 스레드가 하나뿐이므로 뒤에 넣은 작업은 앞 작업이 도는 20ms 이상을 큐에서 기다린다
+        Future<Integer> slow = executor.submit("report", () -> {
+            TimeUnit.MILLISECONDS.sleep(20);
+            return 1;
+        });
+        Future<?> fast = executor.submit("ping", () -> { });
+        assertEquals(1, slow.get());
+        fast.get();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+        Snapshot snapshot = executor.snapshot();
+        System.out.println(snapshot);
+        TaskSnapshot report = snapshot.byTag().get("report");
+        TaskSnapshot ping = snapshot.byTag().get("ping");
+        assertEquals(1, report.completed());
+        assertTrue(report.runTime().max() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(ping.waitTime().max() >= TimeUnit.MILLISECONDS.toNanos(15));
+        assertTrue(ping.runTime().max() < TimeUnit.MILLISECONDS.toNanos(15));
+        assertEquals(2, snapshot.total().completed());
+        assertEquals(2, snapshot.total().waitTime().count());
+    }
+
+    @Test
+    @DisplayName("InstrumentedExecutorService::큐 길이, 활성 스레드 수, 거절 수, 실패 수를 보여준다")
+    void testGaugesRejectionsAndFailures() throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(3));
+        InstrumentedExecutorService executor = new InstrumentedExecutorService(pool);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            executor.execute("blocking", () -> {
+                running.countDown();
+                await(release);
+                finished.countDown();
+            });
+        }
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("blocking", () -> { }));
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+
+        Snapshot blocked = executor.snapshot();
+        assertEquals(2, blocked.activeThreads());
+        assertEquals(3, blocked.queueDepth());
+        assertEquals(1, blocked.byTag().get("blocking").rejected());
+        assertEquals(6, blocked.total().submitted());
+
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+        executor.execute("broken", () -> {
+            throw new IllegalStateException("의도한 실패");
+        });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        Snapshot done = executor.snapshot();
+        assertEquals(5, done.byTag().get("blocking").completed());
+        assertEquals(1, done.byTag().get("broken").failed());
+        assertEquals(0, done.queueDepth());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final int TASK_COUNT = 1_000_000;
+
+    /**
+     * 아무 일도 하지 않는 작업을 넣어 작업당 계측 비용이 처리량에 얼마나 드러나는지 본다. 실제 작업이 길수록 차이는 작아진다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("빈 작업 100만 개로 ThreadPoolExecutor와 InstrumentedExecutorService의 처리량 비교")
+    void testOverhead() throws Exception {
+        Benchmark.of("tasks/s")
+                .rounds(1, 2)
+                .add("ThreadPoolExecutor", () -> measure(new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>())))
+                .add("InstrumentedExecutorService", () -> measure(InstrumentedExecutorService.newFixedThreadPool(4)))
+                .run();
+    }
+
+    private static long measure(ExecutorService executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        long start = System.nanoTime();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            executor.execute(done::countDown);
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        return TASK_COUNT * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
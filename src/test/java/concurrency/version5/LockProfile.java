@@ -0,0 +1,160 @@
+package concurrency.version5;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 하나의 락(또는 세마포어)에 대해 수집한 경합 정보.
+ *
+ * 경합 없이 바로 획득한 경우에는 획득 횟수만 센다. 대기 시간, 대기열 길이, 호출 위치는
+ * 경합이 발생한 느린 경로에서만 기록하고, 점유 시간과 호출 위치는 일부만 샘플링한다.
+ */
+public class LockProfile {
+
+    private static final int QUEUE_SAMPLES = 256;
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final String name;
+    private final int holdSampleRate;
+    private final int callSiteSampleRate;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram holdTime = new LatencyHistogram();
+    private final Map<String, LongAdder> callSites = new ConcurrentHashMap<>();
+
+    // 경합 시점의 (시각, 대기열 길이)를 링 버퍼에 남긴다
+    private final AtomicLong queueSampleIndex = new AtomicLong();
+    private final AtomicLongArray queueSampleTimes = new AtomicLongArray(QUEUE_SAMPLES);
+    private final AtomicLongArray queueSampleLengths = new AtomicLongArray(QUEUE_SAMPLES);
+
+    public LockProfile(String name) {
+        this(name, 64, 16);
+    }
+
+    /**
+     * @param holdSampleRate     획득 holdSampleRate번 중 한 번 점유 시간을 잰다
+     * @param callSiteSampleRate 경합 callSiteSampleRate번 중 한 번 호출 위치를 기록한다
+     */
+    public LockProfile(String name, int holdSampleRate, int callSiteSampleRate) {
+        if (holdSampleRate < 1 || callSiteSampleRate < 1) {
+            throw new IllegalArgumentException("샘플링 비율은 1 이상이어야 합니다.");
+        }
+        this.name = name;
+        this.holdSampleRate = holdSampleRate;
+        this.callSiteSampleRate = callSiteSampleRate;
+    }
+
+    void recordUncontended() {
+        acquisitions.increment();
+    }
+
+    void recordContended(long waitNanos, int queueLength) {
+        acquisitions.increment();
+        contended.increment();
+        waitTime.record(waitNanos);
+
+        int index = (int) (queueSampleIndex.getAndIncrement() % QUEUE_SAMPLES);
+        queueSampleTimes.set(index, System.nanoTime());
+        queueSampleLengths.set(index, queueLength);
+
+        if (sample(callSiteSampleRate)) {
+            callSites.computeIfAbsent(callSite(), k -> new LongAdder()).increment();
+        }
+    }
+
+    boolean sampleHold() {
+        return sample(holdSampleRate);
+    }
+
+    void recordHold(long holdNanos) {
+        holdTime.record(holdNanos);
+    }
+
+    private static boolean sample(int rate) {
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    // 프로파일러와 java.util.concurrent 내부 프레임을 건너뛴 첫 호출 위치
+    private static String callSite() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> !frame.getClassName().startsWith("java.util.concurrent.")
+                        && !frame.getClassName().startsWith(LockProfile.class.getPackageName() + ".Profiled")
+                        && !frame.getClassName().equals(LockProfile.class.getName()))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long acquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long contendedAcquisitions() {
+        return contended.sum();
+    }
+
+    // 획득 중 대기해야 했던 비율
+    public double contentionRate() {
+        long total = acquisitions.sum();
+        return total == 0 ? 0 : (double) contended.sum() / total;
+    }
+
+    public LatencyHistogram waitTime() {
+        return waitTime;
+    }
+
+    public LatencyHistogram holdTime() {
+        return holdTime;
+    }
+
+    /**
+     * 샘플링된 경합 호출 위치 중 많이 기록된 순서로 limit개.
+     */
+    public Map<String, Long> topCallSites(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        callSites.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    public record QueueLengthSample(long nanoTime, int queueLength) {
+    }
+
+    /**
+     * 최근 경합 시점의 대기열 길이를 시간순으로 반환한다. 기록 중인 칸은 어긋난 값일 수 있다.
+     */
+    public List<QueueLengthSample> queueLengthSamples() {
+        long end = queueSampleIndex.get();
+        long start = Math.max(0, end - QUEUE_SAMPLES);
+        List<QueueLengthSample> samples = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            int index = (int) (i % QUEUE_SAMPLES);
+            samples.add(new QueueLengthSample(queueSampleTimes.get(index), (int) queueSampleLengths.get(index)));
+        }
+        samples.sort(Comparator.comparingLong(QueueLengthSample::nanoTime));
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s] acquisitions=%d contention=%.1f%%%n  wait: %s%n  hold: %s%n  top call sites: %s",
+                name, acquisitions(), contentionRate() * 100, waitTime, holdTime, topCallSites(3));
+    }
+}
@@ -0,0 +1,231 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LockProfilerTest {
+
+    @Test
+    @DisplayName("LatencyHistogram::백분위 값은 해당 값이 들어간 2의 거듭제곱 구간의 상한이다")
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);     // [64, 128) 구간
+        }
+        histogram.record(10_000);      // [8192, 16384) 구간
+
+        assertEquals(100, histogram.count());
+        assertEquals(127, histogram.percentile(50));
+        assertEquals(127, histogram.percentile(99));
+        assertEquals(10_000, histogram.percentile(100));
+        assertEquals(10_000, histogram.max());
+    }
+
+    @Test
+    @DisplayName("ProfiledReentrantLock::경합이 없으면 대기 시간을 기록하지 않는다")
+    public void testUncontendedLock() {
+        ProfiledReentrantLock lock = new ProfiledReentrantLock(false, new LockProfile("uncontended", 1, 1));
+
+        for (int i = 0; i < 10; i++) {
+            lock.lock();
+            try {
+                lock.lock(); // 재진입
+                lock.unlock();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        LockProfile profile = lock.profile();
+        assertEquals(20, profile.acquisitions());
+        assertEquals(0, profile.contendedAcquisitions());
+        assertEquals(0, profile.waitTime().count());
+        // 재진입은 바깥 점유에 포함되므로 점유 시간은 바깥 획득 횟수만큼만 기록됨
+        assertEquals(10, profile.holdTime().count());
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    @DisplayName("ProfiledReentrantLock::공정 락과 공정 세마포어도 스레드가 하나뿐이면 경합으로 기록하지 않는다")
+    public void testUncontendedFairLocks() throws InterruptedException {
+        ProfiledReentrantLock lock = new ProfiledReentrantLock(true, new LockProfile("fair", 1, 1));
+        ProfiledReentrantReadWriteLock readWriteLock = new ProfiledReentrantReadWriteLock(true, "fair-rw");
+        ProfiledSemaphore semaphore = new ProfiledSemaphore(1, true, new LockProfile("fair-semaphore", 1, 1));
+
+        for (int i = 0; i < 10; i++) {
+            lock.lock();
+            lock.unlock();
+            assertTrue(lock.tryLock(1, TimeUnit.SECONDS));
+            lock.unlock();
+            readWriteLock.readLock().lock();
+            readWriteLock.readLock().unlock();
+            readWriteLock.writeLock().lockInterruptibly();
+            readWriteLock.writeLock().unlock();
+            semaphore.acquire();
+            semaphore.release();
+        }
+
+        for (LockProfile profile : List.of(lock.profile(), readWriteLock.readProfile(), readWriteLock.writeProfile(),
+                semaphore.profile())) {
+            assertEquals(0, profile.contendedAcquisitions(), profile.name());
+            assertEquals(0, profile.waitTime().count(), profile.name());
+            assertEquals(0.0, profile.contentionRate(), profile.name());
+        }
+        assertEquals(20, lock.profile().acquisitions());
+    }
+
+    @Test
+    @DisplayName("ProfiledReentrantLock::경합하면 대기 시간, 대기열 길이, 호출 위치를 기록한다")
+    public void testContendedLock() throws InterruptedException {
+        ProfiledReentrantLock lock = new ProfiledReentrantLock(false, new LockProfile("contended", 1, 1));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        lock.lock();
+        executor.submit(() -> lockAndHold(lock, 0));
+        executor.submit(() -> lockAndHold(lock, 0));
+        Thread.sleep(200); // 두 스레드가 대기열에 들어가도록 약간 대기
+        assertEquals(2, lock.getQueueLength());
+        lock.unlock();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+
+        LockProfile profile = lock.profile();
+        System.out.println(profile);
+        assertEquals(3, profile.acquisitions());
+        assertEquals(2, profile.contendedAcquisitions());
+        assertTrue(profile.waitTime().max() >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(profile.topCallSites(1).keySet().iterator().next().contains("lockAndHold"));
+
+        List<LockProfile.QueueLengthSample> samples = profile.queueLengthSamples();
+        assertEquals(2, samples.size());
+        assertTrue(samples.stream().allMatch(sample -> sample.queueLength() >= 1));
+    }
+
+    private static void lockAndHold(Lock lock, long holdMillis) {
+        lock.lock();
+        try {
+            Thread.sleep(holdMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    @DisplayName("ProfiledReentrantReadWriteLock::쓰기 락 때문에 대기한 읽기 락을 읽기 쪽 경합으로 기록한다")
+    public void testReadWriteLock() throws InterruptedException {
+        ProfiledReentrantReadWriteLock lock = new ProfiledReentrantReadWriteLock("routing");
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        executor.submit(() -> lockAndHold(lock.writeLock(), 300));
+        Thread.sleep(100); // 쓰기 작업이 먼저 시작되도록 잠시 대기
+        executor.submit(() -> lockAndHold(lock.readLock(), 0));
+        executor.submit(() -> lockAndHold(lock.readLock(), 0));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+
+        System.out.println(lock.readProfile());
+        System.out.println(lock.writeProfile());
+        assertEquals(1, lock.writeProfile().acquisitions());
+        assertEquals(0, lock.writeProfile().contendedAcquisitions());
+        assertEquals(2, lock.readProfile().acquisitions());
+        assertEquals(2, lock.readProfile().contendedAcquisitions());
+    }
+
+    @Test
+    @DisplayName("ProfiledSemaphore::허가가 없어 대기한 획득을 기록한다")
+    public void testSemaphore() throws InterruptedException {
+        ProfiledSemaphore semaphore = new ProfiledSemaphore(1, false, new LockProfile("semaphore", 1, 1));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        for (int i = 0; i < 3; i++) {
+            executor.submit(() -> {
+                try {
+                    semaphore.acquire();
+                    try {
+                        Thread.sleep(100);
+                    } finally {
+                        semaphore.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        LockProfile profile = semaphore.profile();
+        System.out.println(profile);
+        assertEquals(3, profile.acquisitions());
+        assertEquals(2, profile.contendedAcquisitions());
+        assertEquals(3, profile.holdTime().count());
+        assertTrue(profile.holdTime().max() >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, semaphore.availablePermits());
+    }
+
+    @Test
+    @DisplayName("ProfiledSemaphore::다른 스레드가 release()하면 보유 시간을 기록하지 않고, 남은 시작 시각이 다음 보유 시간을 부풀리지 않는다")
+    public void testSemaphoreReleasedByAnotherThread() throws InterruptedException {
+        // 절반만 샘플링해 샘플링하지 않은 획득이 이전 획득의 시작 시각을 물려받는 경우를 만든다
+        ProfiledSemaphore semaphore = new ProfiledSemaphore(1, false, new LockProfile("handoff", 2, 1));
+        for (int i = 0; i < 20; i++) {
+            semaphore.acquire();
+            Thread releaser = new Thread(semaphore::release);
+            releaser.start();
+            releaser.join();
+        }
+        assertEquals(0, semaphore.profile().holdTime().count());
+
+        Thread.sleep(100);
+        for (int i = 0; i < 20; i++) {
+            semaphore.acquire();
+            semaphore.release();
+        }
+        assertTrue(semaphore.profile().holdTime().count() > 0);
+        assertTrue(semaphore.profile().holdTime().max() < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    private static final int ITERATIONS = 10_000_000;
+
+    @Test
+    @DisplayName("경합 없는 lock/unlock 한 쌍에 추가되는 비용 측정")
+    public void testUncontendedOverhead() {
+        ReentrantLock plain = new ReentrantLock();
+        ProfiledReentrantLock profiled = new ProfiledReentrantLock("overhead");
+
+        // JIT 워밍업
+        measureLockUnlock(plain);
+        measureLockUnlock(profiled);
+
+        long plainNanos = measureLockUnlock(plain);
+        long profiledNanos = measureLockUnlock(profiled);
+
+        System.out.printf("ReentrantLock: %.1fns/op, ProfiledReentrantLock: %.1fns/op%n",
+                (double) plainNanos / ITERATIONS, (double) profiledNanos / ITERATIONS);
+        assertEquals(2L * ITERATIONS, profiled.profile().acquisitions());
+    }
+
+    private static long measureLockUnlock(Lock lock) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            lock.lock();
+            lock.unlock();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,241 @@
+package concurrency.version5;
+
+import concurrency.version5.InstrumentedExecutorService.HistogramSnapshot;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 넣은 원소를 묶음으로 모아 묶음 하나를 작업 하나로 delegate에 넘기는 실행기 앞단.
+ *
+ * 아주 작은 작업을 풀에 하나씩 넣으면 작업마다 큐 삽입, 작업 스레드 깨우기, FutureTask 래핑 비용을 낸다.
+ * 여기서는 원소를 현재 묶음에 더하기만 하고, 묶음이 maxBatchSize개가 되거나 첫 원소를 넣은 뒤 maxDelay가 지나면
+ * 묶음을 통째로 delegate에 넘긴다. 위의 비용은 묶음당 한 번만 낸다.
+ * 핸들러는 List&lt;T&gt;를 받으므로 DB 쓰기나 로그 추가처럼 묶어서 하면 싸지는 일을 묶음당 한 번에 할 수 있다.
+ *
+ * maxDelay 타이머는 묶음을 새로 열 때만 건다. 크기로 먼저 내보낸 묶음의 타이머는 나중에 울려도 아무것도 하지 않는다.
+ * 원소 하나가 기다리는 시간은 최대 maxDelay에 delegate의 큐 대기 시간을 더한 만큼이다.
+ *
+ * delegate가 묶음을 거절하면 rejectedBatches로 세고, 거절 핸들러가 있으면 그 묶음을 넘긴다. 핸들러가 없으면
+ * submit(), flush(), close()는 RejectedExecutionException을 던지지만 타이머가 내보낸 묶음은 던질 곳이 없으므로 버려진다.
+ */
+public class MicroBatchingExecutor<T> implements AutoCloseable {
+
+    private final Executor delegate;
+    private final Consumer<? super List<T>> handler;
+    // 거절된 묶음을 받는다. 없으면 null
+    private final Consumer<? super List<T>> rejectionHandler;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    // 아래 네 필드는 lock으로 보호한다
+    private List<T> current;
+    private long openedAt;
+    private long generation;
+    private boolean closed;
+
+    private final LongAdder items = new LongAdder();
+    private final LongAdder sizeFlushes = new LongAdder();
+    private final LongAdder timeFlushes = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder rejectedBatches = new LongAdder();
+    private final LatencyHistogram batchSize = new LatencyHistogram();
+    // 묶음을 연 시각부터 핸들러가 실행을 시작할 때까지
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    /**
+     * @param delegate 묶음을 실행할 실행기. 묶음을 거절하면 그 묶음을 내보낸 submit()이나 close()가 예외를 던진다
+     * @param handler  묶음 하나를 처리한다. 여러 묶음이 delegate의 여러 스레드에서 동시에 처리될 수 있다
+     */
+    public MicroBatchingExecutor(Executor delegate, int maxBatchSize, Duration maxDelay,
+                                 Consumer<? super List<T>> handler) {
+        this(delegate, maxBatchSize, maxDelay, handler, null);
+    }
+
+    /**
+     * @param rejectionHandler delegate가 거절한 묶음을 내보낸 스레드에서 받는다. 타이머 스레드일 수도 있으므로 짧아야 한다
+     */
+    public MicroBatchingExecutor(Executor delegate, int maxBatchSize, Duration maxDelay,
+                                 Consumer<? super List<T>> handler, Consumer<? super List<T>> rejectionHandler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize는 1 이상이어야 합니다: " + maxBatchSize);
+        }
+        this.delegate = delegate;
+        this.handler = handler;
+        this.rejectionHandler = rejectionHandler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "micro-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runnable을 묶어 실행한다. 묶음 안의 작업은 넣은 순서대로 한 스레드에서 실행되고, 하나가 예외를 던져도
+     * 나머지는 실행한 뒤 첫 예외를 다시 던진다.
+     */
+    public static MicroBatchingExecutor<Runnable> forRunnables(Executor delegate, int maxBatchSize, Duration maxDelay) {
+        return new MicroBatchingExecutor<>(delegate, maxBatchSize, maxDelay, MicroBatchingExecutor::runAll);
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        RuntimeException failure = null;
+        for (Runnable task : tasks) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public void submit(T item) {
+        Objects.requireNonNull(item);
+        List<T> full = null;
+        long opened = 0;
+        synchronized (lock) {
+            if (closed) {
+                throw new RejectedExecutionException("이미 닫혔습니다.");
+            }
+            if (current == null) {
+                current = new ArrayList<>(Math.min(maxBatchSize, 1024));
+                openedAt = System.nanoTime();
+                long generationToFlush = ++generation;
+                if (maxBatchSize > 1) {
+                    // 락 안에서 걸어야 close()가 타이머를 멈춘 뒤에 거는 일이 없다
+                    timer.schedule(() -> flushExpired(generationToFlush), maxDelayNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            current.add(item);
+            if (current.size() >= maxBatchSize) {
+                full = current;
+                opened = openedAt;
+                current = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full, opened, sizeFlushes, true);
+        }
+    }
+
+    // 타이머를 건 묶음이 아직 열려 있으면 내보낸다
+    private void flushExpired(long expiredGeneration) {
+        List<T> batch;
+        long opened;
+        synchronized (lock) {
+            if (current == null || generation != expiredGeneration) {
+                return;
+            }
+            batch = current;
+            opened = openedAt;
+            current = null;
+        }
+        dispatch(batch, opened, timeFlushes, false);
+    }
+
+    /**
+     * 열려 있는 묶음을 기다리지 않고 바로 내보낸다.
+     */
+    public void flush() {
+        List<T> batch;
+        long opened;
+        synchronized (lock) {
+            if (current == null) {
+                return;
+            }
+            batch = current;
+            opened = openedAt;
+            current = null;
+        }
+        dispatch(batch, opened, timeFlushes, true);
+    }
+
+    /**
+     * delegate가 받아들인 묶음만 items와 reason에 센다. 거절되면 rejectedBatches로 세고 거절 핸들러에 넘기며,
+     * 핸들러가 없고 rethrow이면 예외를 다시 던진다.
+     */
+    private void dispatch(List<T> batch, long opened, LongAdder reason, boolean rethrow) {
+        try {
+            delegate.execute(() -> {
+                flushLatency.record(System.nanoTime() - opened);
+                try {
+                    handler.accept(batch);
+                } catch (RuntimeException | Error e) {
+                    failedBatches.increment();
+                    throw e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedBatches.increment();
+            if (rejectionHandler != null) {
+                rejectionHandler.accept(batch);
+            } else if (rethrow) {
+                throw e;
+            }
+            return;
+        }
+        reason.increment();
+        items.add(batch.size());
+        batchSize.record(batch.size());
+    }
+
+    /**
+     * @param items           묶음으로 내보낸 원소 수. 아직 열려 있는 묶음의 원소는 들어가지 않는다
+     * @param sizeFlushes     maxBatchSize를 채워 내보낸 묶음 수
+     * @param timeFlushes     maxDelay가 지나거나 flush()로 내보낸 묶음 수
+     * @param failedBatches   핸들러가 예외를 던진 묶음 수
+     * @param rejectedBatches delegate가 거절한 묶음 수. items와 batches()에는 들어가지 않는다
+     * @param batchSize       묶음 크기 분포. 2의 거듭제곱 구간이라 백분위 값은 최대 2배까지 클 수 있다
+     * @param flushLatency    묶음을 연 시각부터 핸들러가 시작할 때까지 걸린 나노초
+     */
+    public record Metrics(long items, long sizeFlushes, long timeFlushes, long failedBatches, long rejectedBatches,
+                          HistogramSnapshot batchSize, HistogramSnapshot flushLatency) {
+        public long batches() {
+            return sizeFlushes + timeFlushes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("items=%d batches=%d (size %d, time %d) failed=%d rejected=%d "
+                            + "batch size mean=%.1f max=%d%n  flush latency: %s",
+                    items, batches(), sizeFlushes, timeFlushes, failedBatches, rejectedBatches, batchSize.mean(),
+                    batchSize.max(), flushLatency);
+        }
+    }
+
+    public Metrics metrics() {
+        return new Metrics(items.sum(), sizeFlushes.sum(), timeFlushes.sum(), failedBatches.sum(), rejectedBatches.sum(),
+                HistogramSnapshot.of(batchSize), HistogramSnapshot.of(flushLatency));
+    }
+
+    /**
+     * 이후의 submit()을 거절하고 열려 있는 묶음을 내보낸다. delegate는 종료하지 않는다.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        timer.shutdownNow();
+    }
+}
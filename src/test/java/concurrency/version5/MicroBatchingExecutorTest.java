@@ -0,0 +1,197 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import concurrency.version5.MicroBatchingExecutor.Metrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class MicroBatchingExecutorTest {
+
+    @Test
+    @DisplayName("MicroBatchingExecutor::maxBatchSize개가 모이면 지연 시간을 기다리지 않고 묶음을 내보낸다")
+    void testFlushBySize() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        CountDownLatch handled = new CountDownLatch(10);
+        try (MicroBatchingExecutor<Integer> executor = new MicroBatchingExecutor<>(pool, 10, Duration.ofSeconds(10),
+                batch -> {
+                    batches.add(batch);
+                    handled.countDown();
+                })) {
+            for (int i = 0; i < 100; i++) {
+                executor.submit(i);
+            }
+            assertTrue(handled.await(1, TimeUnit.SECONDS));
+
+            Metrics metrics = executor.metrics();
+            System.out.println(metrics);
+            assertEquals(100, metrics.items());
+            assertEquals(10, metrics.sizeFlushes());
+            assertEquals(0, metrics.timeFlushes());
+        }
+        List<Integer> all = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            assertEquals(10, batch.size());
+            all.addAll(batch);
+        }
+        Collections.sort(all);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, all.get(i));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("MicroBatchingExecutor::묶음이 덜 찼어도 maxDelay가 지나면 내보내고, close()는 열린 묶음을 내보낸다")
+    void testFlushByDelayAndClose() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        // 로그 추가처럼 묶음 하나를 한 번에 쓴다
+        StringBuffer log = new StringBuffer();
+        AtomicInteger writes = new AtomicInteger();
+        MicroBatchingExecutor<String> executor = new MicroBatchingExecutor<>(pool, 1000, Duration.ofMillis(20),
+                batch -> {
+                    log.append(String.join("", batch));
+                    writes.incrementAndGet();
+                });
+        for (int i = 0; i < 5; i++) {
+            executor.submit("a");
+        }
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertEquals("aaaaa", log.toString());
+        assertEquals(1, writes.get());
+        Metrics metrics = executor.metrics();
+        assertEquals(1, metrics.timeFlushes());
+        assertTrue(metrics.flushLatency().max() >= TimeUnit.MILLISECONDS.toNanos(20), metrics.toString());
+
+        executor.submit("b");
+        executor.close();
+        assertThrows(RejectedExecutionException.class, () -> executor.submit("c"));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals("aaaaab", log.toString());
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    @DisplayName("MicroBatchingExecutor::Runnable 묶음에서 하나가 실패해도 나머지는 실행하고 실패한 묶음을 센다")
+    void testRunnableFailureIsolation() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicInteger ran = new AtomicInteger();
+        MicroBatchingExecutor<Runnable> executor = MicroBatchingExecutor.forRunnables(pool, 4, Duration.ofSeconds(10));
+        executor.submit(ran::incrementAndGet);
+        executor.submit(() -> {
+            throw new IllegalStateException("의도한 실패");
+        });
+        executor.submit(ran::incrementAndGet);
+        executor.submit(ran::incrementAndGet);
+        executor.close();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertEquals(3, ran.get());
+        assertEquals(1, executor.metrics().failedBatches());
+    }
+
+    @Test
+    @DisplayName("MicroBatchingExecutor::delegate가 거절한 묶음은 rejectedBatches로 세고, 거절 핸들러가 있으면 넘긴다")
+    void testRejectedBatches() throws InterruptedException {
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("포화");
+        };
+        MicroBatchingExecutor<Integer> executor = new MicroBatchingExecutor<>(rejecting, 2, Duration.ofMillis(10),
+                batch -> { });
+        executor.submit(1);
+        TimeUnit.MILLISECONDS.sleep(200);
+        // 타이머가 내보낸 묶음은 던질 곳이 없으므로 세기만 한다
+        Metrics metrics = executor.metrics();
+        assertEquals(1, metrics.rejectedBatches());
+        assertEquals(0, metrics.items());
+        assertEquals(0, metrics.batches());
+        executor.submit(2);
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(3));
+        assertEquals(2, executor.metrics().rejectedBatches());
+        executor.close();
+
+        List<List<Integer>> rejected = new CopyOnWriteArrayList<>();
+        MicroBatchingExecutor<Integer> withHandler = new MicroBatchingExecutor<>(rejecting, 2, Duration.ofMillis(10),
+                batch -> { }, rejected::add);
+        withHandler.submit(1);
+        TimeUnit.MILLISECONDS.sleep(200);
+        withHandler.submit(2);
+        withHandler.submit(3);
+        withHandler.submit(4);
+        withHandler.close();
+        assertEquals(List.of(List.of(1), List.of(2, 3), List.of(4)), rejected);
+        assertEquals(3, withHandler.metrics().rejectedBatches());
+    }
+
+    private static final int TASK_COUNT = 1_000_000;
+
+    /**
+     * 카운터 하나를 줄이는 작업 100만 개를 풀에 하나씩 넣을 때와 256개씩 묶어 넣을 때의 처리량을 비교한다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("작은 작업 100만 개로 newFixedThreadPool과 MicroBatchingExecutor의 처리량 비교")
+    void testThroughput() throws Exception {
+        AtomicReference<Metrics> metrics = new AtomicReference<>();
+        Benchmark.of("tasks/s")
+                .rounds(1, 2)
+                .add("newFixedThreadPool", MicroBatchingExecutorTest::measurePlain)
+                .add("MicroBatchingExecutor", () -> measureBatched(metrics))
+                .run();
+        System.out.println("  " + metrics.get());
+    }
+
+    private static long measurePlain() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        long start = System.nanoTime();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            pool.execute(done::countDown);
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        long rate = TASK_COUNT * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        return rate;
+    }
+
+    private static long measureBatched(AtomicReference<Metrics> metrics) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        long start = System.nanoTime();
+        try (MicroBatchingExecutor<Runnable> executor = MicroBatchingExecutor.forRunnables(pool, 256,
+                Duration.ofMillis(1))) {
+            for (int i = 0; i < TASK_COUNT; i++) {
+                executor.submit(done::countDown);
+            }
+            executor.flush();
+            assertTrue(done.await(1, TimeUnit.MINUTES));
+            metrics.set(executor.metrics());
+        }
+        long rate = TASK_COUNT * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        return rate;
+    }
+}
@@ -0,0 +1,245 @@
+package concurrency.version5;
+
+import concurrency.version1_4.Sequence;
+import concurrency.version1_4.WaitStrategy;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dmitry Vyukov의 bounded MPMC 큐를 배열로 구현한 크기 제한 락 없는 큐.
+ *
+ * ConcurrentLinkedQueue는 원소마다 노드를 할당하고 크기 제한이 없다. 여기서는 2의 거듭제곱 크기 배열을 미리 잡고
+ * 칸마다 시퀀스 번호를 두어, 칸의 시퀀스가 tail과 같으면 생산자가, tail + 1과 같으면 소비자가 쓸 수 있는 칸으로 본다.
+ * 생산자와 소비자는 각각 tail, head 카운터만 CAS하므로 서로 경합하지 않고, 두 카운터는 패딩된 Sequence라
+ * 같은 캐시 라인을 공유하지 않는다. 원소 외에는 할당이 없다.
+ *
+ * put()/take()는 생성할 때 고른 WaitStrategy로 기다린다. 기본값은 바쁜 대기, yield, 짧은 park 순으로 물러서며
+ * 다시 시도하는 방식이다. 시간 제한이 있는 offer()/poll()은 항상 이 기본 방식으로 기다린다.
+ */
+public class MpmcArrayQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final Sequence head = new Sequence(0);
+    private final Sequence tail = new Sequence(0);
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * @param capacity 최대 원소 수. 2의 거듭제곱으로 올림한다
+     */
+    public MpmcArrayQueue(int capacity) {
+        this(capacity, WaitStrategy.phasedBackoff(100, 100, 10, TimeUnit.MICROSECONDS));
+    }
+
+    /**
+     * @param waitStrategy put()과 take()가 자리나 원소를 기다리는 방법
+     */
+    public MpmcArrayQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity는 2 이상 2^30 이하여야 합니다: " + capacity);
+        }
+        int size = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer[index] = e;
+                    // 원소를 쓴 뒤 시퀀스를 올려야 소비자가 원소를 본다
+                    sequences.lazySet(index, position + 1);
+                    waitStrategy.signalAll();
+                    return true;
+                }
+            } else if (difference < 0) {
+                // 한 바퀴 전 원소를 아직 소비자가 가져가지 않았으므로 가득 찼다
+                return false;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        for (;;) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    // 다음 바퀴의 생산자가 쓸 수 있게 한다
+                    sequences.lazySet(index, position + buffer.length);
+                    waitStrategy.signalAll();
+                    return e;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        for (;;) {
+            long position = head.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) - (position + 1) < 0) {
+                return null;
+            }
+            E e = (E) buffer[index];
+            // 읽는 사이 소비자가 가져갔으면 다시 본다
+            if (e != null && head.get() == position) {
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (!offer(e)) {
+            waitStrategy.await(() -> offer(e));
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int attempt = 0; !offer(e); attempt++) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            backoff(attempt);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E take() throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        Object[] taken = new Object[1];
+        waitStrategy.await(() -> (taken[0] = poll()) != null);
+        return (E) taken[0];
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        for (int attempt = 0; (e = poll()) == null; attempt++) {
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            backoff(attempt);
+        }
+        return e;
+    }
+
+    private static void backoff(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (attempt < 100) {
+            Thread.onSpinWait();
+        } else if (attempt < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return buffer.length - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 동시에 넣고 빼는 중에는 근삿값이다.
+     */
+    @Override
+    public int size() {
+        for (;;) {
+            long before = head.get();
+            long currentTail = tail.get();
+            long after = head.get();
+            if (before == after) {
+                return (int) Math.max(0, Math.min(buffer.length, currentTail - after));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * 호출 시점에 들어 있던 원소의 스냅샷을 순회한다. remove()는 지원하지 않는다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long end = tail.get();
+        for (long position = head.get(); position < end; position++) {
+            int index = (int) position & mask;
+            Object e = buffer[index];
+            if (sequences.get(index) == position + 1 && e != null) {
+                snapshot.add((E) e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
@@ -0,0 +1,167 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class MpmcArrayQueueTest {
+
+    @Test
+    @DisplayName("MpmcArrayQueue::용량은 2의 거듭제곱으로 올림하고, 가득 차면 offer()가 false를 반환한다")
+    public void testBounded() {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(6);
+        assertEquals(8, queue.capacity());
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(8));
+        assertEquals(8, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        assertThrows(IllegalStateException.class, () -> queue.add(8));
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+    }
+
+    @Test
+    @DisplayName("MpmcArrayQueue::한 스레드에서는 여러 바퀴를 돌아도 선입선출 순서를 지킨다")
+    public void testFifo() {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(4);
+        for (int round = 0; round < 10; round++) {
+            queue.offer(round);
+            queue.offer(round + 100);
+            assertEquals(round, queue.peek());
+            assertEquals(List.of(round, round + 100), new ArrayList<>(queue));
+            assertEquals(round, queue.poll());
+            assertEquals(round + 100, queue.poll());
+            assertNull(queue.poll());
+        }
+
+        queue.addAll(List.of(1, 2, 3));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals(List.of(1, 2), drained);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    @DisplayName("MpmcArrayQueue::비어 있으면 poll(timeout)은 시간이 지난 뒤 null을 반환한다")
+    public void testTimedPoll() throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(4);
+        long start = System.nanoTime();
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    @DisplayName("MpmcArrayQueue::여러 생산자와 소비자가 put(), take()해도 원소가 유실되거나 중복되지 않는다")
+    public void testConcurrentPutTake() throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(64);
+        int producers = 4;
+        int consumers = 4;
+        int elementsPerProducer = 100_000;
+        AtomicLong consumedSum = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        for (int i = 0; i < producers; i++) {
+            executor.submit(() -> {
+                for (int j = 1; j <= elementsPerProducer; j++) {
+                    queue.put(j);
+                }
+                return null;
+            });
+        }
+        for (int i = 0; i < consumers; i++) {
+            executor.submit(() -> {
+                long sum = 0;
+                for (int j = 0; j < elementsPerProducer * producers / consumers; j++) {
+                    sum += queue.take();
+                }
+                consumedSum.addAndGet(sum);
+                return null;
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(queue.isEmpty());
+        assertEquals((long) producers * elementsPerProducer * (elementsPerProducer + 1) / 2, consumedSum.get());
+    }
+
+    private static final int OPERATION_COUNT = 1_000_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("ConcurrentLinkedQueue, ArrayBlockingQueue, MpmcArrayQueue의 offer/poll 처리량 비교")
+    public void testThroughput() throws InterruptedException {
+        for (int threadCount = 2; threadCount <= 8; threadCount *= 2) {
+            long clq = measureThroughput(new ConcurrentLinkedQueue<>(), threadCount);
+            long abq = measureThroughput(new ArrayBlockingQueue<>(1024), threadCount);
+            long mpmc = measureThroughput(new MpmcArrayQueue<>(1024), threadCount);
+            System.out.printf("threads=%d ConcurrentLinkedQueue: %,d ops/s, ArrayBlockingQueue: %,d ops/s, "
+                    + "MpmcArrayQueue: %,d ops/s%n", threadCount, clq, abq, mpmc);
+        }
+    }
+
+    // 절반은 생산자, 절반은 소비자. 큐가 가득 차거나 비면 다시 시도한다
+    private long measureThroughput(Queue<Integer> queue, int threadCount) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Integer element = 1;
+        long start = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            boolean producer = i % 2 == 0;
+            executor.submit(() -> {
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    if (producer) {
+                        while (!queue.offer(element)) {
+                            Thread.yield();
+                        }
+                    } else {
+                        while (queue.poll() == null) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), queue.getClass().getSimpleName());
+        long elapsed = System.nanoTime() - start;
+        return (long) threadCount * OPERATION_COUNT * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Test
+    @DisplayName("MpmcArrayQueue는 BlockingQueue를 쓰는 코드에 그대로 넣을 수 있다")
+    public void testAsBlockingQueue() throws InterruptedException {
+        BlockingQueue<String> queue = new MpmcArrayQueue<>(2);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 10; i++) {
+                    queue.put("item" + i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("item" + i, queue.take());
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,255 @@
+package concurrency.version5;
+
+import concurrency.version1_4.Sequence;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 생산자는 여럿, 소비자 스레드는 하나 전용의 크기 제한 배열 큐.
+ *
+ * 생산자는 producerIndex를 CAS로 올려 칸을 예약한 뒤 원소를 release 쓰기로 넣는다. 칸에 원소가 보이면 발행된 것이므로
+ * 소비자는 CAS 없이 칸을 acquire로 읽어 비었는지 판단하고, 자기 인덱스를 release 쓰기로 올린다.
+ * 생산자는 consumerIndex를 매번 읽지 않고 공유 캐시(producerLimit)까지는 그대로 예약한다.
+ *
+ * drain()은 소비자 인덱스를, fill()은 생산자 인덱스를 묶음당 한 번만 갱신한다.
+ * fill()이 예약한 칸을 채우지 못하면 SKIP을 넣어 두고, 소비자는 SKIP 칸을 원소로 내주지 않고 지나간다.
+ */
+public class MpscArrayQueue<E> extends AbstractQueue<E> {
+
+    private static final VarHandle ELEMENT = MethodHandles.arrayElementVarHandle(Object[].class);
+    // 예약했지만 원소를 넣지 못한 칸
+    private static final Object SKIP = new Object();
+
+    private final Object[] buffer;
+    private final int mask;
+    private final Sequence producerIndex = new Sequence(0);
+    // 생산자들이 이 인덱스 전까지는 consumerIndex를 다시 읽지 않고 예약한다
+    private final Sequence producerLimit;
+    private final Sequence consumerIndex = new Sequence(0);
+
+    public MpscArrayQueue(int capacity) {
+        this.buffer = new Object[SpscArrayQueue.roundToPowerOfTwo(capacity)];
+        this.mask = buffer.length - 1;
+        this.producerLimit = new Sequence(buffer.length);
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            long producer = producerIndex.get();
+            if (producer >= producerLimit.get() && !refreshProducerLimit(producer)) {
+                return false;
+            }
+            if (producerIndex.compareAndSet(producer, producer + 1)) {
+                ELEMENT.setRelease(buffer, (int) producer & mask, e);
+                return true;
+            }
+        }
+    }
+
+    // consumerIndex를 다시 읽어 producer 칸이 비었는지 확인한다
+    private boolean refreshProducerLimit(long producer) {
+        long limit = consumerIndex.get() + buffer.length;
+        if (producer >= limit) {
+            return false;
+        }
+        producerLimit.set(limit);
+        return true;
+    }
+
+    /**
+     * 최대 n칸을 예약하고 첫 인덱스를 반환한다. 실제로 예약한 칸 수는 claimed[0]에 담는다. 자리가 없으면 -1.
+     */
+    private long claim(int n, int[] claimed) {
+        for (;;) {
+            long producer = producerIndex.get();
+            if (producer + n > producerLimit.get() && !refreshProducerLimit(producer)) {
+                return -1;
+            }
+            int count = (int) Math.min(n, producerLimit.get() - producer);
+            if (count <= 0) {
+                continue;
+            }
+            if (producerIndex.compareAndSet(producer, producer + count)) {
+                claimed[0] = count;
+                return producer;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        for (;;) {
+            long consumer = consumerIndex.get();
+            int index = (int) consumer & mask;
+            Object e = ELEMENT.getAcquire(buffer, index);
+            if (e == null) {
+                if (consumer == producerIndex.get()) {
+                    return null;
+                }
+                // 예약은 했지만 아직 원소를 넣지 않은 생산자를 기다린다
+                e = awaitElement(index);
+            }
+            buffer[index] = null;
+            consumerIndex.set(consumer + 1);
+            if (e != SKIP) {
+                return (E) e;
+            }
+        }
+    }
+
+    /**
+     * 소비자 스레드만 호출할 수 있다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        for (;;) {
+            long consumer = consumerIndex.get();
+            int index = (int) consumer & mask;
+            Object e = ELEMENT.getAcquire(buffer, index);
+            if (e == null && consumer != producerIndex.get()) {
+                e = awaitElement(index);
+            }
+            if (e != SKIP) {
+                return (E) e;
+            }
+            buffer[index] = null;
+            consumerIndex.set(consumer + 1);
+        }
+    }
+
+    // 생산자가 칸을 예약한 직후 선점될 수 있으므로 잠깐 바쁜 대기 후에는 양보한다
+    private Object awaitElement(int index) {
+        Object e;
+        for (int spins = 0; (e = ELEMENT.getAcquire(buffer, index)) == null; spins++) {
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return e;
+    }
+
+    /**
+     * 이미 발행된 원소를 최대 limit개 꺼내 consumer에 넘기고, consumerIndex는 마지막에 한 번만 올린다.
+     * 아직 원소를 넣지 않은 생산자를 만나면 기다리지 않고 거기서 멈춘다. 소비자 스레드만 호출할 수 있다.
+     *
+     * @return 꺼낸 원소 수
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long start = consumerIndex.get();
+        int advanced = 0;
+        int count = 0;
+        try {
+            while (count < limit) {
+                int index = (int) (start + advanced) & mask;
+                Object e = ELEMENT.getAcquire(buffer, index);
+                if (e == null) {
+                    break;
+                }
+                buffer[index] = null;
+                advanced++;
+                if (e != SKIP) {
+                    count++;
+                    consumer.accept((E) e);
+                }
+            }
+        } finally {
+            if (advanced > 0) {
+                consumerIndex.set(start + advanced);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 최대 limit칸을 한 번의 CAS로 예약하고 supplier가 주는 원소로 채운다. 여러 생산자가 동시에 호출할 수 있다.
+     * supplier가 null을 반환하면 NullPointerException을, 예외를 던지면 그 예외를 그대로 던진다. 이때 이미 넣은 원소는
+     * 큐에 남고, 소비자가 멈추지 않도록 남은 예약 칸은 SKIP으로 채운다.
+     *
+     * @return 채운 원소 수
+     */
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        int[] claimed = new int[1];
+        long start = claim(limit, claimed);
+        if (start < 0) {
+            return 0;
+        }
+        int filled = 0;
+        try {
+            for (; filled < claimed[0]; filled++) {
+                E e = supplier.get();
+                if (e == null) {
+                    throw new NullPointerException();
+                }
+                ELEMENT.setRelease(buffer, (int) (start + filled) & mask, e);
+            }
+        } finally {
+            for (int i = filled; i < claimed[0]; i++) {
+                ELEMENT.setRelease(buffer, (int) (start + i) & mask, SKIP);
+            }
+        }
+        return filled;
+    }
+
+    @Override
+    public int size() {
+        for (;;) {
+            long before = consumerIndex.get();
+            long producer = producerIndex.get();
+            long after = consumerIndex.get();
+            if (before == after) {
+                return (int) Math.min(buffer.length, producer - after);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex.get() >= producerIndex.get();
+    }
+
+    /**
+     * 호출 시점에 발행돼 있던 원소의 스냅샷을 순회한다. remove()는 지원하지 않는다.
+     * 칸을 예약만 하고 아직 넣지 않은 원소, SKIP 칸, 순회 중에 소비자가 꺼낸 칸은 건너뛴다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long end = producerIndex.get();
+        for (long position = Math.max(consumerIndex.get(), end - buffer.length); position < end; position++) {
+            Object e = ELEMENT.getAcquire(buffer, (int) position & mask);
+            if (e != null && e != SKIP) {
+                snapshot.add((E) e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + buffer.length + "]";
+    }
+}
@@ -0,0 +1,175 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class MpscArrayQueueTest {
+
+    @Test
+    @DisplayName("MpscArrayQueue::가득 차면 offer()와 fill()이 실패하고, drain()은 limit개까지만 꺼낸다")
+    public void testBounded() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(4);
+        assertTrue(queue.offer(0));
+        assertEquals(3, queue.fill(() -> 1, 10));
+        assertFalse(queue.offer(2));
+        assertEquals(0, queue.fill(() -> 2, 10));
+        assertEquals(0, queue.peek());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, queue.drain(drained::add, 2));
+        assertEquals(List.of(0, 1), drained);
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.poll());
+        assertEquals(1, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    @DisplayName("MpscArrayQueue::fill()의 supplier가 예외를 던지거나 null을 반환해도 소비자가 멈추지 않고 넣은 원소까지만 받는다")
+    public void testFillSupplierFailure() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(16);
+        int[] next = {0};
+        assertThrows(IllegalStateException.class, () -> queue.fill(() -> {
+            if (next[0] == 2) {
+                throw new IllegalStateException();
+            }
+            return next[0]++;
+        }, 5));
+        assertThrows(NullPointerException.class, () -> queue.fill(() -> next[0] < 3 ? next[0]++ : null, 3));
+        assertTrue(queue.offer(9));
+
+        assertEquals(List.of(0, 1, 2, 9), new ArrayList<>(queue));
+        assertEquals(0, queue.peek());
+        assertEquals(0, queue.poll());
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, queue.drain(drained::add, 10));
+        assertEquals(List.of(1, 2, 9), drained);
+        assertTrue(queue.isEmpty());
+
+        // SKIP 칸도 소비된 뒤에야 자리가 비므로 다시 가득 채울 수 있다
+        assertEquals(16, queue.fill(() -> 7, 20));
+    }
+
+    @Test
+    @DisplayName("MpscArrayQueue::iterator()는 발행된 원소의 스냅샷을 순서대로 돌려주어 contains()와 toArray()를 쓸 수 있다")
+    public void testSnapshotIterator() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+            if (i % 2 == 1) {
+                queue.poll();
+            }
+        }
+        assertEquals(List.of(3, 4, 5), new ArrayList<>(queue));
+        assertTrue(queue.contains(5));
+        assertFalse(queue.contains(1));
+        assertEquals(3, queue.toArray(new Integer[0]).length);
+        assertThrows(UnsupportedOperationException.class, () -> queue.iterator().remove());
+    }
+
+    @Test
+    @DisplayName("MpscArrayQueue::여러 생산자가 offer(), fill()해도 소비자는 생산자별 순서대로 모두 받는다")
+    public void testConcurrentProducers() throws InterruptedException {
+        MpscArrayQueue<long[]> queue = new MpscArrayQueue<>(256);
+        int producers = 4;
+        int elementsPerProducer = 200_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            int producerId = p;
+            executor.submit(() -> {
+                long[] next = {0};
+                while (next[0] < elementsPerProducer) {
+                    int added;
+                    if (next[0] % 3 == 0) {
+                        added = queue.offer(new long[]{producerId, next[0]}) ? 1 : 0;
+                        next[0] += added;
+                    } else {
+                        added = queue.fill(() -> new long[]{producerId, next[0]++},
+                                (int) Math.min(8, elementsPerProducer - next[0]));
+                    }
+                    if (added == 0) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        boolean[] ordered = {true};
+        int received = 0;
+        while (received < producers * elementsPerProducer) {
+            int drained = queue.drain(e -> {
+                int producerId = (int) e[0];
+                if (e[1] != lastSeen[producerId] + 1) {
+                    ordered[0] = false;
+                }
+                lastSeen[producerId] = e[1];
+            }, 64);
+            if (drained == 0) {
+                Thread.yield();
+            }
+            received += drained;
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(ordered[0]);
+        assertTrue(queue.isEmpty());
+    }
+
+    private static final int PRODUCER_COUNT = 4;
+    private static final int EVENTS_PER_PRODUCER = 1_000_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("생산자 여럿, 소비자 하나일 때 ConcurrentLinkedQueue, MpmcArrayQueue, MpscArrayQueue의 처리량 비교")
+    public void testThroughput() throws Exception {
+        Benchmark.of("events/s")
+                .label("producers=" + PRODUCER_COUNT)
+                .add("ConcurrentLinkedQueue", () -> measure(new ConcurrentLinkedQueue<>()))
+                .add("MpmcArrayQueue", () -> measure(new MpmcArrayQueue<>(1024)))
+                .add("MpscArrayQueue", () -> measure(new MpscArrayQueue<>(1024)))
+                .run();
+    }
+
+    private long measure(Queue<Integer> queue) throws InterruptedException {
+        Integer element = 1;
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCER_COUNT);
+        long start = System.nanoTime();
+        for (int p = 0; p < PRODUCER_COUNT; p++) {
+            executor.submit(() -> {
+                for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                    while (!queue.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < PRODUCER_COUNT * EVENTS_PER_PRODUCER; i++) {
+            while (queue.poll() == null) {
+                Thread.yield();
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        return (long) PRODUCER_COUNT * EVENTS_PER_PRODUCER * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+    }
+}
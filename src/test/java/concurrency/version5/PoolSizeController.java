@@ -0,0 +1,210 @@
+package concurrency.version5;
+
+import concurrency.version5.InstrumentedExecutorService.Snapshot;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InstrumentedExecutorService의 통계를 주기적으로 읽어 감싼 ThreadPoolExecutor의 크기를 조정하는 컨트롤러.
+ *
+ * 필요한 스레드 수는 리틀의 법칙으로 구한다. 작업이 초당 λ개 들어오고 작업 하나가 스레드를 W초 붙잡으면(막혀 있는 시간 포함)
+ * 평균 λW개 스레드가 바쁘다. 여기에 목표 사용률(0.8)로 여유를 두고, 큐에 쌓인 작업을 한 주기 안에 비울 스레드를 더한다.
+ * 다만 이번 주기에 시작한 작업의 평균 큐 대기 시간이 평균 실행 시간보다 짧으면 큐에 쌓인 작업은 잠깐 몰린 것으로 보고 더하지 않는다.
+ * 작업이 막히는 비율이 바뀌면 W가 바뀌므로 크기도 따라간다.
+ *
+ * 흔들리지 않도록 세 가지로 감쇠한다.
+ * <ul>
+ *     <li>목표값을 지수 평활(alpha 0.5)해 한 주기의 튀는 측정값을 그대로 따르지 않는다.</li>
+ *     <li>평활한 목표가 현재 크기와 10% 이내(최소 1)로 다르면 바꾸지 않는다.</li>
+ *     <li>한 주기에 현재 크기의 50%(최소 1)보다 많이 바꾸지 않는다.</li>
+ * </ul>
+ * 프로세스 CPU 사용률이 maxCpuLoad를 넘으면 스레드를 늘려도 처리량이 오르지 않으므로 늘리지 않는다.
+ */
+public class PoolSizeController implements AutoCloseable {
+
+    private static final double TARGET_UTILIZATION = 0.8;
+    private static final double SMOOTHING = 0.5;
+    private static final double DEAD_BAND = 0.1;
+    private static final double MAX_STEP = 0.5;
+
+    /**
+     * 한 번의 조정에서 본 값과 내린 결정
+     *
+     * @param arrivalRate  초당 들어온 작업 수
+     * @param throughput   초당 끝난 작업 수
+     * @param meanRunNanos 작업 하나가 스레드를 붙잡은 평균 시간
+     * @param meanWaitNanos 이번 주기에 시작한 작업이 큐에서 기다린 평균 시간
+     * @param queueDepth   조정 시점에 큐에 쌓인 작업 수
+     * @param cpuLoad      프로세스 CPU 사용률 (0~1, 알 수 없으면 음수)
+     * @param target       리틀의 법칙으로 구한 이번 주기의 목표
+     * @param smoothed     평활한 목표
+     * @param poolSize     조정 후 크기
+     */
+    public record Decision(double arrivalRate, double throughput, double meanRunNanos, double meanWaitNanos,
+                           int queueDepth, double cpuLoad, double target, double smoothed, int poolSize) {
+        @Override
+        public String toString() {
+            return String.format("arrival=%.0f/s throughput=%.0f/s run=%.1fms wait=%.1fms queue=%d cpu=%.0f%% "
+                            + "target=%.1f smoothed=%.1f pool=%d",
+                    arrivalRate, throughput, meanRunNanos / 1e6, meanWaitNanos / 1e6, queueDepth, cpuLoad * 100,
+                    target, smoothed, poolSize);
+        }
+    }
+
+    private final InstrumentedExecutorService executor;
+    private final int minThreads;
+    private final int maxThreads;
+    private final double maxCpuLoad;
+    private final ScheduledExecutorService scheduler;
+    private final OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+
+    // adjust()는 scheduler 스레드 하나에서만 불린다
+    private long lastNanos;
+    private long lastSubmitted;
+    private long lastCompleted;
+    private double lastRunTotal;
+    private long lastStarted;
+    private double lastWaitTotal;
+    private double smoothed;
+    private volatile Decision lastDecision;
+
+    public PoolSizeController(InstrumentedExecutorService executor, int minThreads, int maxThreads, Duration interval) {
+        this(executor, minThreads, maxThreads, 0.9, interval);
+    }
+
+    /**
+     * @param maxCpuLoad 프로세스 CPU 사용률이 이 값을 넘으면 스레드를 늘리지 않는다
+     * @param interval   조정 주기. 주기 안에 작업이 여러 개 끝날 만큼은 길어야 한다
+     */
+    public PoolSizeController(InstrumentedExecutorService executor, int minThreads, int maxThreads, double maxCpuLoad,
+                              Duration interval) {
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("1 <= minThreads <= maxThreads여야 합니다.");
+        }
+        this.executor = executor;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.maxCpuLoad = maxCpuLoad;
+        this.smoothed = executor.delegate().getCorePoolSize();
+        this.lastNanos = System.nanoTime();
+        Snapshot snapshot = executor.snapshot();
+        this.lastSubmitted = snapshot.total().submitted();
+        this.lastCompleted = completed(snapshot);
+        this.lastRunTotal = runTotal(snapshot);
+        this.lastStarted = snapshot.total().waitTime().count();
+        this.lastWaitTotal = waitTotal(snapshot);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pool-size-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = interval.toNanos();
+        scheduler.scheduleWithFixedDelay(this::adjust, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static long completed(Snapshot snapshot) {
+        return snapshot.total().completed() + snapshot.total().failed();
+    }
+
+    private static double runTotal(Snapshot snapshot) {
+        return snapshot.total().runTime().mean() * snapshot.total().runTime().count();
+    }
+
+    // 대기 시간은 작업이 시작할 때 기록하므로 개수는 시작한 작업 수다
+    private static double waitTotal(Snapshot snapshot) {
+        return snapshot.total().waitTime().mean() * snapshot.total().waitTime().count();
+    }
+
+    /**
+     * 지난 조정 이후의 통계로 크기를 한 번 조정한다.
+     */
+    Decision adjust() {
+        return adjust(executor.snapshot(), System.nanoTime(), processCpuLoad());
+    }
+
+    /**
+     * 주어진 통계와 시각으로 조정한다. 테스트에서 시계와 통계를 직접 넣을 수 있도록 나눴다.
+     */
+    Decision adjust(Snapshot snapshot, long now, double cpuLoad) {
+        double seconds = (now - lastNanos) / 1e9;
+        long submitted = snapshot.total().submitted();
+        long completed = completed(snapshot);
+        double runTotal = runTotal(snapshot);
+        long started = snapshot.total().waitTime().count();
+        double waitTotal = waitTotal(snapshot);
+
+        double arrivalRate = (submitted - lastSubmitted) / seconds;
+        double throughput = (completed - lastCompleted) / seconds;
+        // 이번 주기에 끝난 작업의 평균 실행 시간. 끝난 작업이 없으면 지난 평활 값을 그대로 둔다
+        double meanRunNanos = completed > lastCompleted ? (runTotal - lastRunTotal) / (completed - lastCompleted) : 0;
+        double meanWaitNanos = started > lastStarted ? (waitTotal - lastWaitTotal) / (started - lastStarted) : 0;
+        lastNanos = now;
+        lastSubmitted = submitted;
+        lastCompleted = completed;
+        lastRunTotal = runTotal;
+        lastStarted = started;
+        lastWaitTotal = waitTotal;
+
+        ThreadPoolExecutor pool = executor.delegate();
+        int current = pool.getCorePoolSize();
+        double target = smoothed;
+        if (meanRunNanos > 0) {
+            double busyThreads = arrivalRate * meanRunNanos / 1e9;
+            double backlogThreads = meanWaitNanos < meanRunNanos ? 0
+                    : snapshot.queueDepth() * meanRunNanos / 1e9 / seconds;
+            target = (busyThreads + backlogThreads) / TARGET_UTILIZATION;
+        }
+        smoothed = SMOOTHING * target + (1 - SMOOTHING) * smoothed;
+
+        int next = current;
+        double desired = Math.max(minThreads, Math.min(maxThreads, smoothed));
+        if (Math.abs(desired - current) > Math.max(1, current * DEAD_BAND)) {
+            int step = (int) Math.max(1, current * MAX_STEP);
+            next = (int) Math.round(Math.max(current - step, Math.min(current + step, desired)));
+            if (next > current && cpuLoad > maxCpuLoad) {
+                next = current;
+            }
+        }
+        resize(pool, next);
+
+        Decision decision = new Decision(arrivalRate, throughput, meanRunNanos, meanWaitNanos, snapshot.queueDepth(),
+                cpuLoad, target, smoothed, next);
+        lastDecision = decision;
+        return decision;
+    }
+
+    /**
+     * 큐가 무제한이라 core 크기만 의미가 있으므로 core와 max를 같게 둔다. core가 max보다 커질 수 없으므로 순서를 맞춘다.
+     */
+    private static void resize(ThreadPoolExecutor pool, int size) {
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    private double processCpuLoad() {
+        if (osMXBean instanceof com.sun.management.OperatingSystemMXBean sunMXBean) {
+            return sunMXBean.getProcessCpuLoad();
+        }
+        return -1;
+    }
+
+    public Decision lastDecision() {
+        return lastDecision;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
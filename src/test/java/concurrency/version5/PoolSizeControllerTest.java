@@ -0,0 +1,178 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version5.InstrumentedExecutorService.HistogramSnapshot;
+import concurrency.version5.InstrumentedExecutorService.Snapshot;
+import concurrency.version5.InstrumentedExecutorService.TaskSnapshot;
+import concurrency.version5.PoolSizeController.Decision;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class PoolSizeControllerTest {
+
+    private static final int TASKS_PER_SECOND = 400;
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // 작업이 막히는 시간. 단계마다 바꾼다
+    private volatile long blockingMillis;
+
+    /**
+     * 주기마다 누적 통계를 직접 만들어 adjust()에 넣는다. 초당 400개, 작업 하나가 25ms를 붙잡다가 5ms로 줄어든다.
+     * 리틀의 법칙으로는 바쁜 스레드가 10개에서 2개로 줄고, 목표 사용률 0.8을 적용하면 12.5개와 2.5개가 필요하다.
+     */
+    @Test
+    @DisplayName("PoolSizeController::작업이 막히는 비율이 바뀌면 풀 크기를 따라 바꾸고, 부하가 일정하면 흔들리지 않는다")
+    void testFollowsBlockingRatio() throws InterruptedException {
+        InstrumentedExecutorService executor = InstrumentedExecutorService.newFixedThreadPool(1);
+        // 주기를 길게 잡아 스케줄러가 끼어들지 않게 한다
+        try (PoolSizeController controller = new PoolSizeController(executor, 1, 64, Duration.ofDays(1))) {
+            SimulatedLoad load = new SimulatedLoad();
+            controller.adjust(load.snapshot(0), load.now, 0);
+
+            List<Integer> slowPhase = simulate(controller, load, 25, 30);
+            List<Integer> fastPhase = simulate(controller, load, 5, 30);
+            System.out.println("25ms 단계 풀 크기: " + slowPhase);
+            System.out.println("5ms 단계 풀 크기: " + fastPhase);
+
+            assertTrue(slowPhase.get(29) >= 12 && slowPhase.get(29) <= 13, slowPhase.toString());
+            assertTrue(fastPhase.get(29) >= 2 && fastPhase.get(29) <= 3, fastPhase.toString());
+            // 감쇠가 없다면 목표가 그대로 바뀌므로, 수렴한 뒤에는 크기가 한 번도 바뀌지 않아야 한다
+            assertEquals(1, slowPhase.subList(20, 30).stream().distinct().count(), slowPhase.toString());
+            assertEquals(1, fastPhase.subList(20, 30).stream().distinct().count(), fastPhase.toString());
+            assertEquals(fastPhase.get(29), executor.delegate().getCorePoolSize());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("PoolSizeController::큐에 쌓인 작업은 큐 대기가 실행 시간보다 길 때만 목표에 더한다")
+    void testBacklogNeedsWaitTime() throws InterruptedException {
+        InstrumentedExecutorService executor = InstrumentedExecutorService.newFixedThreadPool(4);
+        try (PoolSizeController controller = new PoolSizeController(executor, 1, 64, Duration.ofDays(1))) {
+            SimulatedLoad load = new SimulatedLoad();
+            controller.adjust(load.snapshot(0), load.now, 0);
+
+            // 초당 40개, 10ms 작업이면 바쁜 스레드는 0.4개라 목표는 0.4 / 0.8이다. 큐에 100개가 있어도 대기가 짧으면 무시한다
+            load.advance(4, 10, 1);
+            Decision draining = controller.adjust(load.snapshot(100), load.now, 0);
+            assertEquals(0.5, draining.target(), 1e-9, draining.toString());
+
+            // 큐 대기가 실행 시간의 10배면 쌓인 작업을 한 주기 안에 비울 스레드 10개를 더한다: (0.4 + 10) / 0.8
+            load.advance(4, 10, 100);
+            Decision backlog = controller.adjust(load.snapshot(100), load.now, 0);
+            assertEquals(13.0, backlog.target(), 1e-9, backlog.toString());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static List<Integer> simulate(PoolSizeController controller, SimulatedLoad load, long runMillis,
+                                          int intervals) {
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < intervals; i++) {
+            load.advance(TASKS_PER_SECOND / 10, runMillis, 0);
+            sizes.add(controller.adjust(load.snapshot(0), load.now, 0).poolSize());
+        }
+        return sizes;
+    }
+
+    /**
+     * 100ms 주기마다 들어오고 끝난 작업을 누적해 InstrumentedExecutorService.Snapshot을 만든다.
+     */
+    private static final class SimulatedLoad {
+        long now = System.nanoTime();
+        long tasks;
+        double runTotal;
+        double waitTotal;
+
+        void advance(int tasksPerInterval, long runMillis, long waitMillis) {
+            now += INTERVAL_NANOS;
+            tasks += tasksPerInterval;
+            runTotal += tasksPerInterval * TimeUnit.MILLISECONDS.toNanos(runMillis);
+            waitTotal += tasksPerInterval * TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        }
+
+        Snapshot snapshot(int queueDepth) {
+            HistogramSnapshot wait = histogram(waitTotal);
+            HistogramSnapshot run = histogram(runTotal);
+            TaskSnapshot total = new TaskSnapshot(tasks, tasks, 0, 0, wait, run);
+            return new Snapshot(0, 0, 0, queueDepth, total, Map.of());
+        }
+
+        // 컨트롤러는 count와 mean만 읽는다
+        private HistogramSnapshot histogram(double sum) {
+            return new HistogramSnapshot(tasks, tasks == 0 ? 0 : sum / tasks, 0, 0, 0);
+        }
+    }
+
+    /**
+     * 실제 풀에 초당 400개의 작업을 넣으면서 작업이 막히는 시간을 25ms에서 5ms로 줄이고 풀 크기를 출력한다.
+     * 벽시계와 스케줄링에 달려 있어 결과를 검증하지 않는다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("실제 부하에서 작업이 막히는 비율에 따라 풀 크기가 바뀌는 모습 출력")
+    void testFollowsBlockingRatioDemo() throws InterruptedException {
+        InstrumentedExecutorService executor = InstrumentedExecutorService.newFixedThreadPool(1);
+        ScheduledExecutorService load = Executors.newSingleThreadScheduledExecutor();
+        // 10ms마다 4개씩 넣는다
+        load.scheduleAtFixedRate(() -> {
+            for (int i = 0; i < TASKS_PER_SECOND / 100; i++) {
+                long millis = blockingMillis;
+                executor.execute(() -> sleep(millis));
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        try (PoolSizeController controller = new PoolSizeController(executor, 1, 64, Duration.ofMillis(100))) {
+            blockingMillis = 25;
+            List<Integer> slowPhase = observe(controller, 30);
+            blockingMillis = 5;
+            List<Integer> fastPhase = observe(controller, 30);
+
+            IntSummaryStatistics slowSteady = slowPhase.subList(20, 30).stream().mapToInt(Integer::intValue).summaryStatistics();
+            IntSummaryStatistics fastSteady = fastPhase.subList(20, 30).stream().mapToInt(Integer::intValue).summaryStatistics();
+            System.out.println("25ms 단계 풀 크기: " + slowPhase);
+            System.out.println("5ms 단계 풀 크기: " + fastPhase);
+            System.out.println("25ms 단계 마지막 10회: " + slowSteady);
+            System.out.println("5ms 단계 마지막 10회: " + fastSteady);
+            System.out.println("마지막 결정: " + controller.lastDecision());
+        } finally {
+            load.shutdownNow();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    // 100ms마다 풀 크기를 samples번 기록한다
+    private static List<Integer> observe(PoolSizeController controller, int samples) throws InterruptedException {
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < samples; i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            Decision decision = controller.lastDecision();
+            sizes.add(decision == null ? 1 : decision.poolSize());
+        }
+        return sizes;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package concurrency.version5;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 획득 대기 시간, 점유 시간, 경합 비율, 대기열 길이, 경합 호출 위치를 기록하는 ReentrantLock.
+ *
+ * 경합이 없으면 tryLock 한 번과 LongAdder 증가만 추가되고, System.nanoTime()은
+ * 경합했거나 점유 시간 샘플로 뽑힌 경우에만 호출한다.
+ * 빠른 경로는 tryLock(0, NANOSECONDS)라 공정 락에서도 대기열에 끼어들지 않는다. 인자 없는 tryLock()은
+ * 공정 락에서도 끼어들기 때문에 빠른 경로로 쓰지 않는다.
+ */
+public class ProfiledReentrantLock extends ReentrantLock {
+
+    private final LockProfile profile;
+    // 점유 시작 시각. 락을 가진 스레드만 읽고 쓰며, 0이면 이번 점유는 샘플이 아니다
+    private long holdStart;
+
+    public ProfiledReentrantLock(String name) {
+        this(false, new LockProfile(name));
+    }
+
+    public ProfiledReentrantLock(boolean fair, LockProfile profile) {
+        super(fair);
+        this.profile = profile;
+    }
+
+    public LockProfile profile() {
+        return profile;
+    }
+
+    @Override
+    public void lock() {
+        if (tryLockFast()) {
+            acquired(false, 0, 0);
+            return;
+        }
+        int queueLength = getQueueLength();
+        long start = System.nanoTime();
+        super.lock();
+        acquired(true, System.nanoTime() - start, queueLength);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (tryLockFast()) {
+            acquired(false, 0, 0);
+            return;
+        }
+        int queueLength = getQueueLength();
+        long start = System.nanoTime();
+        super.lockInterruptibly();
+        acquired(true, System.nanoTime() - start, queueLength);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (super.tryLock()) {
+            acquired(false, 0, 0);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryLockFast()) {
+            acquired(false, 0, 0);
+            return true;
+        }
+        int queueLength = getQueueLength();
+        long start = System.nanoTime();
+        if (super.tryLock(timeout, unit)) {
+            acquired(true, System.nanoTime() - start, queueLength);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void unlock() {
+        if (getHoldCount() == 1 && holdStart != 0) {
+            profile.recordHold(System.nanoTime() - holdStart);
+            holdStart = 0;
+        }
+        super.unlock();
+    }
+
+    /**
+     * 공정 락에서도 대기열을 지키는 tryLock(0). 인터럽트 상태면 되살리고 false를 반환해 느린 경로가 원래 의미대로 처리하게 한다.
+     */
+    private boolean tryLockFast() {
+        try {
+            return super.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void acquired(boolean contended, long waitNanos, int queueLength) {
+        if (contended) {
+            profile.recordContended(waitNanos, queueLength + 1);
+        } else {
+            profile.recordUncontended();
+        }
+        // 재진입은 바깥 점유 시간에 포함되므로 처음 획득할 때만 샘플링한다
+        if (getHoldCount() == 1 && profile.sampleHold()) {
+            holdStart = System.nanoTime();
+        }
+    }
+}
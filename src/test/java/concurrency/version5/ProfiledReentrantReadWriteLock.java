@@ -0,0 +1,231 @@
+package concurrency.version5;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 읽기 락과 쓰기 락 각각의 경합 정보를 따로 기록하는 ReentrantReadWriteLock.
+ * readLock()/writeLock()이 기록 기능이 있는 락을 반환하므로 기존 코드를 그대로 쓸 수 있다.
+ */
+public class ProfiledReentrantReadWriteLock extends ReentrantReadWriteLock {
+
+    private final ProfiledReadLock readLock;
+    private final ProfiledWriteLock writeLock;
+
+    public ProfiledReentrantReadWriteLock(String name) {
+        this(false, name);
+    }
+
+    public ProfiledReentrantReadWriteLock(boolean fair, String name) {
+        super(fair);
+        this.readLock = new ProfiledReadLock(this, new LockProfile(name + ".read"));
+        this.writeLock = new ProfiledWriteLock(this, new LockProfile(name + ".write"));
+    }
+
+    @Override
+    public ReentrantReadWriteLock.ReadLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public ReentrantReadWriteLock.WriteLock writeLock() {
+        return writeLock;
+    }
+
+    public LockProfile readProfile() {
+        return readLock.profile;
+    }
+
+    public LockProfile writeProfile() {
+        return writeLock.profile;
+    }
+
+    static final class ProfiledReadLock extends ReentrantReadWriteLock.ReadLock {
+        private final ReentrantReadWriteLock owner;
+        private final LockProfile profile;
+        // 읽기 락은 여러 스레드가 함께 가지므로 점유 시작 시각을 스레드마다 따로 둔다
+        private final ThreadLocal<long[]> holdStart = ThreadLocal.withInitial(() -> new long[1]);
+
+        ProfiledReadLock(ReentrantReadWriteLock owner, LockProfile profile) {
+            super(owner);
+            this.owner = owner;
+            this.profile = profile;
+        }
+
+        @Override
+        public void lock() {
+            if (tryLockFast()) {
+                acquired(false, 0, 0);
+                return;
+            }
+            int queueLength = owner.getQueueLength();
+            long start = System.nanoTime();
+            super.lock();
+            acquired(true, System.nanoTime() - start, queueLength);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (tryLockFast()) {
+                acquired(false, 0, 0);
+                return;
+            }
+            int queueLength = owner.getQueueLength();
+            long start = System.nanoTime();
+            super.lockInterruptibly();
+            acquired(true, System.nanoTime() - start, queueLength);
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (super.tryLock()) {
+                acquired(false, 0, 0);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+            if (tryLockFast()) {
+                acquired(false, 0, 0);
+                return true;
+            }
+            int queueLength = owner.getQueueLength();
+            long start = System.nanoTime();
+            if (super.tryLock(timeout, unit)) {
+                acquired(true, System.nanoTime() - start, queueLength);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            if (owner.getReadHoldCount() == 1) {
+                long[] start = holdStart.get();
+                if (start[0] != 0) {
+                    profile.recordHold(System.nanoTime() - start[0]);
+                    start[0] = 0;
+                }
+            }
+            super.unlock();
+        }
+
+        /**
+         * ProfiledReentrantLock.tryLockFast()와 같다. 공정 락에서도 대기열을 지킨다.
+         */
+        private boolean tryLockFast() {
+            try {
+                return super.tryLock(0, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private void acquired(boolean contended, long waitNanos, int queueLength) {
+            if (contended) {
+                profile.recordContended(waitNanos, queueLength + 1);
+            } else {
+                profile.recordUncontended();
+            }
+            if (owner.getReadHoldCount() == 1 && profile.sampleHold()) {
+                holdStart.get()[0] = System.nanoTime();
+            }
+        }
+    }
+
+    static final class ProfiledWriteLock extends ReentrantReadWriteLock.WriteLock {
+        private final ReentrantReadWriteLock owner;
+        private final LockProfile profile;
+        // 쓰기 락을 가진 스레드만 읽고 쓴다
+        private long holdStart;
+
+        ProfiledWriteLock(ReentrantReadWriteLock owner, LockProfile profile) {
+            super(owner);
+            this.owner = owner;
+            this.profile = profile;
+        }
+
+        @Override
+        public void lock() {
+            if (tryLockFast()) {
+                acquired(false, 0, 0);
+                return;
+            }
+            int queueLength = owner.getQueueLength();
+            long start = System.nanoTime();
+            super.lock();
+            acquired(true, System.nanoTime() - start, queueLength);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (tryLockFast()) {
+                acquired(false, 0, 0);
+                return;
+            }
+            int queueLength = owner.getQueueLength();
+            long start = System.nanoTime();
+            super.lockInterruptibly();
+            acquired(true, System.nanoTime() - start, queueLength);
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (super.tryLock()) {
+                acquired(false, 0, 0);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+            if (tryLockFast()) {
+                acquired(false, 0, 0);
+                return true;
+            }
+            int queueLength = owner.getQueueLength();
+            long start = System.nanoTime();
+            if (super.tryLock(timeout, unit)) {
+                acquired(true, System.nanoTime() - start, queueLength);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            if (getHoldCount() == 1 && holdStart != 0) {
+                profile.recordHold(System.nanoTime() - holdStart);
+                holdStart = 0;
+            }
+            super.unlock();
+        }
+
+        /**
+         * ProfiledReentrantLock.tryLockFast()와 같다. 공정 락에서도 대기열을 지킨다.
+         */
+        private boolean tryLockFast() {
+            try {
+                return super.tryLock(0, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private void acquired(boolean contended, long waitNanos, int queueLength) {
+            if (contended) {
+                profile.recordContended(waitNanos, queueLength + 1);
+            } else {
+                profile.recordUncontended();
+            }
+            if (getHoldCount() == 1 && profile.sampleHold()) {
+                holdStart = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package concurrency.version5;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 허가 획득 대기 시간, 허가 보유 시간, 경합 비율, 대기열 길이, 경합 호출 위치를 기록하는 Semaphore.
+ *
+ * 허가는 스레드에 묶이지 않으므로, 보유 시간은 같은 스레드가 acquire()와 release()를
+ * 짝지어 호출한 경우만 샘플링한다. 다른 스레드가 대신 release()하면 그 보유 시간은 기록하지 않고,
+ * 획득한 스레드에 남은 시작 시각은 그 스레드가 다음에 획득할 때 덮어쓰므로 이후 보유 시간을 부풀리지 않는다.
+ */
+public class ProfiledSemaphore extends Semaphore {
+
+    private final LockProfile profile;
+    private final ThreadLocal<long[]> holdStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    public ProfiledSemaphore(int permits, String name) {
+        this(permits, false, new LockProfile(name));
+    }
+
+    public ProfiledSemaphore(int permits, boolean fair, LockProfile profile) {
+        super(permits, fair);
+        this.profile = profile;
+    }
+
+    public LockProfile profile() {
+        return profile;
+    }
+
+    @Override
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    @Override
+    public void acquire(int permits) throws InterruptedException {
+        if (tryAcquireFast(permits)) {
+            acquired(false, 0, 0);
+            return;
+        }
+        int queueLength = getQueueLength();
+        long start = System.nanoTime();
+        super.acquire(permits);
+        acquired(true, System.nanoTime() - start, queueLength);
+    }
+
+    @Override
+    public void acquireUninterruptibly() {
+        acquireUninterruptibly(1);
+    }
+
+    @Override
+    public void acquireUninterruptibly(int permits) {
+        if (tryAcquireFast(permits)) {
+            acquired(false, 0, 0);
+            return;
+        }
+        int queueLength = getQueueLength();
+        long start = System.nanoTime();
+        super.acquireUninterruptibly(permits);
+        acquired(true, System.nanoTime() - start, queueLength);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        if (super.tryAcquire(permits)) {
+            acquired(false, 0, 0);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryAcquireFast(permits)) {
+            acquired(false, 0, 0);
+            return true;
+        }
+        int queueLength = getQueueLength();
+        long start = System.nanoTime();
+        if (super.tryAcquire(permits, timeout, unit)) {
+            acquired(true, System.nanoTime() - start, queueLength);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void release() {
+        release(1);
+    }
+
+    @Override
+    public void release(int permits) {
+        long[] start = holdStart.get();
+        if (start[0] != 0) {
+            profile.recordHold(System.nanoTime() - start[0]);
+            start[0] = 0;
+        }
+        super.release(permits);
+    }
+
+    /**
+     * 공정 세마포어에서도 대기열을 지키는 tryAcquire(permits, 0). 인터럽트 상태면 되살리고 false를 반환해 느린 경로가 처리하게 한다.
+     */
+    private boolean tryAcquireFast(int permits) {
+        try {
+            return super.tryAcquire(permits, 0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void acquired(boolean contended, long waitNanos, int queueLength) {
+        if (contended) {
+            profile.recordContended(waitNanos, queueLength + 1);
+        } else {
+            profile.recordUncontended();
+        }
+        // 샘플링하지 않는 획득도 이전 획득이 남긴 시작 시각을 지워야 한다
+        holdStart.get()[0] = profile.sampleHold() ? System.nanoTime() : 0;
+    }
+}
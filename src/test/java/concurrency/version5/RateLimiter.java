@@ -0,0 +1,23 @@
+package concurrency.version5;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Semaphore가 동시에 실행되는 수를 제한한다면, RateLimiter는 시간당 허가 수를 제한한다.
+ */
+public interface RateLimiter {
+
+    default boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 허가가 있으면 바로 가져가고 true, 없으면 기다리지 않고 false.
+     */
+    boolean tryAcquire(int permits);
+
+    /**
+     * timeout 안에 허가를 얻을 수 있으면 그때까지 기다렸다가 true, 아니면 기다리지 않고 false.
+     */
+    boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException;
+}
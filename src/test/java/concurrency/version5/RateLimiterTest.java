@@ -0,0 +1,153 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    @DisplayName("TokenBucket::버킷 크기만큼 한꺼번에 쓸 수 있고, 이후에는 시간이 지난 만큼만 충전된다")
+    public void testTokenBucketBurstAndRefill() {
+        AtomicLong now = new AtomicLong();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5, now::get);  // 초당 10개, 최대 5개
+
+        assertEquals(5, limiter.availablePermits());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(), "버킷이 가득 찬 상태에서는 5개까지 바로 획득");
+        }
+        assertFalse(limiter.tryAcquire(), "버킷이 비면 획득 실패");
+
+        now.addAndGet(SECOND / 10);  // 0.1초 → 토큰 1개 충전
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        now.addAndGet(10 * SECOND);  // 오래 쉬어도 버킷 크기 이상은 쌓이지 않음
+        assertEquals(5, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("TokenBucket::reserve()는 기다리지 않고 허가를 예약한 뒤 기다려야 할 시간을 반환한다")
+    public void testTokenBucketReserve() {
+        AtomicLong now = new AtomicLong();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 2, now::get);
+
+        assertEquals(0, limiter.reserve(2));
+        assertEquals(SECOND / 10, limiter.reserve(1));
+        assertEquals(2 * SECOND / 10, limiter.reserve(1));
+        assertFalse(limiter.tryAcquire(), "예약된 허가 때문에 당장 쓸 토큰이 없어야 함");
+    }
+
+    @Test
+    @DisplayName("TokenBucket::timeout 안에 충전되면 기다렸다가 획득하고, 아니면 바로 실패한다")
+    public void testTokenBucketTimedAcquire() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(20, 1);  // 50ms마다 1개
+        assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire(1, 1, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40), "기다리지 않고 실패해야 함");
+
+        assertTrue(limiter.tryAcquire(1, 1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40), "충전될 때까지 기다려야 함");
+    }
+
+    @Test
+    @DisplayName("SlidingWindow::어느 시점이든 윈도 안의 허가는 limit개를 넘지 않는다")
+    public void testSlidingWindow() {
+        AtomicLong now = new AtomicLong();
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(3, 1, TimeUnit.SECONDS, now::get);
+
+        assertTrue(limiter.tryAcquire());
+        now.addAndGet(SECOND / 2);
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire());
+
+        // 첫 허가가 윈도 밖으로 나가면 한 자리가 생김
+        now.addAndGet(SECOND / 2);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // 0.5초 시점의 두 허가가 나가야 두 자리가 더 생김
+        now.addAndGet(SECOND / 2 - 1);
+        assertFalse(limiter.tryAcquire());
+        now.addAndGet(1);
+        assertTrue(limiter.tryAcquire(2));
+
+        assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire(4));
+    }
+
+    @Test
+    @DisplayName("여러 스레드가 동시에 tryAcquire()해도 허용량 이상 발급되지 않는다")
+    public void testConcurrentLimit() throws InterruptedException {
+        AtomicLong now = new AtomicLong();  // 시간이 흐르지 않으므로 충전되지 않음
+        assertEquals(1000, countGranted(() -> new TokenBucketRateLimiter(1, 1000, now::get)));
+        assertEquals(1000, countGranted(() -> new SlidingWindowRateLimiter(1000, 1, TimeUnit.SECONDS, now::get)));
+    }
+
+    private long countGranted(Supplier<RateLimiter> factory) throws InterruptedException {
+        RateLimiter limiter = factory.get();
+        AtomicLong granted = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (limiter.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        return granted.get();
+    }
+
+    private static final int THREAD_COUNT = 8;
+    private static final int OPERATION_COUNT = 1_000_000;
+
+    @Test
+    @DisplayName("여러 스레드에서 tryAcquire() 처리량 측정")
+    public void testTryAcquireThroughput() throws InterruptedException {
+        // 대부분 성공하는 경우와 대부분 실패하는 경우
+        measureThroughput("TokenBucket(무제한에 가까움)", new TokenBucketRateLimiter(1e9, 1_000_000));
+        measureThroughput("TokenBucket(초당 1000)", new TokenBucketRateLimiter(1000, 100));
+        measureThroughput("SlidingWindow(초당 1000)", new SlidingWindowRateLimiter(1000, 1, TimeUnit.SECONDS));
+    }
+
+    private void measureThroughput(String name, RateLimiter limiter) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        AtomicLong granted = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            executor.submit(() -> {
+                long count = 0;
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    if (limiter.tryAcquire()) {
+                        count++;
+                    }
+                }
+                granted.addAndGet(count);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+
+        long calls = (long) THREAD_COUNT * OPERATION_COUNT;
+        System.out.printf("%s: %,d calls/s (허가 %d개)%n", name, calls * SECOND / elapsed, granted.get());
+    }
+}
@@ -0,0 +1,104 @@
+package concurrency.version5;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 읽기가 대부분이고 쓰기는 드문 공유 상태(라우팅 테이블 등)를 담는 홀더.
+ *
+ * ReentrantReadWriteLock은 읽기 락을 잡을 때마다 공유 상태 값을 CAS로 바꾸므로
+ * 읽기만 하는 스레드끼리도 같은 캐시 라인을 주고받는다. 여기서는 읽기 경로에서
+ * 공유 메모리에 쓰지 않는 두 가지 방식을 제공한다.
+ */
+public interface ReadMostlyHolder<T> {
+
+    <R> R read(Function<? super T, ? extends R> reader);
+
+    /**
+     * 현재 상태를 받아 새 상태를 반환한다. 두 구현 모두 읽는 쪽이 락 없이 상태를 참조하므로
+     * 현재 상태를 고치지 말고 반드시 새 불변 객체를 반환해야 한다.
+     */
+    void update(UnaryOperator<T> writer);
+
+    static <T> Stamped<T> stamped(T initial) {
+        return new Stamped<>(initial);
+    }
+
+    static <T> CopyOnWrite<T> copyOnWrite(T initial) {
+        return new CopyOnWrite<>(initial);
+    }
+
+    /**
+     * StampedLock의 낙관적 읽기를 사용한다. 낙관적 읽기 구간에서는 상태 참조만 복사하고, validate에 성공한 뒤에야
+     * reader에 넘긴다. 쓰기와 겹쳤으면 읽기 락을 잡고 참조를 다시 읽는다. 상태는 불변이므로 reader는 락 밖에서 실행한다.
+     *
+     * update()는 쓰기 락 안에서 새 상태를 설치할 뿐 상태를 직접 고치면 안 된다. 고치면 validate 전에 복사한
+     * 참조로도 쓰기 도중의 상태를 보게 된다.
+     */
+    final class Stamped<T> implements ReadMostlyHolder<T> {
+        private final StampedLock lock = new StampedLock();
+        private T state;
+        // 낙관적 읽기가 실패해 읽기 락으로 다시 읽은 횟수 (느린 경로에서만 증가)
+        private final LongAdder optimisticMisses = new LongAdder();
+
+        private Stamped(T initial) {
+            this.state = initial;
+        }
+
+        @Override
+        public <R> R read(Function<? super T, ? extends R> reader) {
+            long stamp = lock.tryOptimisticRead();
+            T current = state;
+            if (stamp == 0L || !lock.validate(stamp)) {
+                optimisticMisses.increment();
+                stamp = lock.readLock();
+                try {
+                    current = state;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return reader.apply(current);
+        }
+
+        @Override
+        public void update(UnaryOperator<T> writer) {
+            long stamp = lock.writeLock();
+            try {
+                state = writer.apply(state);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        public long optimisticMisses() {
+            return optimisticMisses.sum();
+        }
+    }
+
+    /**
+     * 불변 스냅샷을 volatile 참조 하나로 교체한다. 읽기는 참조를 한 번 읽는 것이 전부이고,
+     * 쓰기는 새 스냅샷을 만들어 CAS로 바꾼다. update()는 반드시 새 객체를 반환해야 하며,
+     * 경합하면 다시 호출될 수 있다.
+     */
+    final class CopyOnWrite<T> implements ReadMostlyHolder<T> {
+        private final AtomicReference<T> snapshot;
+
+        private CopyOnWrite(T initial) {
+            this.snapshot = new AtomicReference<>(initial);
+        }
+
+        @Override
+        public <R> R read(Function<? super T, ? extends R> reader) {
+            return reader.apply(snapshot.get());
+        }
+
+        @Override
+        public void update(UnaryOperator<T> writer) {
+            snapshot.updateAndGet(writer);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class ReadMostlyHolderTest {
+
+    // 항상 left == right를 유지해야 하는 불변 상태
+    record Pair(long left, long right) {
+    }
+
+    @Test
+    @DisplayName("StampedLock 낙관적 읽기::쓰기와 겹친 읽기는 validate에서 걸러져 읽기 락으로 다시 읽고, 항상 일관된 상태를 본다")
+    public void testOptimisticReadConsistency() throws InterruptedException {
+        ReadMostlyHolder.Stamped<Pair> holder = ReadMostlyHolder.stamped(new Pair(0, 0));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong inconsistentReads = new AtomicLong();
+
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                holder.update(pair -> {
+                    Thread.yield();  // 쓰기 락을 오래 잡아 낙관적 읽기가 실패할 기회를 늘림
+                    return new Pair(pair.left() + 1, pair.right() + 1);
+                });
+            }
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            readers.add(new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    long difference = holder.read(pair -> pair.left() - pair.right());
+                    if (difference != 0) {
+                        inconsistentReads.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        readers.forEach(Thread::start);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        running.set(false);
+        writer.join();
+
+        assertEquals(0, inconsistentReads.get(), "검증을 통과한 읽기는 항상 일관된 상태여야 합니다.");
+        System.out.println("낙관적 읽기 실패 후 읽기 락으로 다시 읽은 횟수: " + holder.optimisticMisses());
+    }
+
+    @Test
+    @DisplayName("Copy-on-write::읽는 쪽은 교체 전 스냅샷을 계속 본다")
+    public void testCopyOnWriteSnapshot() {
+        ReadMostlyHolder<Map<String, String>> routes = ReadMostlyHolder.copyOnWrite(Map.of("/users", "user-service"));
+        Map<String, String> before = routes.read(Function.identity());
+
+        routes.update(current -> {
+            Map<String, String> next = new HashMap<>(current);
+            next.put("/orders", "order-service");
+            return Map.copyOf(next);
+        });
+
+        assertNull(before.get("/orders"), "교체 전 스냅샷은 바뀌지 않아야 합니다.");
+        assertEquals("order-service", routes.read(map -> map.get("/orders")));
+        assertEquals("user-service", routes.read(map -> map.get("/users")));
+    }
+
+    // 비교 대상: 읽기마다 ReentrantReadWriteLock의 읽기 락을 잡는다
+    static class ReadWriteLockHolder<T> implements ReadMostlyHolder<T> {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private T state;
+
+        ReadWriteLockHolder(T initial) {
+            this.state = initial;
+        }
+
+        @Override
+        public <R> R read(Function<? super T, ? extends R> reader) {
+            lock.readLock().lock();
+            try {
+                return reader.apply(state);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void update(UnaryOperator<T> writer) {
+            lock.writeLock().lock();
+            try {
+                state = writer.apply(state);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static final int READER_COUNT = 4;
+    private static final long MEASURE_MILLIS = 100;
+    private static final int ROUTE_COUNT = 64;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("쓰기 빈도별 ReentrantReadWriteLock, StampedLock, Copy-on-write의 읽기 처리량 비교")
+    public void testReadThroughputByWriteRate() throws InterruptedException {
+        Map<String, Supplier<ReadMostlyHolder<Map<String, String>>>> holders = new LinkedHashMap<>();
+        holders.put("ReentrantReadWriteLock", () -> new ReadWriteLockHolder<>(Map.copyOf(routes())));
+        holders.put("StampedLock", () -> ReadMostlyHolder.stamped(Map.copyOf(routes())));
+        holders.put("CopyOnWrite", () -> ReadMostlyHolder.copyOnWrite(Map.copyOf(routes())));
+
+        // JIT 워밍업
+        for (Map.Entry<String, Supplier<ReadMostlyHolder<Map<String, String>>>> entry : holders.entrySet()) {
+            measureReads(entry.getValue().get(), 1_000);
+        }
+
+        // 초당 쓰기 횟수 (0이면 쓰기 없음)
+        long[] writesPerSecond = {0, 100, 10_000, 100_000};
+        for (long writeRate : writesPerSecond) {
+            for (Map.Entry<String, Supplier<ReadMostlyHolder<Map<String, String>>>> entry : holders.entrySet()) {
+                long reads = measureReads(entry.getValue().get(), writeRate);
+                System.out.printf("writes/s=%-7d %-23s %,10d reads/ms%n",
+                        writeRate, entry.getKey(), reads / MEASURE_MILLIS);
+                assertTrue(reads > 0);
+            }
+        }
+    }
+
+    private static Map<String, String> routes() {
+        Map<String, String> routes = new HashMap<>();
+        for (int i = 0; i < ROUTE_COUNT; i++) {
+            routes.put("/path" + i, "service" + i);
+        }
+        return routes;
+    }
+
+    private long measureReads(ReadMostlyHolder<Map<String, String>> holder, long writesPerSecond)
+            throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong totalReads = new AtomicLong();
+
+        Thread writer = new Thread(() -> {
+            long intervalNanos = writesPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / writesPerSecond;
+            int version = 0;
+            while (running.get() && intervalNanos > 0) {
+                String target = "service" + (version++ % ROUTE_COUNT);
+                // 세 구현 모두 같은 비용을 치르도록 매번 새 불변 맵을 설치한다
+                holder.update(current -> {
+                    Map<String, String> next = new HashMap<>(current);
+                    next.put("/path0", target);
+                    return Map.copyOf(next);
+                });
+                LockSupport.parkNanos(intervalNanos);
+            }
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READER_COUNT; i++) {
+            readers.add(new Thread(() -> {
+                long reads = 0;
+                int index = 0;
+                while (running.get()) {
+                    String key = "/path" + (index++ & (ROUTE_COUNT - 1));
+                    if (holder.read(routes -> routes.get(key)) != null) {
+                        reads++;
+                    }
+                }
+                totalReads.addAndGet(reads);
+            }));
+        }
+
+        writer.start();
+        readers.forEach(Thread::start);
+        TimeUnit.MILLISECONDS.sleep(MEASURE_MILLIS);
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        writer.join();
+        return totalReads.get();
+    }
+}
@@ -0,0 +1,350 @@
+package concurrency.version5;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BRAVO(Biased Locking for Reader-Writer Locks) 방식의 읽기 편향 ReadWriteLock.
+ *
+ * ReentrantReadWriteLock은 모든 읽기 스레드가 같은 state 워드를 CAS하므로 코어가 늘수록 캐시 라인이 오간다.
+ * 여기서는 읽기 편향(readBias)이 켜져 있는 동안 읽기 스레드가 자기 스레드에 해당하는 칸 하나만 표시하고 들어간다.
+ * 칸은 캐시 라인 하나씩 떨어져 있어 읽기 스레드끼리 공유하는 쓰기가 없다.
+ * 쓰기 스레드는 내부 ReentrantReadWriteLock의 쓰기 락을 잡은 뒤 편향을 끄고 표시된 칸이 모두 빌 때까지 기다린다.
+ * 편향을 끄는 비용이 크므로, 기다린 시간의 INHIBIT_MULTIPLIER배 동안은 편향을 다시 켜지 않는다.
+ *
+ * 칸이 다른 스레드와 겹치거나 편향이 꺼져 있으면 내부 락의 읽기 락으로 돌아가므로 동작은 항상 ReentrantReadWriteLock과 같다.
+ */
+public class ReaderBiasedReadWriteLock implements ReadWriteLock {
+
+    // 참조 하나를 4바이트로 보면 16칸이 캐시 라인 하나(64바이트)다
+    private static final int STRIDE = 16;
+    private static final int INHIBIT_MULTIPLIER = 9;
+
+    private final ReentrantReadWriteLock underlying;
+    private final AtomicReferenceArray<Thread> visibleReaders;
+    private final int mask;
+    private final ThreadLocal<ReaderState> readerState = ThreadLocal.withInitial(ReaderState::new);
+    private final ReadLock readLock = new ReadLock();
+    private final WriteLock writeLock = new WriteLock();
+
+    private volatile boolean readBias = true;
+    private volatile long inhibitUntil;
+    // 편향을 끄고 칸이 비기를 기다리다 tryLock이 포기한 경우 0이 아니다. 쓰기 락을 잡은 스레드만 읽고 쓴다
+    private long revocationStart;
+
+    // 이 스레드가 편향 경로로 잡은 읽기 락의 칸과 재진입 횟수
+    private static final class ReaderState {
+        int slot = -1;
+        int fastHolds;
+    }
+
+    public ReaderBiasedReadWriteLock() {
+        this(false);
+    }
+
+    public ReaderBiasedReadWriteLock(boolean fair) {
+        this.underlying = new ReentrantReadWriteLock(fair);
+        // 스레드가 코어 수보다 많아도 칸이 잘 겹치지 않도록 넉넉하게 잡는다
+        int slots = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4) - 1) << 1;
+        this.mask = slots - 1;
+        this.visibleReaders = new AtomicReferenceArray<>(slots * STRIDE);
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    boolean isReadBiased() {
+        return readBias;
+    }
+
+    private int slotOf(Thread thread) {
+        int h = (int) thread.getId() * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & mask) * STRIDE;
+    }
+
+    /**
+     * 편향 경로로 읽기 락을 잡아 본다. 칸을 차지한 뒤 편향이 여전히 켜져 있어야 성공이다.
+     * 쓰기 스레드는 편향을 끈 다음 칸을 확인하므로 둘 중 하나는 반드시 상대를 본다.
+     */
+    private boolean tryFastRead(ReaderState state) {
+        if (state.fastHolds > 0) {
+            state.fastHolds++;
+            return true;
+        }
+        if (!readBias) {
+            return false;
+        }
+        Thread current = Thread.currentThread();
+        int slot = slotOf(current);
+        if (!visibleReaders.compareAndSet(slot, null, current)) {
+            return false;
+        }
+        if (readBias) {
+            state.slot = slot;
+            state.fastHolds = 1;
+            return true;
+        }
+        visibleReaders.set(slot, null);
+        return false;
+    }
+
+    // 내부 읽기 락을 잡고 있으면 쓰기 스레드가 없으므로 금지 기간이 끝났을 때 편향을 다시 켠다
+    private void afterSlowRead() {
+        if (!readBias && !underlying.isWriteLocked() && System.nanoTime() - inhibitUntil >= 0) {
+            readBias = true;
+        }
+    }
+
+    /**
+     * 편향을 끄고 편향 경로로 들어온 읽기 스레드가 모두 나갈 때까지 기다린다. deadline을 넘기면 false.
+     * 이때 편향은 꺼진 채로 남으므로 다음 쓰기 스레드가 이어서 기다린다.
+     */
+    private boolean revokeBias(long deadline, boolean timed, boolean interruptible) throws InterruptedException {
+        if (readBias) {
+            readBias = false;
+            revocationStart = System.nanoTime();
+        } else if (revocationStart == 0) {
+            return true;
+        }
+        for (int i = 0; i < visibleReaders.length(); i += STRIDE) {
+            int spins = 0;
+            while (visibleReaders.get(i) != null) {
+                if (interruptible && Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timed && System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                if (++spins < 64) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+        long now = System.nanoTime();
+        inhibitUntil = now + (now - revocationStart) * INHIBIT_MULTIPLIER;
+        revocationStart = 0;
+        return true;
+    }
+
+    // 쓰기 락을 이미 잡은 상태에서 편향을 끈다. 조건 변수에서 돌아온 뒤처럼 인터럽트로 빠져나갈 수 없을 때 쓴다
+    private void revokeBiasUninterruptibly() {
+        try {
+            revokeBias(0, false, false);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private final class ReadLock implements Lock {
+
+        @Override
+        public void lock() {
+            ReaderState state = readerState.get();
+            if (!tryFastRead(state)) {
+                underlying.readLock().lock();
+                afterSlowRead();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            ReaderState state = readerState.get();
+            if (!tryFastRead(state)) {
+                underlying.readLock().lockInterruptibly();
+                afterSlowRead();
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            ReaderState state = readerState.get();
+            if (tryFastRead(state)) {
+                return true;
+            }
+            if (underlying.readLock().tryLock()) {
+                afterSlowRead();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            ReaderState state = readerState.get();
+            if (tryFastRead(state)) {
+                return true;
+            }
+            if (underlying.readLock().tryLock(time, unit)) {
+                afterSlowRead();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            ReaderState state = readerState.get();
+            if (state.fastHolds > 0) {
+                if (--state.fastHolds == 0) {
+                    visibleReaders.set(state.slot, null);
+                    state.slot = -1;
+                }
+                return;
+            }
+            underlying.readLock().unlock();
+        }
+
+        // ReentrantReadWriteLock.ReadLock과 마찬가지로 읽기 락에는 조건 변수가 없다
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class WriteLock implements Lock {
+
+        @Override
+        public void lock() {
+            underlying.writeLock().lock();
+            revokeBiasUninterruptibly();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            underlying.writeLock().lockInterruptibly();
+            try {
+                revokeBias(0, false, true);
+            } catch (InterruptedException e) {
+                underlying.writeLock().unlock();
+                throw e;
+            }
+        }
+
+        /**
+         * 편향 경로로 들어온 읽기 스레드가 남아 있으면 기다리지 않고 false를 반환한다.
+         */
+        @Override
+        public boolean tryLock() {
+            if (!underlying.writeLock().tryLock()) {
+                return false;
+            }
+            try {
+                if (revokeBias(System.nanoTime(), true, false)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            underlying.writeLock().unlock();
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(time);
+            if (!underlying.writeLock().tryLock(time, unit)) {
+                return false;
+            }
+            boolean revoked = false;
+            try {
+                revoked = revokeBias(deadline, true, true);
+            } finally {
+                if (!revoked) {
+                    underlying.writeLock().unlock();
+                }
+            }
+            return revoked;
+        }
+
+        @Override
+        public void unlock() {
+            underlying.writeLock().unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return new WriteCondition(underlying.writeLock().newCondition());
+        }
+    }
+
+    /**
+     * 쓰기 락의 조건 변수. await 동안에는 내부 쓰기 락이 풀리므로 읽기 스레드가 편향을 다시 켤 수 있다.
+     * 그래서 await가 어떻게 끝나든 쓰기 락을 되찾은 직후 편향을 다시 끄고 편향 경로의 읽기 스레드가 나가기를 기다린다.
+     */
+    private final class WriteCondition implements Condition {
+        private final Condition delegate;
+
+        WriteCondition(Condition delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            try {
+                delegate.await();
+            } finally {
+                revokeBiasUninterruptibly();
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            try {
+                delegate.awaitUninterruptibly();
+            } finally {
+                revokeBiasUninterruptibly();
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            try {
+                return delegate.awaitNanos(nanosTimeout);
+            } finally {
+                revokeBiasUninterruptibly();
+            }
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            try {
+                return delegate.await(time, unit);
+            } finally {
+                revokeBiasUninterruptibly();
+            }
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            try {
+                return delegate.awaitUntil(deadline);
+            } finally {
+                revokeBiasUninterruptibly();
+            }
+        }
+
+        @Override
+        public void signal() {
+            delegate.signal();
+        }
+
+        @Override
+        public void signalAll() {
+            delegate.signalAll();
+        }
+    }
+}
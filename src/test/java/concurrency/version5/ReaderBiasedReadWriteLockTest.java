@@ -0,0 +1,207 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class ReaderBiasedReadWriteLockTest {
+
+    @Test
+    @DisplayName("ReaderBiasedReadWriteLock::읽기 락은 재진입할 수 있고, 쓰기 락을 잡으면 읽기 편향이 꺼진다")
+    public void testReentrantReadAndRevoke() {
+        ReaderBiasedReadWriteLock lock = new ReaderBiasedReadWriteLock();
+        assertTrue(lock.isReadBiased());
+
+        lock.readLock().lock();
+        lock.readLock().lock();
+        lock.readLock().unlock();
+        lock.readLock().unlock();
+
+        lock.writeLock().lock();
+        assertFalse(lock.isReadBiased());
+        // 쓰기 락을 잡은 채 읽기 락으로 내려갈 수 있다
+        lock.readLock().lock();
+        lock.writeLock().unlock();
+        lock.readLock().unlock();
+    }
+
+    @Test
+    @DisplayName("ReaderBiasedReadWriteLock::편향 경로로 읽는 스레드가 있으면 쓰기 tryLock()은 실패한다")
+    public void testWriteTryLockFailsWhileReading() throws InterruptedException {
+        ReaderBiasedReadWriteLock lock = new ReaderBiasedReadWriteLock();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread reader = new Thread(() -> {
+            lock.readLock().lock();
+            try {
+                reading.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+        reader.start();
+        reading.await();
+
+        assertFalse(lock.writeLock().tryLock());
+        assertFalse(lock.writeLock().tryLock(50, TimeUnit.MILLISECONDS));
+
+        done.countDown();
+        assertTrue(lock.writeLock().tryLock(1, TimeUnit.SECONDS));
+        lock.writeLock().unlock();
+        reader.join();
+    }
+
+    @Test
+    @DisplayName("ReaderBiasedReadWriteLock::쓰기 스레드가 await()에서 돌아오면 기다리는 동안 켜진 편향을 다시 끄므로 읽기 스레드가 들어오지 못한다")
+    public void testConditionAwaitRevokesBias() throws InterruptedException {
+        ReaderBiasedReadWriteLock lock = new ReaderBiasedReadWriteLock();
+        Condition condition = lock.writeLock().newCondition();
+        AtomicBoolean biasRestored = new AtomicBoolean();
+        CountDownLatch waiting = new CountDownLatch(1);
+        CountDownLatch reacquired = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread writer = new Thread(() -> {
+            lock.writeLock().lock();
+            try {
+                waiting.countDown();
+                // signal()하려면 쓰기 락을 잡아야 하고 그러면 편향이 꺼지므로, 시간 제한으로 깨어나게 한다
+                while (!biasRestored.get()) {
+                    condition.await(10, TimeUnit.MILLISECONDS);
+                }
+                reacquired.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+        writer.start();
+        waiting.await();
+
+        // 쓰기 스레드가 기다리는 동안 읽기가 내부 락으로 들어가 편향을 다시 켠다
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!lock.isReadBiased() && System.nanoTime() - deadline < 0) {
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        }
+        assertTrue(lock.isReadBiased());
+        biasRestored.set(true);
+        assertTrue(reacquired.await(5, TimeUnit.SECONDS));
+
+        assertFalse(lock.isReadBiased());
+        assertFalse(lock.readLock().tryLock());
+        release.countDown();
+        writer.join();
+        assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+    }
+
+    @Test
+    @DisplayName("ReaderBiasedReadWriteLock::읽기와 쓰기가 섞여도 쓰기 도중의 값을 읽지 않는다")
+    public void testMutualExclusion() throws InterruptedException {
+        ReaderBiasedReadWriteLock lock = new ReaderBiasedReadWriteLock();
+        long[] pair = new long[2];
+        AtomicBoolean torn = new AtomicBoolean();
+        int numberOfThreads = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            boolean writer = i == 0;
+            executor.submit(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    if (writer && j % 100 == 0) {
+                        lock.writeLock().lock();
+                        try {
+                            pair[0]++;
+                            pair[1]++;
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    } else {
+                        lock.readLock().lock();
+                        try {
+                            if (pair[0] != pair[1]) {
+                                torn.set(true);
+                            }
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertFalse(torn.get());
+        assertEquals(1000, pair[0]);
+    }
+
+    private static final int OPERATION_COUNT = 1_000_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("읽기 스레드 수를 코어 수까지 늘리며 ReentrantReadWriteLock과 읽기 처리량 비교")
+    public void testReadScaling() throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        measureReadThroughput("ReentrantReadWriteLock", ReentrantReadWriteLock::new, 1);  // 워밍업
+        measureReadThroughput("ReaderBiasedReadWriteLock", ReaderBiasedReadWriteLock::new, 1);
+
+        // 1, 2, 4, ... 코어 수
+        for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+            long rwLock = measureReadThroughput("ReentrantReadWriteLock", ReentrantReadWriteLock::new, threads);
+            long biased = measureReadThroughput("ReaderBiasedReadWriteLock", ReaderBiasedReadWriteLock::new, threads);
+            System.out.printf("readers=%d ReentrantReadWriteLock: %,d ops/s, ReaderBiasedReadWriteLock: %,d ops/s%n",
+                    threads, rwLock, biased);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    private long measureReadThroughput(String name, Supplier<ReadWriteLock> factory, int threads)
+            throws InterruptedException {
+        ReadWriteLock lock = factory.get();
+        AtomicLong sink = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                long local = 0;
+                for (int j = 0; j < OPERATION_COUNT; j++) {
+                    lock.readLock().lock();
+                    try {
+                        local += j;
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+                sink.addAndGet(local);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), name);
+        long elapsed = System.nanoTime() - start;
+        return (long) threads * OPERATION_COUNT * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
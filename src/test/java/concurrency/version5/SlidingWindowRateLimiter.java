@@ -0,0 +1,93 @@
+package concurrency.version5;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 슬라이딩 윈도 로그 방식의 락 없는 rate limiter.
+ *
+ * 최근 limit개 허가의 발급 시각을 링 버퍼에 남기고, limit개 전 허가가 윈도 밖으로 나갔을 때만 새 허가를 준다.
+ * 토큰 버킷과 달리 어느 구간을 잘라 봐도 window 안에 limit개를 넘지 않는다.
+ * 발급 순번은 CAS로 정하고 시각은 그 직후에 기록하므로, 순번을 얻은 직후 시각을 쓰기 전에
+ * 한 바퀴 뒤의 순번이 같은 칸을 읽으면 그 사이 동시에 진행 중인 수만큼 더 허용될 수 있다.
+ */
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    private final int limit;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    // 다음에 발급할 허가의 순번
+    private final AtomicLong sequence = new AtomicLong();
+    // 순번 % limit 칸에 그 순번의 발급 시각
+    private final AtomicLongArray issuedAt;
+
+    public SlidingWindowRateLimiter(int limit, long window, TimeUnit unit) {
+        this(limit, window, unit, System::nanoTime);
+    }
+
+    SlidingWindowRateLimiter(int limit, long window, TimeUnit unit, LongSupplier clock) {
+        if (limit < 1 || window <= 0) {
+            throw new IllegalArgumentException("limit >= 1, window > 0 이어야 합니다.");
+        }
+        this.limit = limit;
+        this.windowNanos = unit.toNanos(window);
+        this.clock = clock;
+        this.issuedAt = new AtomicLongArray(limit);
+        long longAgo = clock.getAsLong() - windowNanos;
+        for (int i = 0; i < limit; i++) {
+            issuedAt.set(i, longAgo);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        return waitNanos(permits, 0) == 0;
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (;;) {
+            long remaining = deadline - System.nanoTime();
+            long wait = waitNanos(permits, Math.max(remaining, 0));
+            if (wait == 0) {
+                return true;
+            }
+            if (wait < 0) {
+                return false;
+            }
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * 허가를 얻었으면 0, 얻지 못했지만 maxWait 안에 자리가 날 것 같으면 그때까지의 나노초, 그보다 오래 걸리면 -1.
+     */
+    private long waitNanos(int permits, long maxWait) {
+        if (permits < 1 || permits > limit) {
+            throw new IllegalArgumentException("permits는 1 이상 limit(" + limit + ") 이하여야 합니다: " + permits);
+        }
+        for (;;) {
+            long now = clock.getAsLong();
+            long next = sequence.get();
+            // 이번에 발급할 마지막 허가보다 limit개 앞선 허가의 발급 시각
+            long oldest = issuedAt.get((int) ((next + permits - 1) % limit));
+            long wait = oldest + windowNanos - now;
+            if (wait > 0) {
+                return wait <= maxWait ? wait : -1;
+            }
+            if (sequence.compareAndSet(next, next + permits)) {
+                for (long i = next; i < next + permits; i++) {
+                    issuedAt.set((int) (i % limit), now);
+                }
+                return 0;
+            }
+        }
+    }
+}
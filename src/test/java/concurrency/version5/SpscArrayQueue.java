@@ -0,0 +1,201 @@
+package concurrency.version5;
+
+import concurrency.version1_4.Sequence;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 생산자 스레드 하나, 소비자 스레드 하나 전용의 크기 제한 배열 큐.
+ *
+ * 양쪽 모두 자기 인덱스는 혼자 쓰므로 CAS가 필요 없고, 원소를 쓴 뒤 인덱스를 release 쓰기(lazySet)로 올리기만 하면 된다.
+ * 상대 인덱스는 매번 읽지 않고 마지막에 읽은 값을 캐시해 두었다가, 캐시로 판단해 가득 찼거나 비었을 때만 다시 읽는다.
+ * 그래서 상대방 캐시 라인을 읽는 일이 원소마다가 아니라 버퍼를 돌 때 몇 번으로 줄어든다.
+ *
+ * drain()과 fill()은 여러 원소를 처리한 뒤 인덱스를 한 번만 올려 메모리 배리어 비용을 묶음 전체에 나눈다.
+ * 둘 이상의 스레드가 offer()하거나 poll()하면 동작이 정의되지 않는다.
+ */
+public class SpscArrayQueue<E> extends AbstractQueue<E> {
+
+    /**
+     * 한쪽 스레드만 읽고 쓰는 캐시 값. 상대 쪽 인덱스와 캐시 라인을 공유하지 않도록 패딩한다.
+     */
+    static final class LocalCache {
+        long p01, p02, p03, p04, p05, p06, p07;
+        long value;
+        long p11, p12, p13, p14, p15, p16, p17;
+    }
+
+    private final Object[] buffer;
+    private final int mask;
+    private final Sequence producerIndex = new Sequence(0);
+    private final Sequence consumerIndex = new Sequence(0);
+    // 생산자가 이 인덱스 전까지는 consumerIndex를 다시 읽지 않고 쓴다
+    private final LocalCache producerLimit = new LocalCache();
+    // 소비자가 마지막으로 읽은 producerIndex
+    private final LocalCache producerIndexCache = new LocalCache();
+
+    public SpscArrayQueue(int capacity) {
+        this.buffer = new Object[roundToPowerOfTwo(capacity)];
+        this.mask = buffer.length - 1;
+        this.producerLimit.value = buffer.length;
+    }
+
+    static int roundToPowerOfTwo(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity는 2 이상 2^30 이하여야 합니다: " + capacity);
+        }
+        return Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long producer = producerIndex.get();
+        if (producer >= producerLimit.value && !refreshProducerLimit(producer + 1)) {
+            return false;
+        }
+        buffer[(int) producer & mask] = e;
+        producerIndex.set(producer + 1);
+        return true;
+    }
+
+    // required번째 칸까지 쓸 수 있는지 consumerIndex를 다시 읽어 확인한다
+    private boolean refreshProducerLimit(long required) {
+        producerLimit.value = consumerIndex.get() + buffer.length;
+        return required <= producerLimit.value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long consumer = consumerIndex.get();
+        if (consumer >= producerIndexCache.value) {
+            producerIndexCache.value = producerIndex.get();
+            if (consumer >= producerIndexCache.value) {
+                return null;
+            }
+        }
+        int index = (int) consumer & mask;
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        consumerIndex.set(consumer + 1);
+        return e;
+    }
+
+    /**
+     * 소비자 스레드만 호출할 수 있다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long consumer = consumerIndex.get();
+        if (consumer >= producerIndex.get()) {
+            return null;
+        }
+        return (E) buffer[(int) consumer & mask];
+    }
+
+    /**
+     * 지금 들어 있는 원소를 최대 limit개 꺼내 consumer에 넘기고, consumerIndex는 마지막에 한 번만 올린다.
+     * consumer가 예외를 던져도 그때까지 꺼낸 원소만큼은 인덱스를 올린다. 소비자 스레드만 호출할 수 있다.
+     *
+     * @return 꺼낸 원소 수
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long start = consumerIndex.get();
+        long available = producerIndex.get() - start;
+        int max = (int) Math.min(limit, available);
+        int count = 0;
+        try {
+            while (count < max) {
+                int index = (int) (start + count) & mask;
+                E e = (E) buffer[index];
+                buffer[index] = null;
+                count++;
+                consumer.accept(e);
+            }
+        } finally {
+            if (count > 0) {
+                consumerIndex.set(start + count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 빈 칸에 supplier가 주는 원소를 최대 limit개 채우고, producerIndex는 마지막에 한 번만 올린다.
+     * 생산자 스레드만 호출할 수 있다.
+     *
+     * @return 채운 원소 수
+     */
+    public int fill(Supplier<? extends E> supplier, int limit) {
+        long start = producerIndex.get();
+        if (start + limit > producerLimit.value) {
+            refreshProducerLimit(start + limit);
+        }
+        int count = (int) Math.min(limit, producerLimit.value - start);
+        for (int i = 0; i < count; i++) {
+            E e = supplier.get();
+            if (e == null) {
+                throw new NullPointerException();
+            }
+            buffer[(int) (start + i) & mask] = e;
+        }
+        if (count > 0) {
+            producerIndex.set(start + count);
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        for (;;) {
+            long before = consumerIndex.get();
+            long producer = producerIndex.get();
+            long after = consumerIndex.get();
+            if (before == after) {
+                return (int) (producer - after);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex.get() >= producerIndex.get();
+    }
+
+    /**
+     * 호출 시점에 들어 있던 원소의 스냅샷을 순회한다. remove()는 지원하지 않는다.
+     * 순회 중에 소비자가 꺼낸 칸은 건너뛰므로 약한 일관성만 보장한다.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long end = producerIndex.get();
+        for (long position = Math.max(consumerIndex.get(), end - buffer.length); position < end; position++) {
+            Object e = buffer[(int) position & mask];
+            if (e != null) {
+                snapshot.add((E) e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + buffer.length + "]";
+    }
+}
@@ -0,0 +1,194 @@
+package concurrency.version5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class SpscArrayQueueTest {
+
+    @Test
+    @DisplayName("SpscArrayQueue::가득 차면 offer()가 실패하고, 여러 바퀴를 돌아도 순서를 지킨다")
+    public void testOfferPoll() {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(round * 10 + i));
+            }
+            assertFalse(queue.offer(-1));
+            assertEquals(4, queue.size());
+            assertEquals(round * 10, queue.peek());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(round * 10 + i, queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    @DisplayName("SpscArrayQueue::fill()은 빈 칸만큼만 채우고 drain()은 limit개까지만 꺼낸다")
+    public void testDrainAndFill() {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(8);
+        AtomicInteger next = new AtomicInteger();
+        assertEquals(5, queue.fill(next::getAndIncrement, 5));
+        assertEquals(3, queue.fill(next::getAndIncrement, 5), "남은 칸은 3개");
+        assertEquals(0, queue.fill(next::getAndIncrement, 5));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(6, queue.drain(drained::add, 6));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), drained);
+        assertEquals(2, queue.drain(drained::add, 100));
+        assertEquals(0, queue.drain(drained::add, 100));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    @DisplayName("SpscArrayQueue::drain()의 consumer가 예외를 던져도 이미 꺼낸 원소는 다시 나오지 않는다")
+    public void testDrainConsumerThrows() {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(8);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> queue.drain(e -> {
+            drained.add(e);
+            if (e == 2) {
+                throw new IllegalStateException("의도한 실패");
+            }
+        }, 100));
+        assertEquals(List.of(0, 1, 2), drained);
+        assertEquals(2, queue.size());
+        assertEquals(3, queue.poll());
+        assertTrue(queue.offer(5));
+        assertEquals(List.of(4, 5), new ArrayList<>(queue));
+    }
+
+    @Test
+    @DisplayName("SpscArrayQueue::iterator()는 들어 있는 원소의 스냅샷을 순서대로 돌려주어 contains()와 toArray()를 쓸 수 있다")
+    public void testSnapshotIterator() {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+            if (i % 2 == 1) {
+                queue.poll();
+            }
+        }
+        assertEquals(List.of(3, 4, 5), new ArrayList<>(queue));
+        assertTrue(queue.contains(4));
+        assertFalse(queue.contains(0));
+        assertEquals(3, queue.toArray().length);
+        assertThrows(UnsupportedOperationException.class, () -> queue.iterator().remove());
+    }
+
+    @Test
+    @DisplayName("SpscArrayQueue::생산자 하나와 소비자 하나가 동시에 쓰면 모든 원소를 순서대로 받는다")
+    public void testConcurrentOrder() throws InterruptedException {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(128);
+        int count = 1_000_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; ) {
+                int added;
+                if (i % 2 == 0) {
+                    added = queue.offer(i) ? 1 : 0;
+                } else {
+                    int[] value = {i};
+                    added = queue.fill(() -> value[0]++, Math.min(16, count - i));
+                }
+                if (added == 0) {
+                    Thread.yield();
+                }
+                i += added;
+            }
+        });
+        producer.start();
+
+        int[] expected = {0};
+        boolean[] ordered = {true};
+        while (expected[0] < count) {
+            int drained = queue.drain(e -> {
+                if (e != expected[0]++) {
+                    ordered[0] = false;
+                }
+            }, 64);
+            if (drained == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertTrue(ordered[0]);
+    }
+
+    private static final int EVENT_COUNT = 2_000_000;
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("생산자 하나, 소비자 하나일 때 ConcurrentLinkedQueue, ArrayBlockingQueue, MpmcArrayQueue, "
+            + "SpscArrayQueue(offer/poll, fill/drain)의 처리량 비교")
+    public void testThroughput() throws Exception {
+        Benchmark.of("events/s")
+                .add("ConcurrentLinkedQueue", () -> measure(new ConcurrentLinkedQueue<>()))
+                .add("ArrayBlockingQueue", () -> measure(new ArrayBlockingQueue<>(1024)))
+                .add("MpmcArrayQueue", () -> measure(new MpmcArrayQueue<>(1024)))
+                .add("SpscArrayQueue", () -> measure(new SpscArrayQueue<>(1024)))
+                .add("SpscArrayQueue(fill/drain)", () -> measureBatch(new SpscArrayQueue<>(1024)))
+                .run();
+    }
+
+    private long measure(Queue<Integer> queue) throws InterruptedException {
+        Integer element = 1;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                while (!queue.offer(element)) {
+                    Thread.yield();
+                }
+            }
+        });
+        long start = System.nanoTime();
+        producer.start();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            while (queue.poll() == null) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        return EVENT_COUNT * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+    }
+
+    private long measureBatch(SpscArrayQueue<Integer> queue) throws InterruptedException {
+        Integer element = 1;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < EVENT_COUNT; ) {
+                int filled = queue.fill(() -> element, Math.min(256, EVENT_COUNT - i));
+                if (filled == 0) {
+                    Thread.yield();
+                }
+                i += filled;
+            }
+        });
+        long start = System.nanoTime();
+        producer.start();
+        int received = 0;
+        while (received < EVENT_COUNT) {
+            int drained = queue.drain(e -> { }, 256);
+            if (drained == 0) {
+                Thread.yield();
+            }
+            received += drained;
+        }
+        producer.join();
+        return EVENT_COUNT * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,121 @@
+package concurrency.version5;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 락 없는 토큰 버킷.
+ *
+ * 토큰 수와 마지막 충전 시각을 따로 두지 않고, "버킷이 비었다면 다음 토큰이 생길 시각"(theoretical arrival time)
+ * 하나의 long으로 상태를 표현한다(GCRA). 토큰은 요청이 올 때 System.nanoTime()과의 차이로 계산하므로
+ * 충전용 스레드가 필요 없고, 모든 갱신은 AtomicLong 하나에 대한 CAS 한 번이다.
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+    private final long nanosPerPermit;
+    // 버킷이 가득 찼을 때 한꺼번에 쓸 수 있는 만큼의 시간
+    private final long burstNanos;
+    private final int capacity;
+    private final LongSupplier clock;
+    private final AtomicLong arrivalTime;
+
+    /**
+     * @param permitsPerSecond 초당 충전되는 토큰 수
+     * @param capacity         버킷 크기 (한 번에 쓸 수 있는 최대 토큰 수)
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond, int capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(double permitsPerSecond, int capacity, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("permitsPerSecond > 0, capacity >= 1 이어야 합니다.");
+        }
+        this.nanosPerPermit = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = nanosPerPermit * capacity;
+        this.capacity = capacity;
+        this.clock = clock;
+        // 처음에는 버킷이 가득 찬 상태
+        this.arrivalTime = new AtomicLong(clock.getAsLong());
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        checkPermits(permits);
+        long cost = permits * nanosPerPermit;
+        for (;;) {
+            long now = clock.getAsLong();
+            long current = arrivalTime.get();
+            long next = Math.max(current - now, 0) + now + cost;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (arrivalTime.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        checkPermits(permits);
+        long timeoutNanos = unit.toNanos(timeout);
+        long cost = permits * nanosPerPermit;
+        for (;;) {
+            long now = clock.getAsLong();
+            long current = arrivalTime.get();
+            long next = Math.max(current - now, 0) + now + cost;
+            long delay = next - now - burstNanos;
+            if (delay > timeoutNanos) {
+                return false;
+            }
+            if (arrivalTime.compareAndSet(current, next)) {
+                sleep(delay);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 허가를 미리 예약하고, 예약한 허가를 쓸 수 있을 때까지 기다려야 하는 나노초를 반환한다 (0이면 바로 사용 가능).
+     * 기다리지 않으므로, 호출한 쪽이 반환값만큼 늦춰 실행하거나 스케줄러에 넘기면 된다.
+     */
+    public long reserve(int permits) {
+        checkPermits(permits);
+        long cost = permits * nanosPerPermit;
+        for (;;) {
+            long now = clock.getAsLong();
+            long current = arrivalTime.get();
+            long next = Math.max(current - now, 0) + now + cost;
+            if (arrivalTime.compareAndSet(current, next)) {
+                return Math.max(0, next - now - burstNanos);
+            }
+        }
+    }
+
+    // 지금 바로 쓸 수 있는 토큰 수
+    public long availablePermits() {
+        long now = clock.getAsLong();
+        long debt = Math.max(arrivalTime.get() - now, 0);
+        return Math.max(0, (burstNanos - debt) / nanosPerPermit);
+    }
+
+    private void checkPermits(int permits) {
+        if (permits < 1 || permits > capacity) {
+            throw new IllegalArgumentException("permits는 1 이상 capacity(" + capacity + ") 이하여야 합니다: " + permits);
+        }
+    }
+
+    private static void sleep(long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        while (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            nanos = deadline - System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package concurrency.version8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * 원소 수, 원소당 연산 비용, 소스 타입, ForkJoinPool 병렬도를 바꿔가며
+ * 순차 스트림 대비 병렬 스트림의 속도 향상(speedup)과 손익분기점을 측정한다.
+ *
+ * 한 번만 재서 비교하면 JIT 워밍업과 기기 상태에 따라 결과가 뒤집히므로,
+ * 워밍업 후 여러 번 측정한 중앙값으로 비교한다.
+ */
+public class ParallelStreamScalingBenchmark {
+
+    // 측정 결과가 JIT에 의해 제거되지 않도록 결과를 흘려보내는 곳
+    private static volatile long sink;
+
+    enum SourceType {
+        ARRAY_LIST {
+            @Override
+            Source create(int size) {
+                List<Integer> list = new ArrayList<>(size);
+                fill(list, size);
+                return parallel -> parallel ? list.parallelStream().mapToLong(Integer::longValue)
+                                            : list.stream().mapToLong(Integer::longValue);
+            }
+        },
+        LINKED_LIST {
+            @Override
+            Source create(int size) {
+                List<Integer> list = new LinkedList<>();
+                fill(list, size);
+                return parallel -> parallel ? list.parallelStream().mapToLong(Integer::longValue)
+                                            : list.stream().mapToLong(Integer::longValue);
+            }
+        },
+        INT_RANGE {
+            @Override
+            Source create(int size) {
+                return parallel -> parallel ? IntStream.range(0, size).parallel().asLongStream()
+                                            : IntStream.range(0, size).asLongStream();
+            }
+        },
+        HASH_SET {
+            @Override
+            Source create(int size) {
+                Collection<Integer> set = new HashSet<>(size * 2);
+                fill(set, size);
+                return parallel -> parallel ? set.parallelStream().mapToLong(Integer::longValue)
+                                            : set.stream().mapToLong(Integer::longValue);
+            }
+        };
+
+        abstract Source create(int size);
+
+        private static void fill(Collection<Integer> collection, int size) {
+            for (int i = 0; i < size; i++) {
+                collection.add(i);
+            }
+        }
+    }
+
+    // 같은 데이터로 순차/병렬 스트림을 반복 생성하기 위한 소스
+    interface Source {
+        LongStream stream(boolean parallel);
+    }
+
+    record Config(SourceType sourceType, int size, int cost, int parallelism) {
+    }
+
+    record Result(Config config, long sequentialNanos, long parallelNanos) {
+
+        double speedup() {
+            return (double) sequentialNanos / parallelNanos;
+        }
+    }
+
+    private final int warmupIterations;
+    private final int measureIterations;
+
+    public ParallelStreamScalingBenchmark(int warmupIterations, int measureIterations) {
+        if (warmupIterations < 0 || measureIterations < 1) {
+            throw new IllegalArgumentException("warmup >= 0, measure >= 1 이어야 합니다.");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+    }
+
+    /**
+     * ParallelStreamTest.complexComputation과 같은 나눗셈 루프를 cost 횟수만큼 수행한다.
+     * 루프가 상수로 접히지 않도록 이전 결과를 다음 계산에 섞는다.
+     */
+    static long compute(long n, int cost) {
+        int largePrime = 999_999_937;  // 큰 소수
+        long result = n;
+        for (int i = 0; i < cost; i++) {
+            result = (result * 31 + n + i) % largePrime;
+        }
+        return result;
+    }
+
+    public Result run(Config config) {
+        Source source = config.sourceType().create(config.size());
+        ForkJoinPool pool = new ForkJoinPool(config.parallelism());
+        try {
+            long sequential = measure(() -> runOnce(source, false, config.cost()));
+            // 병렬 스트림은 호출한 ForkJoinPool 안에서 실행되므로, 전용 풀에서 실행해 병렬도를 고정한다
+            long parallel = measure(() -> pool.submit(() -> runOnce(source, true, config.cost())).get());
+            return new Result(config, sequential, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long runOnce(Source source, boolean parallel, int cost) {
+        return source.stream(parallel).map(n -> compute(n, cost)).sum();
+    }
+
+    interface Task {
+        long run() throws InterruptedException, ExecutionException;
+    }
+
+    // 워밍업 후 측정한 실행 시간의 중앙값
+    private long measure(Task task) {
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                sink += task.run();
+            }
+            long[] samples = new long[measureIterations];
+            for (int i = 0; i < measureIterations; i++) {
+                long start = System.nanoTime();
+                sink += task.run();
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+            return Math.max(1, samples[samples.length / 2]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 소스 타입, 비용, 병렬도 조합마다 원소 수를 늘려가며 측정한 속도 향상 곡선을 반환한다.
+     * 각 곡선은 원소 수 오름차순이다.
+     */
+    public Map<String, List<Result>> sweep(List<SourceType> sourceTypes, int[] sizes, int[] costs,
+                                           int[] parallelisms) {
+        Map<String, List<Result>> curves = new LinkedHashMap<>();
+        for (SourceType sourceType : sourceTypes) {
+            for (int cost : costs) {
+                for (int parallelism : parallelisms) {
+                    List<Result> curve = new ArrayList<>();
+                    for (int size : sizes) {
+                        curve.add(run(new Config(sourceType, size, cost, parallelism)));
+                    }
+                    curves.put(sourceType + " cost=" + cost + " parallelism=" + parallelism, curve);
+                }
+            }
+        }
+        return curves;
+    }
+
+    /**
+     * 이 크기 이상부터는 병렬 스트림이 항상 순차 스트림보다 빨랐던 최소 원소 수.
+     * 측정한 범위 안에서 손익분기점이 없으면 -1을 반환한다.
+     */
+    static int breakEvenSize(List<Result> curve) {
+        int breakEven = -1;
+        for (int i = curve.size() - 1; i >= 0; i--) {
+            if (curve.get(i).speedup() < 1.0) {
+                break;
+            }
+            breakEven = curve.get(i).config().size();
+        }
+        return breakEven;
+    }
+
+    static void print(Map<String, List<Result>> curves) {
+        for (Map.Entry<String, List<Result>> entry : curves.entrySet()) {
+            System.out.println("[" + entry.getKey() + "]");
+            for (Result result : entry.getValue()) {
+                System.out.printf("  size=%-9d 순차=%,12dns 병렬=%,12dns speedup=%.2f%n",
+                        result.config().size(), result.sequentialNanos(), result.parallelNanos(), result.speedup());
+            }
+            int breakEven = breakEvenSize(entry.getValue());
+            System.out.println("  손익분기점: " + (breakEven < 0 ? "측정 범위 내 없음" : "size=" + breakEven));
+        }
+    }
+
+    // 전체 조합을 측정한다. 테스트에서는 일부 조합만 사용한다.
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ParallelStreamScalingBenchmark benchmark = new ParallelStreamScalingBenchmark(5, 10);
+        print(benchmark.sweep(
+                List.of(SourceType.values()),
+                new int[]{10, 100, 1_000, 10_000, 100_000, 1_000_000},
+                new int[]{1, 100, 10_000},
+                IntStream.of(1, 2, 4, cores).distinct().filter(p -> p <= cores).toArray()));
+    }
+}
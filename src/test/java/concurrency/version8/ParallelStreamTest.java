@@ -2,15 +2,18 @@ package concurrency.version8;
 
 import java.util.stream.IntStream;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ParallelStreamTest {
 
@@ -27,43 +30,58 @@ public class ParallelStreamTest {
         assertEquals(expectedSquares, squares);
     }
 
-    // 복잡한 연산을 수행하는 메서드
-    long complexComputation(Integer n) {
-        int largePrime = 999_999_937;  // 큰 소수
-        long result = 0;
-        for (int i = 0; i < 1_000_000; i++) {
-            result += n % largePrime;  // 복잡한 나눗셈 작업
-        }
-        return result;
+    @ParameterizedTest
+    @EnumSource(ParallelStreamScalingBenchmark.SourceType.class)
+    @Tag("benchmark")
+    @DisplayName("소스 타입별로 원소 수, 연산 비용, 병렬도를 바꿔가며 병렬 스트림의 속도 향상과 손익분기점을 측정한다")
+    void testParallelStreamScaling(ParallelStreamScalingBenchmark.SourceType sourceType) {
+        // 한 번의 측정으로 병렬/순차를 단정하면 기기에 따라 결과가 뒤집히므로, 결과는 출력만 하고 단정하지 않는다
+        ParallelStreamScalingBenchmark benchmark = new ParallelStreamScalingBenchmark(2, 3);
+        int[] parallelisms = IntStream.of(1, Runtime.getRuntime().availableProcessors()).distinct().toArray();
+        Map<String, List<ParallelStreamScalingBenchmark.Result>> curves = benchmark.sweep(
+                List.of(sourceType),
+                new int[]{100, 1_000, 10_000},
+                new int[]{1, 1_000},
+                parallelisms);
+
+        ParallelStreamScalingBenchmark.print(curves);
+
+        assertEquals(2 * parallelisms.length, curves.size());
+        curves.values().forEach(curve -> assertEquals(3, curve.size()));
     }
 
     @Test
-    @DisplayName("병렬 스트림의 처리 시간이 순차 스트림보다 더 짧아야 한다")
-    void testParallelStreamPerformance() {
-        List<Integer> numbers = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20);
-
-        // 순차 스트림의 실행 시간 측정
-        long sequentialStart = System.nanoTime();
-        numbers.stream()
-                .map(n -> complexComputation(n)) // 복잡한 연산 적용
-                .collect(Collectors.toList());
-        long sequentialEnd = System.nanoTime();
-        long sequentialDuration = sequentialEnd - sequentialStart;
-
-        // 병렬 스트림의 실행 시간 측정
-        long parallelStart = System.nanoTime();
-        numbers.parallelStream()
-                .map(n -> complexComputation(n)) // 동일한 복잡한 연산 적용
-                .collect(Collectors.toList());
-        long parallelEnd = System.nanoTime();
-        long parallelDuration = parallelEnd - parallelStart;
-
-        // 실행 시간 출력
-        System.out.println("순차 스트림 실행 시간: " + sequentialDuration);
-        System.out.println("병렬 스트림 실행 시간: " + parallelDuration);
-
-        // 병렬 스트림의 시간이 더 짧은지 확인
-        assertTrue(parallelDuration < sequentialDuration, "병렬 스트림의 실행 시간이 더 짧아야 합니다.");
+    @DisplayName("손익분기점은 그 크기부터 끝까지 병렬 스트림이 더 빨랐던 최소 원소 수이다")
+    void testBreakEvenSize() {
+        ParallelStreamScalingBenchmark.Config small = new ParallelStreamScalingBenchmark.Config(
+                ParallelStreamScalingBenchmark.SourceType.ARRAY_LIST, 10, 1, 2);
+        ParallelStreamScalingBenchmark.Config medium = new ParallelStreamScalingBenchmark.Config(
+                ParallelStreamScalingBenchmark.SourceType.ARRAY_LIST, 100, 1, 2);
+        ParallelStreamScalingBenchmark.Config large = new ParallelStreamScalingBenchmark.Config(
+                ParallelStreamScalingBenchmark.SourceType.ARRAY_LIST, 1_000, 1, 2);
+
+        // 작은 크기에서 잠깐 빨랐더라도 다시 느려지면 손익분기점이 아니다
+        List<ParallelStreamScalingBenchmark.Result> curve = List.of(
+                new ParallelStreamScalingBenchmark.Result(small, 100, 50),
+                new ParallelStreamScalingBenchmark.Result(medium, 100, 200),
+                new ParallelStreamScalingBenchmark.Result(large, 1_000, 300));
+        assertEquals(1_000, ParallelStreamScalingBenchmark.breakEvenSize(curve));
+
+        List<ParallelStreamScalingBenchmark.Result> neverFaster = List.of(
+                new ParallelStreamScalingBenchmark.Result(small, 100, 200),
+                new ParallelStreamScalingBenchmark.Result(large, 100, 200));
+        assertEquals(-1, ParallelStreamScalingBenchmark.breakEvenSize(neverFaster));
+    }
+
+    @Test
+    @DisplayName("병렬 스트림은 소스 타입과 상관없이 순차 스트림과 같은 결과를 낸다")
+    void testParallelStreamSameResultForEverySource() {
+        for (ParallelStreamScalingBenchmark.SourceType sourceType : ParallelStreamScalingBenchmark.SourceType.values()) {
+            ParallelStreamScalingBenchmark.Source source = sourceType.create(1_000);
+            long sequential = source.stream(false).map(n -> ParallelStreamScalingBenchmark.compute(n, 10)).sum();
+            long parallel = source.stream(true).map(n -> ParallelStreamScalingBenchmark.compute(n, 10)).sum();
+            assertEquals(sequential, parallel, sourceType.name());
+        }
     }
 
     @Test
@@ -0,0 +1,361 @@
+package concurrency.version9;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 계층형 해시 타이밍 휠.
+ *
+ * CompletableFuture.orTimeout()/completeOnTimeout()은 모든 타임아웃을 JDK의 단일 Delayer 스레드가 가진
+ * ScheduledThreadPoolExecutor의 힙에 넣으므로 등록과 취소가 O(log n)이다. 대부분 취소되는 타임아웃이 수백만 개라면
+ * 힙을 유지하는 비용이 커진다.
+ *
+ * 여기서는 tick 단위로 나눈 버킷 배열(휠)을 여러 층으로 둔다. 0층 버킷 하나는 tick 하나, k층 버킷 하나는
+ * wheelSize^k tick을 맡는다. 타임아웃은 만료 tick까지 남은 거리에 맞는 층의 버킷(이중 연결 리스트)에 들어가고,
+ * 0층이 한 바퀴 돌 때마다 위층 버킷 하나를 아래층으로 내려보낸다(cascade). 등록과 취소는 O(1)이다.
+ *
+ * 휠은 작업 스레드 하나만 만진다. 다른 스레드의 등록과 취소는 큐에 넣어 두고 작업 스레드가 tick마다 한꺼번에 반영하며,
+ * 잠들어 있는 동안 지나간 tick도 깨어났을 때 한꺼번에 처리한다. 만료된 작업은 작업 스레드에서 실행하므로 짧아야 한다.
+ *
+ * close()는 남은 타임아웃을 실행하지 않고 모두 취소한다. withTimeout()으로 건 future는 IllegalStateException으로 완료해
+ * 영원히 기다리는 일이 없게 한다.
+ */
+public class HierarchicalTimingWheel implements AutoCloseable {
+
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    /**
+     * 등록한 타임아웃. cancel()로 취소할 수 있다.
+     */
+    public static final class Timeout {
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HierarchicalTimingWheel wheel;
+        private final Runnable task;
+        // 휠이 닫혀 취소될 때 실행한다. 없으면 null
+        private final Runnable onClose;
+        private final long deadlineTick;
+        private volatile int state = INIT;
+
+        // 작업 스레드만 읽고 쓴다
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HierarchicalTimingWheel wheel, Runnable task, Runnable onClose, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.onClose = onClose;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * 아직 만료되지 않았으면 취소하고 true를 반환한다. 버킷에서 빼는 일은 작업 스레드가 다음 tick에 한다.
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrement();
+            wheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private boolean expire() {
+            return STATE.compareAndSet(this, INIT, EXPIRED);
+        }
+
+        // 휠이 닫힐 때 취소한다. cancelledTimeouts에는 넣지 않는다
+        private void cancelOnClose() {
+            if (STATE.compareAndSet(this, INIT, CANCELLED)) {
+                wheel.pending.decrement();
+                if (onClose != null) {
+                    onClose.run();
+                }
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        // 버킷을 비우고 들어 있던 리스트의 머리를 반환한다
+        Timeout clear() {
+            Timeout first = head;
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int mask;
+    private final long startNanos;
+    // 층별 버킷 배열. 그 층까지 닿는 타임아웃이 처음 들어올 때 만든다
+    private final Bucket[][] levels;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final Thread worker;
+    private volatile boolean running = true;
+    // 작업 스레드가 다음에 처리할 tick
+    private long currentTick;
+
+    public HierarchicalTimingWheel() {
+        this(1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param tickDuration 타임아웃 해상도. 타임아웃은 만료 시각이 속한 tick이 끝날 때 실행된다
+     * @param wheelSize    층마다 버킷 수. 2의 거듭제곱이어야 한다
+     */
+    public HierarchicalTimingWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("tickDuration > 0, wheelSize는 2 이상의 2의 거듭제곱이어야 합니다.");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.levels = new Bucket[(63 + wheelBits - 1) / wheelBits][];
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, "timing-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * delay 뒤에 task를 작업 스레드에서 실행한다.
+     * ScheduledThreadPoolExecutor처럼 지연이 너무 길면 Long.MAX_VALUE / 2 나노초 근처로 줄여 계산이 넘치지 않게 한다.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, null, delay, unit);
+    }
+
+    private Timeout schedule(Runnable task, Runnable onClose, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("이미 닫힌 타이밍 휠입니다.");
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        long deadlineNanos = elapsed + Math.min(Math.max(0, unit.toNanos(delay)), Long.MAX_VALUE / 2 - elapsed);
+        // 만료 시각을 넘긴 첫 tick 경계에서 실행되도록 올림한다
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(this, task, onClose, deadlineTick);
+        pending.increment();
+        newTimeouts.add(timeout);
+        // close()와 겹치면 작업 스레드가 정리하기 전에 넣었는지 알 수 없으므로 직접 취소한다. 두 번 취소되지는 않는다
+        if (!running) {
+            timeout.cancelOnClose();
+        }
+        return timeout;
+    }
+
+    /**
+     * future가 timeout 안에 끝나지 않으면 TimeoutException으로 완료한다. 먼저 끝나면 타임아웃을 취소한다.
+     * CompletableFuture.orTimeout()과 같지만 타임아웃을 이 휠에 등록한다.
+     * 만료 전에 휠이 닫히면 future를 IllegalStateException으로 완료한다.
+     */
+    public <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, Duration timeout) {
+        if (future.isDone()) {
+            return future;
+        }
+        Timeout scheduled = schedule(() -> future.completeExceptionally(new TimeoutException()),
+                () -> future.completeExceptionally(new IllegalStateException("타이밍 휠이 닫혔습니다.")),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        future.whenComplete((result, error) -> scheduled.cancel());
+        return future;
+    }
+
+    /**
+     * 등록됐지만 아직 만료되거나 취소되지 않은 타임아웃 수
+     */
+    public long pendingTimeouts() {
+        return pending.sum();
+    }
+
+    /**
+     * 작업 스레드를 멈추고 아직 만료되지 않은 타임아웃을 실행하지 않고 모두 취소한다.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(worker);
+        worker.join();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+            long sleepNanos = nextTickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            removeCancelled();
+            transferNewTimeouts();
+            // 잠든 사이 지나간 tick을 한꺼번에 처리한다
+            long lastElapsedTick = (System.nanoTime() - startNanos) / tickNanos;
+            while (currentTick <= lastElapsedTick) {
+                // cascade로 다시 넣는 타임아웃이 현재 tick을 기준으로 자리를 찾도록 처리한 뒤에 올린다
+                processTick(currentTick);
+                currentTick++;
+            }
+        }
+        cancelRemaining();
+    }
+
+    private void cancelRemaining() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            timeout.cancelOnClose();
+        }
+        for (Bucket[] buckets : levels) {
+            if (buckets == null) {
+                continue;
+            }
+            for (Bucket bucket : buckets) {
+                for (timeout = bucket.clear(); timeout != null; timeout = timeout.next) {
+                    timeout.cancelOnClose();
+                }
+            }
+        }
+        cancelledTimeouts.clear();
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            // 등록 직후 취소된 타임아웃은 휠에 넣지 않는다
+            if (!timeout.isCancelled()) {
+                insert(timeout);
+            }
+        }
+    }
+
+    /**
+     * 남은 tick 수가 wheelSize^(k+1)보다 작은 가장 낮은 층 k에 넣는다. 이미 지난 타임아웃은 현재 tick 버킷에 넣는다.
+     */
+    private void insert(Timeout timeout) {
+        long deadlineTick = Math.max(timeout.deadlineTick, currentTick);
+        long remaining = deadlineTick - currentTick;
+        int level = 0;
+        while (level < levels.length - 1 && remaining >>> ((level + 1) * wheelBits) != 0) {
+            level++;
+        }
+        bucketsOf(level)[(int) (deadlineTick >>> (level * wheelBits)) & mask].add(timeout);
+    }
+
+    private Bucket[] bucketsOf(int level) {
+        Bucket[] buckets = levels[level];
+        if (buckets == null) {
+            buckets = new Bucket[mask + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket();
+            }
+            levels[level] = buckets;
+        }
+        return buckets;
+    }
+
+    private void processTick(long tick) {
+        // 아래층이 한 바퀴를 다 돌았으면 위층 버킷 하나를 아래로 내려보낸다
+        for (int level = 1; level < levels.length; level++) {
+            int shift = level * wheelBits;
+            if ((tick & ((1L << shift) - 1)) != 0) {
+                break;
+            }
+            if (levels[level] != null) {
+                cascade(levels[level][(int) (tick >>> shift) & mask]);
+            }
+        }
+
+        if (levels[0] == null) {
+            return;
+        }
+        Timeout timeout = levels[0][(int) tick & mask].clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+            if (timeout.expire()) {
+                pending.decrement();
+                try {
+                    timeout.task.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void cascade(Bucket bucket) {
+        Timeout timeout = bucket.clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (!timeout.isCancelled()) {
+                insert(timeout);
+            } else {
+                timeout.bucket = null;
+            }
+            timeout = next;
+        }
+    }
+}
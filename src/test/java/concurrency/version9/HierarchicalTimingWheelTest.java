@@ -0,0 +1,192 @@
+package concurrency.version9;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version1_4.Benchmark;
+import concurrency.version9.HierarchicalTimingWheel.Timeout;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    @DisplayName("HierarchicalTimingWheel::여러 층에 걸친 지연도 만료 시각 이후, 만료 순서대로 실행한다")
+    void testExpiresAcrossLevels() throws InterruptedException {
+        // 버킷 8개, tick 1ms이면 0층은 8ms, 1층은 64ms까지 맡으므로 200ms는 2층에서 두 번 내려온다
+        try (HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, TimeUnit.MILLISECONDS, 8)) {
+            long[] delays = {200, 3, 70, 20, 0, 9};
+            List<Long> fired = new ArrayList<>();
+            AtomicLong late = new AtomicLong();
+            CountDownLatch done = new CountDownLatch(delays.length);
+            long start = System.nanoTime();
+            for (long delay : delays) {
+                wheel.schedule(() -> {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (elapsed < delay) {
+                        late.set(-1);  // 일찍 실행되면 안 된다
+                    }
+                    fired.add(delay);  // 작업 스레드 하나에서만 실행된다
+                    done.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, late.get());
+            assertEquals(List.of(0L, 3L, 9L, 20L, 70L, 200L), fired);
+            assertEquals(0, wheel.pendingTimeouts());
+        }
+    }
+
+    @Test
+    @DisplayName("HierarchicalTimingWheel::취소한 타임아웃은 실행되지 않고, 만료된 타임아웃은 취소할 수 없다")
+    void testCancel() throws InterruptedException {
+        try (HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, TimeUnit.MILLISECONDS, 8)) {
+            AtomicInteger fired = new AtomicInteger();
+            List<Timeout> timeouts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                timeouts.add(wheel.schedule(fired::incrementAndGet, 100 + i % 100, TimeUnit.MILLISECONDS));
+            }
+            for (int i = 0; i < timeouts.size(); i += 2) {
+                assertTrue(timeouts.get(i).cancel());
+                assertFalse(timeouts.get(i).cancel());
+            }
+            assertEquals(500, wheel.pendingTimeouts());
+
+            Thread.sleep(500);
+            assertEquals(500, fired.get());
+            assertEquals(0, wheel.pendingTimeouts());
+            assertTrue(timeouts.get(0).isCancelled());
+            assertTrue(timeouts.get(1).isExpired());
+            assertFalse(timeouts.get(1).cancel());
+        }
+    }
+
+    @Test
+    @DisplayName("HierarchicalTimingWheel::withTimeout()은 늦은 future를 TimeoutException으로 완료하고, 먼저 끝나면 타임아웃을 취소한다")
+    void testWithTimeout() throws Exception {
+        try (HierarchicalTimingWheel wheel = new HierarchicalTimingWheel()) {
+            CompletableFuture<Integer> slow = wheel.withTimeout(CompletableFuture.supplyAsync(() -> {
+                sleep(3000);
+                return 10;
+            }), Duration.ofMillis(100));
+            ExecutionException exception = assertThrows(ExecutionException.class, slow::get);
+            assertInstanceOf(TimeoutException.class, exception.getCause());
+
+            CompletableFuture<Integer> fast = wheel.withTimeout(CompletableFuture.supplyAsync(() -> 10),
+                    Duration.ofSeconds(10));
+            assertEquals(10, fast.get());
+            assertEquals(0, wheel.pendingTimeouts());
+        }
+    }
+
+    @Test
+    @DisplayName("HierarchicalTimingWheel::아주 긴 지연도 넘치지 않고 먼 미래에 등록되어 바로 실행되지 않는다")
+    void testHugeDelayDoesNotOverflow() throws InterruptedException {
+        try (HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, TimeUnit.MILLISECONDS, 8)) {
+            AtomicInteger fired = new AtomicInteger();
+            wheel.schedule(fired::incrementAndGet, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            wheel.schedule(fired::incrementAndGet, Long.MAX_VALUE, TimeUnit.DAYS);
+            wheel.schedule(fired::incrementAndGet, Long.MAX_VALUE - 1, TimeUnit.MILLISECONDS);
+            Thread.sleep(100);
+            assertEquals(0, fired.get());
+            assertEquals(3, wheel.pendingTimeouts());
+        }
+    }
+
+    @Test
+    @DisplayName("HierarchicalTimingWheel::close()는 남은 타임아웃을 실행하지 않고 취소하고, withTimeout()의 future를 완료한다")
+    void testCloseCancelsPending() throws Exception {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel();
+        AtomicInteger fired = new AtomicInteger();
+        Timeout timeout = wheel.schedule(fired::incrementAndGet, 1, TimeUnit.HOURS);
+        CompletableFuture<Integer> future = wheel.withTimeout(new CompletableFuture<>(), Duration.ofHours(1));
+        wheel.close();
+
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, fired.get());
+        assertEquals(0, wheel.pendingTimeouts());
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertThrows(IllegalStateException.class, () -> wheel.schedule(fired::incrementAndGet, 1, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final int TIMEOUT_COUNT = 1_000_000;
+
+    /**
+     * 요청 타임아웃처럼 대부분 만료 전에 취소되는 경우를 흉내 낸다. 30초 뒤로 등록한 뒤 바로 취소한다.
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("타임아웃 100만 개 등록 후 취소: ScheduledThreadPoolExecutor, CompletableFuture.orTimeout(), HierarchicalTimingWheel 비교")
+    void testScheduleCancelThroughput() throws Exception {
+        Benchmark.of("ns/op")
+                .add("ScheduledThreadPoolExecutor", HierarchicalTimingWheelTest::measureScheduledExecutor)
+                .add("orTimeout()", HierarchicalTimingWheelTest::measureOrTimeout)
+                .add("HierarchicalTimingWheel", HierarchicalTimingWheelTest::measureTimingWheel)
+                .run();
+    }
+
+    private static long measureScheduledExecutor() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        long start = System.nanoTime();
+        List<ScheduledFuture<?>> futures = new ArrayList<>(TIMEOUT_COUNT);
+        for (int i = 0; i < TIMEOUT_COUNT; i++) {
+            futures.add(scheduler.schedule(() -> { }, 30 + i % 1000, TimeUnit.SECONDS));
+        }
+        for (ScheduledFuture<?> future : futures) {
+            future.cancel(false);
+        }
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdownNow();
+        return elapsed / TIMEOUT_COUNT;
+    }
+
+    private static long measureOrTimeout() {
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMEOUT_COUNT; i++) {
+            new CompletableFuture<Integer>().orTimeout(30 + i % 1000, TimeUnit.SECONDS).complete(i);
+        }
+        return (System.nanoTime() - start) / TIMEOUT_COUNT;
+    }
+
+    private static long measureTimingWheel() throws InterruptedException {
+        try (HierarchicalTimingWheel wheel = new HierarchicalTimingWheel()) {
+            long start = System.nanoTime();
+            List<Timeout> timeouts = new ArrayList<>(TIMEOUT_COUNT);
+            for (int i = 0; i < TIMEOUT_COUNT; i++) {
+                timeouts.add(wheel.schedule(() -> { }, 30 + i % 1000, TimeUnit.SECONDS));
+            }
+            for (Timeout timeout : timeouts) {
+                timeout.cancel();
+            }
+            long elapsed = System.nanoTime() - start;
+            assertEquals(0, wheel.pendingTimeouts());
+            return elapsed / TIMEOUT_COUNT;
+        }
+    }
+}
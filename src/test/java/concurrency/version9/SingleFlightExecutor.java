@@ -0,0 +1,182 @@
+package concurrency.version9;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 같은 키로 동시에 들어온 Callable을 한 번만 실행하고 결과를 나눠 주는 실행기(single flight).
+ *
+ * 같은 설정이나 사용자를 여러 요청이 동시에 읽으면 같은 조회를 N번 한다. 여기서는 키별로 진행 중인 실행(flight)을
+ * ConcurrentHashMap에 두고, 실행이 끝나기 전에 같은 키로 들어온 요청은 새로 실행하지 않고 그 결과를 기다린다.
+ * 나중에 들어온 요청의 Callable은 쓰이지 않는다.
+ *
+ * <ul>
+ *     <li>예외로 끝난 실행은 기다리던 요청 모두에 같은 예외로 전달하고, 재사용하지 않는다. 다음 요청은 다시 실행한다.</li>
+ *     <li>요청마다 copy()한 CompletableFuture를 돌려주므로 한 요청이 cancel()해도 다른 요청의 결과에는 영향이 없다.
+ *     기다리던 요청이 모두 취소하면 아무도 읽지 않을 실행이므로 실행 중인 스레드를 인터럽트한다.</li>
+ *     <li>reuse를 주면 성공한 결과를 끝난 뒤 그 시간 동안 더 나눠 준다. 기간이 지나면 CompletableFuture의 Delayer 스레드가
+ *     맵에서 지운다.</li>
+ * </ul>
+ */
+public class SingleFlightExecutor<K, V> {
+
+    private final Executor executor;
+    private final long reuseNanos;
+    private final ConcurrentHashMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    public SingleFlightExecutor(Executor executor) {
+        this(executor, Duration.ZERO);
+    }
+
+    /**
+     * @param reuse 성공한 결과를 끝난 뒤 더 나눠 줄 시간. 0이면 진행 중인 동안만 나눠 준다
+     */
+    public SingleFlightExecutor(Executor executor, Duration reuse) {
+        this.executor = executor;
+        this.reuseNanos = reuse.toNanos();
+    }
+
+    /**
+     * 키 하나의 실행. FutureTask를 상속해 cancel(true)로 실행 중인 스레드를 인터럽트한다.
+     */
+    private final class Flight extends FutureTask<V> {
+        private final K key;
+        private final CompletableFuture<V> promise = new CompletableFuture<>();
+        // 결과를 기다리는 요청 수. 0이 되면 버려진 실행이라 더 합류할 수 없다
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        private volatile long completedAt;
+
+        Flight(K key, Callable<? extends V> loader) {
+            super(loader::call);
+            this.key = key;
+        }
+
+        boolean tryJoin() {
+            for (;;) {
+                int n = waiters.get();
+                if (n == 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void leave() {
+            if (waiters.decrementAndGet() == 0 && !isDone()) {
+                flights.remove(key, this);
+                cancel(true);
+            }
+        }
+
+        void reject(RejectedExecutionException e) {
+            setException(e);
+        }
+
+        boolean isFresh() {
+            return !promise.isCompletedExceptionally() && System.nanoTime() - completedAt < reuseNanos;
+        }
+
+        @Override
+        protected void done() {
+            completedAt = System.nanoTime();
+            if (isCancelled()) {
+                promise.cancel(false);
+            } else {
+                try {
+                    promise.complete(get());
+                } catch (ExecutionException e) {
+                    promise.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    // 끝난 FutureTask의 get()은 기다리지 않는다
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (reuseNanos > 0 && !promise.isCompletedExceptionally()) {
+                CompletableFuture.delayedExecutor(reuseNanos, TimeUnit.NANOSECONDS)
+                        .execute(() -> flights.remove(key, this));
+            } else {
+                flights.remove(key, this);
+            }
+        }
+
+        // 요청마다 따로 취소할 수 있는 결과
+        CompletableFuture<V> view() {
+            CompletableFuture<V> view = promise.copy();
+            view.whenComplete((value, failure) -> {
+                if (view.isCancelled()) {
+                    leave();
+                }
+            });
+            return view;
+        }
+    }
+
+    /**
+     * key로 진행 중인 실행이 있으면 그 결과를, 없으면 loader를 executor에서 실행한 결과를 돌려준다.
+     * executor가 실행을 거절하면 RejectedExecutionException으로 실패한 결과를 돌려준다.
+     */
+    public CompletableFuture<V> submit(K key, Callable<? extends V> loader) {
+        for (;;) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight created = new Flight(key, loader);
+                if (flights.putIfAbsent(key, created) != null) {
+                    continue;
+                }
+                executions.increment();
+                CompletableFuture<V> view = created.view();
+                try {
+                    executor.execute(created);
+                } catch (RejectedExecutionException e) {
+                    created.reject(e);
+                }
+                return view;
+            }
+            // FutureTask가 끝났어도 done()이 promise를 채우기 전이면 아직 합류할 수 있다
+            if (!flight.promise.isDone()) {
+                if (flight.tryJoin()) {
+                    coalesced.increment();
+                    return flight.view();
+                }
+            } else if (flight.isFresh()) {
+                reused.increment();
+                return flight.promise.copy();
+            }
+            // 버려졌거나 재사용 기간이 지난 실행은 지우고 다시 시도한다
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * 진행 중이거나 재사용 기간 안에 있는 키 수
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * @param executions 실제로 loader를 실행한 횟수
+     * @param coalesced  진행 중인 실행에 합류한 요청 수
+     * @param reused     재사용 기간 안의 결과를 받은 요청 수
+     */
+    public record Stats(long executions, long coalesced, long reused) {
+    }
+
+    public Stats stats() {
+        return new Stats(executions.sum(), coalesced.sum(), reused.sum());
+    }
+}
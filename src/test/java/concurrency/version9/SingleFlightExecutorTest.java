@@ -0,0 +1,219 @@
+package concurrency.version9;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import concurrency.version9.SingleFlightExecutor.Stats;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightExecutorTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("SingleFlightExecutor::진행 중인 키로 들어온 요청은 다시 실행하지 않고 같은 결과를 받는다")
+    void testCoalescesInFlightCalls() throws Exception {
+        SingleFlightExecutor<String, String> singleFlight = new SingleFlightExecutor<>(executor);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(singleFlight.submit("config", () -> {
+                loads.incrementAndGet();
+                release.await();
+                return "설정값";
+            }));
+        }
+        release.countDown();
+        for (CompletableFuture<String> future : futures) {
+            assertEquals("설정값", future.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(new Stats(1, 9, 0), singleFlight.stats());
+
+        // 끝난 뒤에 들어온 요청은 다시 실행한다
+        assertEquals("설정값", singleFlight.submit("config", () -> {
+            loads.incrementAndGet();
+            return "설정값";
+        }).get(1, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    @DisplayName("SingleFlightExecutor::예외는 기다리던 요청 모두에 전달하고 재사용하지 않는다")
+    void testExceptionIsSharedButNotReused() throws Exception {
+        SingleFlightExecutor<String, String> singleFlight = new SingleFlightExecutor<>(executor, Duration.ofSeconds(10));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = singleFlight.submit("user", () -> {
+            release.await();
+            throw new IllegalStateException("조회 실패");
+        });
+        CompletableFuture<String> second = singleFlight.submit("user", () -> "쓰이지 않는다");
+        release.countDown();
+
+        ExecutionException firstFailure = assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        ExecutionException secondFailure = assertThrows(ExecutionException.class, () -> second.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, firstFailure.getCause());
+        assertInstanceOf(IllegalStateException.class, secondFailure.getCause());
+
+        assertEquals("복구", singleFlight.submit("user", () -> "복구").get(1, TimeUnit.SECONDS));
+        assertEquals(2, singleFlight.stats().executions());
+    }
+
+    @Test
+    @DisplayName("SingleFlightExecutor::한 요청의 취소는 다른 요청에 영향이 없고, 모두 취소하면 실행을 인터럽트한다")
+    void testCancellation() throws Exception {
+        SingleFlightExecutor<String, String> singleFlight = new SingleFlightExecutor<>(executor);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = singleFlight.submit("a", () -> {
+            started.countDown();
+            release.await();
+            return "값";
+        });
+        CompletableFuture<String> second = singleFlight.submit("a", () -> "쓰이지 않는다");
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(first.cancel(true));
+        release.countDown();
+        assertEquals("값", second.get(1, TimeUnit.SECONDS));
+
+        AtomicReference<Boolean> interrupted = new AtomicReference<>(false);
+        CountDownLatch loaderFinished = new CountDownLatch(1);
+        CountDownLatch startedB = new CountDownLatch(1);
+        CompletableFuture<String> onlyA = singleFlight.submit("b", () -> {
+            startedB.countDown();
+            try {
+                TimeUnit.SECONDS.sleep(10);
+                return "값";
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            } finally {
+                loaderFinished.countDown();
+            }
+        });
+        CompletableFuture<String> onlyB = singleFlight.submit("b", () -> "쓰이지 않는다");
+        assertTrue(startedB.await(1, TimeUnit.SECONDS));
+        onlyA.cancel(true);
+        assertFalse(interrupted.get());
+        onlyB.cancel(true);
+        assertTrue(loaderFinished.await(1, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+
+        // 버려진 실행에는 합류하지 않고 새로 실행한다
+        assertEquals("새 값", singleFlight.submit("b", () -> "새 값").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("SingleFlightExecutor::재사용 기간 안에는 끝난 결과를 나눠 주고, 기간이 지나면 다시 실행한다")
+    void testReuseWindow() throws Exception {
+        SingleFlightExecutor<String, Integer> singleFlight = new SingleFlightExecutor<>(executor, Duration.ofMillis(100));
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(1, singleFlight.submit("k", loads::incrementAndGet).get(1, TimeUnit.SECONDS));
+        assertEquals(1, singleFlight.submit("k", loads::incrementAndGet).get(1, TimeUnit.SECONDS));
+        assertEquals(1, singleFlight.stats().reused());
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        // Delayer 스레드가 만료된 결과를 지웠다
+        assertEquals(0, singleFlight.size());
+        assertEquals(2, singleFlight.submit("k", loads::incrementAndGet).get(1, TimeUnit.SECONDS));
+    }
+
+    private static final int THREADS = 16;
+    private static final int KEYS = 8;
+    private static final int ROUNDS = 200;
+
+    /**
+     * 매 라운드 16개 스레드가 8개 키 모두를 동시에 요청한다. loader는 그 라운드의 요청이 모두 들어온 뒤에야 끝나므로
+     * 한 라운드 안의 요청은 모두 진행 중인 실행과 겹친다. 따라서 라운드마다 키 하나당 정확히 한 번 실행되어야 한다.
+     */
+    @Test
+    @DisplayName("SingleFlightExecutor::동시에 들어온 같은 키 요청은 라운드마다 정확히 한 번 실행한다")
+    void testExactlyOncePerKeyUnderStress() throws Exception {
+        SingleFlightExecutor<Integer, Integer> singleFlight = new SingleFlightExecutor<>(executor);
+        AtomicIntegerArray executions = new AtomicIntegerArray(KEYS);
+        AtomicIntegerArray running = new AtomicIntegerArray(KEYS);
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicReference<CountDownLatch> submitted = new AtomicReference<>();
+        CyclicBarrier barrier = new CyclicBarrier(THREADS, () -> submitted.set(new CountDownLatch(THREADS)));
+        ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        barrier.await();
+                        CountDownLatch roundSubmitted = submitted.get();
+                        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                        for (int i = 0; i < KEYS; i++) {
+                            int key = (i + round) % KEYS;
+                            futures.add(singleFlight.submit(key, () -> {
+                                if (running.incrementAndGet(key) > 1) {
+                                    overlaps.incrementAndGet();
+                                }
+                                executions.incrementAndGet(key);
+                                roundSubmitted.await();
+                                running.decrementAndGet(key);
+                                return key;
+                            }));
+                        }
+                        roundSubmitted.countDown();
+                        for (int i = 0; i < KEYS; i++) {
+                            assertEquals((i + round) % KEYS, futures.get(i).get(10, TimeUnit.SECONDS));
+                        }
+                        // 다음 라운드를 시작하기 전에 이번 라운드의 실행이 모두 맵에서 빠질 때까지 기다린다
+                        while (singleFlight.size() > 0) {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, callers));
+        }
+        CompletableFuture.allOf(workers.toArray(CompletableFuture<?>[]::new)).get(2, TimeUnit.MINUTES);
+        callers.shutdown();
+        assertTrue(callers.awaitTermination(1, TimeUnit.SECONDS));
+
+        Stats stats = singleFlight.stats();
+        System.out.println(stats);
+        assertEquals(0, overlaps.get());
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals(ROUNDS, executions.get(key), "key " + key);
+        }
+        assertEquals((long) ROUNDS * KEYS, stats.executions());
+        assertEquals((long) ROUNDS * KEYS * (THREADS - 1), stats.coalesced());
+    }
+}